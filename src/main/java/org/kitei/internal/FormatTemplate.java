@@ -0,0 +1,586 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.internal;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.DuplicateFormatFlagsException;
+import java.util.Formattable;
+import java.util.FormattableFlags;
+import java.util.Formatter;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.Locale;
+import java.util.MissingFormatWidthException;
+import java.util.UnknownFormatConversionException;
+import java.util.UnknownFormatFlagsException;
+
+import org.kitei.logging.ArgumentRenderers;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A <tt>String.format</tt> pattern, parsed once.
+ *
+ * Patterns that only use <tt>%s</tt>, <tt>%d</tt>, <tt>%x</tt>, <tt>%f</tt>, <tt>%%</tt> and <tt>%n</tt> are rendered
+ * directly into a per-thread buffer. Everything else (flags, widths, argument indices, other conversions, argument types
+ * that need the full formatter) is handed to a {@link Formatter}, so the output is identical to <tt>String.format</tt>,
+ * except that <tt>%s</tt> renders objects without their own formatting with {@link ArgumentRenderers}: arrays show
+ * their elements, and large arguments are cut.
+ *
+ * Compiled templates are kept in a bounded cache. Patterns that <tt>String.format</tt> rejected are remembered, see
+ * {@link #getFailure()}.
+ */
+public final class FormatTemplate
+{
+    private static final int CACHE_SIZE = 4096;
+
+    private static final Cache<String, FormatTemplate> TEMPLATES = CacheBuilder.newBuilder()
+        .maximumSize(CACHE_SIZE)
+        .build();
+
+    /** Formatted by <tt>%t</tt> since Java 8, <tt>null</tt> before. */
+    private static final Class<?> TEMPORAL_ACCESSOR = findClass("java.time.temporal.TemporalAccessor");
+
+    private static volatile LocaleCheck lastLocaleCheck = new LocaleCheck(Locale.US, true);
+
+    private final String pattern;
+    private final String[] literals;
+    private final char[] conversions;
+    private final Class<? extends IllegalFormatException> failure;
+
+    /**
+     * Returns the compiled template for a pattern.
+     */
+    public static FormatTemplate forPattern(final String pattern)
+    {
+        checkNotNull(pattern, "pattern");
+
+        FormatTemplate template = TEMPLATES.getIfPresent(pattern);
+        if (template == null) {
+            template = compile(pattern);
+            TEMPLATES.put(pattern, template);
+        }
+        return template;
+    }
+
+    private static FormatTemplate compile(final String pattern)
+    {
+        final List<String> literals = new ArrayList<String>();
+        final StringBuilder conversions = new StringBuilder();
+        final StringBuilder literal = new StringBuilder();
+
+        final int length = pattern.length();
+        for (int i = 0; i < length; i++) {
+            final char c = pattern.charAt(i);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+
+            final char conversion = (i + 1 < length) ? pattern.charAt(++i) : 0;
+            switch (conversion) {
+                case '%':
+                    literal.append('%');
+                    break;
+                case 'n':
+                    literal.append(System.lineSeparator());
+                    break;
+                case 's':
+                case 'd':
+                case 'x':
+                case 'f':
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    conversions.append(conversion);
+                    break;
+                default:
+                    return new FormatTemplate(pattern, null, null, null);
+            }
+        }
+        literals.add(literal.toString());
+
+        return new FormatTemplate(pattern, literals.toArray(new String[literals.size()]), conversions.toString().toCharArray(), null);
+    }
+
+    private FormatTemplate(final String pattern, final String[] literals, final char[] conversions, final Class<? extends IllegalFormatException> failure)
+    {
+        this.pattern = pattern;
+        this.literals = literals;
+        this.conversions = conversions;
+        this.failure = failure;
+    }
+
+    public String getPattern()
+    {
+        return pattern;
+    }
+
+    /**
+     * Returns the exception that <tt>String.format</tt> threw for this pattern if the pattern itself
+     * is malformed, <tt>null</tt> otherwise.
+     */
+    public Class<? extends IllegalFormatException> getFailure()
+    {
+        return failure;
+    }
+
+    /**
+     * Formats the arguments like <tt>String.format(pattern, args)</tt>, with one difference: <tt>%s</tt> renders an
+     * argument that is not {@link Formattable}, a number, a character, a boolean or a date with {@link ArgumentRenderers}
+     * instead of <tt>toString()</tt>. Arrays then show their elements, registered renderers and
+     * {@link org.kitei.logging.LogRenderable} are used, and the output is cut at {@link ArgumentRenderers#ARGUMENT_LIMIT}
+     * and {@link ArgumentRenderers#MESSAGE_LIMIT}. Width, precision and <tt>%S</tt> apply to the rendered argument.
+     */
+    public String format(final Object... args)
+    {
+        if (conversions == null || args == null || args.length < conversions.length || !canRender(args)) {
+            return delegate(args);
+        }
+        if (conversions.length == 0) {
+            return literals[0];
+        }
+
+        final RenderBuffer buffer = RenderBuffer.acquire();
+        try {
+            final StringBuilder sb = buffer.builder();
+            sb.append(literals[0]);
+            for (int i = 0; i < conversions.length; i++) {
+                appendObject(sb, conversions[i], args[i]);
+                sb.append(literals[i + 1]);
+            }
+            return sb.toString();
+        }
+        finally {
+            buffer.release();
+        }
+    }
+
+    public String format(final long arg)
+    {
+        final char conversion = singleConversion();
+        if (conversion == 's' || conversion == 'x' || (conversion == 'd' && isPlainLocale())) {
+            final RenderBuffer buffer = RenderBuffer.acquire();
+            try {
+                final StringBuilder sb = buffer.builder().append(literals[0]);
+                if (conversion == 'x') {
+                    sb.append(Long.toHexString(arg));
+                }
+                else {
+                    sb.append(arg);
+                }
+                return sb.append(literals[1]).toString();
+            }
+            finally {
+                buffer.release();
+            }
+        }
+        return (conversion == 0) ? literals[0] : delegate(arg);
+    }
+
+    public String format(final int arg)
+    {
+        final char conversion = singleConversion();
+        if (conversion == 's' || conversion == 'x' || (conversion == 'd' && isPlainLocale())) {
+            final RenderBuffer buffer = RenderBuffer.acquire();
+            try {
+                final StringBuilder sb = buffer.builder().append(literals[0]);
+                if (conversion == 'x') {
+                    sb.append(Integer.toHexString(arg));
+                }
+                else {
+                    sb.append(arg);
+                }
+                return sb.append(literals[1]).toString();
+            }
+            finally {
+                buffer.release();
+            }
+        }
+        return (conversion == 0) ? literals[0] : delegate(arg);
+    }
+
+    public String format(final double arg)
+    {
+        final char conversion = singleConversion();
+        if (conversion == 's' || (conversion == 'f' && isPlainLocale())) {
+            final RenderBuffer buffer = RenderBuffer.acquire();
+            try {
+                final StringBuilder sb = buffer.builder().append(literals[0]);
+                if (conversion == 'f') {
+                    appendFixed(sb, arg);
+                }
+                else {
+                    sb.append(arg);
+                }
+                return sb.append(literals[1]).toString();
+            }
+            finally {
+                buffer.release();
+            }
+        }
+        return (conversion == 0) ? literals[0] : delegate(arg);
+    }
+
+    public String format(final float arg)
+    {
+        final char conversion = singleConversion();
+        if (conversion == 's' || (conversion == 'f' && isPlainLocale())) {
+            final RenderBuffer buffer = RenderBuffer.acquire();
+            try {
+                final StringBuilder sb = buffer.builder().append(literals[0]);
+                if (conversion == 'f') {
+                    appendFixed(sb, arg);
+                }
+                else {
+                    sb.append(arg);
+                }
+                return sb.append(literals[1]).toString();
+            }
+            finally {
+                buffer.release();
+            }
+        }
+        return (conversion == 0) ? literals[0] : delegate(arg);
+    }
+
+    public String format(final boolean arg)
+    {
+        final char conversion = singleConversion();
+        if (conversion == 's') {
+            return concat(literals[0], arg ? "true" : "false", literals[1]);
+        }
+        return (conversion == 0) ? literals[0] : delegate(arg);
+    }
+
+    public String format(final char arg)
+    {
+        final char conversion = singleConversion();
+        if (conversion == 's') {
+            return concat(literals[0], String.valueOf(arg), literals[1]);
+        }
+        return (conversion == 0) ? literals[0] : delegate(arg);
+    }
+
+    /**
+     * Returns the conversion if this template consumes exactly one argument with a fast conversion, 0 if it consumes
+     * none and '?' if it needs <tt>String.format</tt>.
+     */
+    private char singleConversion()
+    {
+        if (conversions == null || conversions.length > 1) {
+            return '?';
+        }
+        return (conversions.length == 0) ? 0 : conversions[0];
+    }
+
+    private boolean canRender(final Object[] args)
+    {
+        for (int i = 0; i < conversions.length; i++) {
+            final Object arg = args[i];
+            if (arg == null) {
+                continue;
+            }
+            switch (conversions[i]) {
+                case 's':
+                    if (arg instanceof Formattable) {
+                        return false;
+                    }
+                    break;
+                case 'd':
+                    if (!isIntegral(arg) || !isPlainLocale()) {
+                        return false;
+                    }
+                    break;
+                case 'x':
+                    if (!isIntegral(arg)) {
+                        return false;
+                    }
+                    break;
+                case 'f':
+                    if (!(arg instanceof Double || arg instanceof Float) || !isPlainLocale()) {
+                        return false;
+                    }
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIntegral(final Object arg)
+    {
+        return arg instanceof Integer || arg instanceof Long || arg instanceof Short || arg instanceof Byte;
+    }
+
+    private static void appendObject(final StringBuilder sb, final char conversion, final Object arg)
+    {
+        if (arg == null) {
+            sb.append("null");
+            return;
+        }
+
+        switch (conversion) {
+            case 'd':
+                sb.append(((Number) arg).longValue());
+                break;
+            case 'x':
+                if (arg instanceof Long) {
+                    sb.append(Long.toHexString((Long) arg));
+                }
+                else if (arg instanceof Integer) {
+                    sb.append(Integer.toHexString((Integer) arg));
+                }
+                else if (arg instanceof Short) {
+                    sb.append(Integer.toHexString(((Short) arg) & 0xffff));
+                }
+                else {
+                    sb.append(Integer.toHexString(((Byte) arg) & 0xff));
+                }
+                break;
+            case 'f':
+                appendFixed(sb, ((Number) arg).doubleValue());
+                break;
+            default:
+                ArgumentRenderers.appendStrict(sb, arg);
+                break;
+        }
+    }
+
+    /**
+     * Appends a double the way <tt>%f</tt> does: six decimals, rounded half up from the shortest decimal representation.
+     */
+    private static void appendFixed(final StringBuilder sb, final double value)
+    {
+        if (Double.isNaN(value)) {
+            sb.append("NaN");
+            return;
+        }
+        if (Double.compare(value, 0.0) < 0) {
+            sb.append('-');
+        }
+        final double magnitude = Math.abs(value);
+        if (Double.isInfinite(magnitude)) {
+            sb.append("Infinity");
+            return;
+        }
+
+        final String repr = Double.toString(magnitude);
+        final int exponentIndex = repr.indexOf('E');
+        final int mantissaEnd = (exponentIndex == -1) ? repr.length() : exponentIndex;
+        final int exponent = (exponentIndex == -1) ? 0 : Integer.parseInt(repr.substring(exponentIndex + 1));
+
+        // digits, and the number of them that are left of the decimal point.
+        final StringBuilder digits = new StringBuilder(24);
+        int point = -1;
+        for (int i = 0; i < mantissaEnd; i++) {
+            final char c = repr.charAt(i);
+            if (c == '.') {
+                point = i;
+            }
+            else {
+                digits.append(c);
+            }
+        }
+        point = (point == -1 ? mantissaEnd : point) + exponent;
+        if (point <= 0) {
+            for (int i = point; i <= 0; i++) {
+                digits.insert(0, '0');
+            }
+            point = 1;
+        }
+
+        final int keep = point + 6;
+        if (digits.length() > keep) {
+            final boolean roundUp = digits.charAt(keep) >= '5';
+            digits.setLength(keep);
+            if (roundUp) {
+                int i = keep - 1;
+                for (; i >= 0 && digits.charAt(i) == '9'; i--) {
+                    digits.setCharAt(i, '0');
+                }
+                if (i < 0) {
+                    digits.insert(0, '1');
+                    point++;
+                }
+                else {
+                    digits.setCharAt(i, (char) (digits.charAt(i) + 1));
+                }
+            }
+        }
+        while (digits.length() < point + 6) {
+            digits.append('0');
+        }
+
+        sb.append(digits, 0, point).append('.').append(digits, point, point + 6);
+    }
+
+    private String delegate(final Object... args)
+    {
+        try {
+            final StringBuilder sb = new StringBuilder();
+            new Formatter(sb).format(pattern, limited(args));
+            return sb.toString();
+        }
+        catch (UnknownFormatConversionException e) {
+            throw markFailed(e);
+        }
+        catch (UnknownFormatFlagsException e) {
+            throw markFailed(e);
+        }
+        catch (DuplicateFormatFlagsException e) {
+            throw markFailed(e);
+        }
+        catch (MissingFormatWidthException e) {
+            throw markFailed(e);
+        }
+    }
+
+    /**
+     * Wraps the arguments that the formatter would render with <tt>toString()</tt>, see {@link LimitedArgument}.
+     */
+    private static Object[] limited(final Object[] args)
+    {
+        if (args == null) {
+            return null;
+        }
+
+        Object[] limited = args;
+        for (int i = 0; i < args.length; i++) {
+            if (isPlainObject(args[i])) {
+                if (limited == args) {
+                    limited = args.clone();
+                }
+                limited[i] = new LimitedArgument(args[i]);
+            }
+        }
+        return limited;
+    }
+
+    private static boolean isPlainObject(final Object arg)
+    {
+        return arg != null
+            && !(arg instanceof Formattable || arg instanceof Number || arg instanceof Character || arg instanceof Boolean
+                || arg instanceof Date || arg instanceof Calendar || (TEMPORAL_ACCESSOR != null && TEMPORAL_ACCESSOR.isInstance(arg)));
+    }
+
+    private static Class<?> findClass(final String name)
+    {
+        try {
+            return Class.forName(name);
+        }
+        catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private IllegalFormatException markFailed(final IllegalFormatException e)
+    {
+        TEMPLATES.put(pattern, new FormatTemplate(pattern, null, null, e.getClass()));
+        return e;
+    }
+
+    private static String concat(final String prefix, final String value, final String suffix)
+    {
+        final RenderBuffer buffer = RenderBuffer.acquire();
+        try {
+            return buffer.builder().append(prefix).append(value).append(suffix).toString();
+        }
+        finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * <tt>%d</tt> and <tt>%f</tt> are localized by <tt>String.format</tt>. They are only rendered directly if the
+     * default format locale uses ASCII digits and a '.' decimal separator.
+     */
+    private static boolean isPlainLocale()
+    {
+        final Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        LocaleCheck check = lastLocaleCheck;
+        if (check.locale != locale) {
+            final DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+            check = new LocaleCheck(locale, symbols.getZeroDigit() == '0' && symbols.getDecimalSeparator() == '.');
+            lastLocaleCheck = check;
+        }
+        return check.plain;
+    }
+
+    /**
+     * Renders an argument of <tt>%s</tt> with {@link ArgumentRenderers} straight into the builder of the formatter, so
+     * that the argument and message limits apply as on the direct path. Other conversions only see the hash code.
+     */
+    private static final class LimitedArgument implements Formattable
+    {
+        private final Object value;
+
+        private LimitedArgument(final Object value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public void formatTo(final Formatter formatter, final int flags, final int width, final int precision)
+        {
+            final StringBuilder sb = (StringBuilder) formatter.out();
+            final int start = sb.length();
+            ArgumentRenderers.appendStrict(sb, value);
+
+            if (precision != -1 && sb.length() - start > precision) {
+                sb.setLength(start + precision);
+            }
+            if ((flags & FormattableFlags.UPPERCASE) != 0) {
+                sb.replace(start, sb.length(), sb.substring(start).toUpperCase(formatter.locale()));
+            }
+            final boolean left = (flags & FormattableFlags.LEFT_JUSTIFY) != 0;
+            for (int i = sb.length() - start; i < width; i++) {
+                sb.insert(left ? sb.length() : start, ' ');
+            }
+        }
+
+        /**
+         * For <tt>%h</tt>.
+         */
+        @Override
+        public int hashCode()
+        {
+            return value.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object other)
+        {
+            return other instanceof LimitedArgument && value.equals(((LimitedArgument) other).value);
+        }
+    }
+
+    private static final class LocaleCheck
+    {
+        private final Locale locale;
+        private final boolean plain;
+
+        private LocaleCheck(final Locale locale, final boolean plain)
+        {
+            this.locale = locale;
+            this.plain = plain;
+        }
+    }
+}
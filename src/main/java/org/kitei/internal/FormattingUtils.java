@@ -13,11 +13,11 @@
  */
 package org.kitei.internal;
 
-import static java.lang.String.format;
-
 import java.util.Arrays;
 import java.util.Iterator;
 
+import org.kitei.logging.ArgumentRenderers;
+
 public final class FormattingUtils
 {
     private FormattingUtils()
@@ -30,26 +30,30 @@ public final class FormattingUtils
             return args.length == 0 ? "" : safeArgs(args);
         }
         else {
+            final FormatTemplate template = FormatTemplate.forPattern(msg);
+            if (template.getFailure() != null) {
+                return formatFailure(msg, template.getFailure(), args);
+            }
             try {
-                return format(msg, args);
+                return template.format(args);
             }
             catch (Exception ife) {
-                return "'" + msg + "', args: " + safeArgs(args) + "\n(Caught " + ife.getClass().getSimpleName() + " from String.format)";
+                return formatFailure(msg, ife.getClass(), args);
             }
         }
     }
 
+    private static String formatFailure(final String msg, final Class<?> failure, final Object... args)
+    {
+        return "'" + msg + "', args: " + safeArgs(args) + "\n(Caught " + failure.getSimpleName() + " from String.format)";
+    }
+
     public static String safeArgs(Object ... args)
     {
         StringBuilder sb = new StringBuilder("[");
 
         for (Iterator<Object> it = Arrays.asList(args).iterator(); it.hasNext(); ) {
-            try {
-                sb.append(String.valueOf(it.next()));
-            }
-            catch (Exception e) {
-                sb.append("<").append(e.getClass().getSimpleName()).append(">");
-            }
+            ArgumentRenderers.append(sb, it.next());
 
             if (it.hasNext()) {
                 sb.append(",");
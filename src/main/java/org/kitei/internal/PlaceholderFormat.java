@@ -0,0 +1,191 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.internal;
+
+import org.kitei.logging.ArgumentRenderers;
+
+/**
+ * Renders slf4j style messages, where each <tt>{}</tt> is replaced by the next argument.
+ *
+ * Follows the slf4j rules: <tt>\{}</tt> renders a literal <tt>{}</tt>, <tt>\\{}</tt> a backslash followed by the
+ * argument, placeholders without an argument are left in place and surplus arguments are ignored. Arguments are
+ * rendered with {@link ArgumentRenderers}.
+ */
+public final class PlaceholderFormat
+{
+    private static final String PLACEHOLDER = "{}";
+    private static final char ESCAPE = '\\';
+    private static final Object[] NULL_ARGUMENT = new Object[] { null };
+
+    private PlaceholderFormat()
+    {
+    }
+
+    /**
+     * A <tt>null</tt> argument array counts as a single <tt>null</tt> argument, as with
+     * {@link FormattingUtils#safeFormat(String, Object...)}.
+     */
+    public static String format(final String msg, final Object... rawArgs)
+    {
+        final Object[] args = (rawArgs == null) ? NULL_ARGUMENT : rawArgs;
+
+        if (msg == null) {
+            return args.length == 0 ? "" : FormattingUtils.safeArgs(args);
+        }
+
+        final RenderBuffer buffer = RenderBuffer.acquire();
+        try {
+            final StringBuilder sb = buffer.builder();
+            int pos = 0;
+            for (int i = 0; i < args.length; i++) {
+                final int next = nextPlaceholder(sb, msg, pos);
+                if (next == -1) {
+                    return sb.toString();
+                }
+                ArgumentRenderers.append(sb, args[i]);
+                pos = next;
+            }
+            return sb.append(msg, pos, msg.length()).toString();
+        }
+        finally {
+            buffer.release();
+        }
+    }
+
+    public static String format(final String msg, final long arg)
+    {
+        if (msg == null) {
+            return FormattingUtils.safeArgs(arg);
+        }
+
+        final RenderBuffer buffer = RenderBuffer.acquire();
+        try {
+            final StringBuilder sb = buffer.builder();
+            final int pos = nextPlaceholder(sb, msg, 0);
+            if (pos == -1) {
+                return sb.toString();
+            }
+            return sb.append(arg).append(msg, pos, msg.length()).toString();
+        }
+        finally {
+            buffer.release();
+        }
+    }
+
+    public static String format(final String msg, final int arg)
+    {
+        return format(msg, (long) arg);
+    }
+
+    public static String format(final String msg, final double arg)
+    {
+        if (msg == null) {
+            return FormattingUtils.safeArgs(arg);
+        }
+
+        final RenderBuffer buffer = RenderBuffer.acquire();
+        try {
+            final StringBuilder sb = buffer.builder();
+            final int pos = nextPlaceholder(sb, msg, 0);
+            if (pos == -1) {
+                return sb.toString();
+            }
+            return sb.append(arg).append(msg, pos, msg.length()).toString();
+        }
+        finally {
+            buffer.release();
+        }
+    }
+
+    public static String format(final String msg, final float arg)
+    {
+        if (msg == null) {
+            return FormattingUtils.safeArgs(arg);
+        }
+
+        final RenderBuffer buffer = RenderBuffer.acquire();
+        try {
+            final StringBuilder sb = buffer.builder();
+            final int pos = nextPlaceholder(sb, msg, 0);
+            if (pos == -1) {
+                return sb.toString();
+            }
+            return sb.append(arg).append(msg, pos, msg.length()).toString();
+        }
+        finally {
+            buffer.release();
+        }
+    }
+
+    public static String format(final String msg, final boolean arg)
+    {
+        return format(msg, arg ? "true" : "false");
+    }
+
+    public static String format(final String msg, final char arg)
+    {
+        return format(msg, String.valueOf(arg));
+    }
+
+    private static String format(final String msg, final String arg)
+    {
+        if (msg == null) {
+            return FormattingUtils.safeArgs(arg);
+        }
+
+        final RenderBuffer buffer = RenderBuffer.acquire();
+        try {
+            final StringBuilder sb = buffer.builder();
+            final int pos = nextPlaceholder(sb, msg, 0);
+            if (pos == -1) {
+                return sb.toString();
+            }
+            return sb.append(arg).append(msg, pos, msg.length()).toString();
+        }
+        finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Copies the text up to the next unescaped placeholder into the buffer. Returns the position after the placeholder
+     * or -1 if there is none, in which case all of the remaining text has been copied.
+     */
+    private static int nextPlaceholder(final StringBuilder sb, final String msg, final int from)
+    {
+        int pos = from;
+        while (true) {
+            final int index = msg.indexOf(PLACEHOLDER, pos);
+            if (index == -1) {
+                sb.append(msg, pos, msg.length());
+                return -1;
+            }
+
+            if (index > 0 && msg.charAt(index - 1) == ESCAPE) {
+                if (index > 1 && msg.charAt(index - 2) == ESCAPE) {
+                    // escaped escape, "\\{}" renders a backslash and the argument.
+                    sb.append(msg, pos, index - 1);
+                    return index + 2;
+                }
+                // escaped placeholder, "\{}" renders as "{}".
+                sb.append(msg, pos, index - 1).append('{');
+                pos = index + 1;
+            }
+            else {
+                sb.append(msg, pos, index);
+                return index + 2;
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.internal;
+
+/**
+ * Per-thread render buffer for log messages. A nested render on the same thread (e.g. from an argument's
+ * <tt>toString()</tt>) gets a fresh builder instead of clobbering the one in use.
+ */
+final class RenderBuffer
+{
+    private static final int INITIAL_SIZE = 256;
+    private static final int MAX_SIZE = 16384;
+
+    private static final ThreadLocal<RenderBuffer> BUFFERS = new ThreadLocal<RenderBuffer>() {
+        @Override
+        protected RenderBuffer initialValue()
+        {
+            return new RenderBuffer(true);
+        }
+    };
+
+    private StringBuilder sb = new StringBuilder(INITIAL_SIZE);
+    private boolean inUse = false;
+    private final boolean pooled;
+
+    private RenderBuffer(final boolean pooled)
+    {
+        this.pooled = pooled;
+    }
+
+    static RenderBuffer acquire()
+    {
+        final RenderBuffer buffer = BUFFERS.get();
+        if (buffer.inUse) {
+            return new RenderBuffer(false);
+        }
+        buffer.inUse = true;
+        return buffer;
+    }
+
+    StringBuilder builder()
+    {
+        return sb;
+    }
+
+    void release()
+    {
+        if (pooled) {
+            if (sb.capacity() > MAX_SIZE) {
+                sb = new StringBuilder(INITIAL_SIZE);
+            }
+            else {
+                sb.setLength(0);
+            }
+            inUse = false;
+        }
+    }
+}
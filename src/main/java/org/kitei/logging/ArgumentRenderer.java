@@ -0,0 +1,26 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+/**
+ * Renders log message arguments of a type, see {@link ArgumentRenderers#register(Class, ArgumentRenderer)}.
+ */
+public interface ArgumentRenderer<T>
+{
+    /**
+     * Appends a value to the builder of the context. Nested values should be rendered with
+     * {@link RenderContext#append(Object)}, and rendering should stop once {@link RenderContext#isFull()} is true.
+     */
+    void render(RenderContext context, T value);
+}
@@ -0,0 +1,342 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.kitei.system.SystemPropertyKeys;
+
+/**
+ * Renders log message arguments. The renderer of a class is looked up once and kept in a <tt>ClassValue</tt>.
+ *
+ * A {@link LogRenderable} writes itself into the message buffer. Arrays render element by element, collections and maps in their usual <tt>toString()</tt> form and byte buffers as
+ * hex of their remaining bytes. Containers render at most {@link #MAX_ELEMENTS} elements, cycles render as
+ * <tt>[...]</tt>. Collections and maps only use the built-in renderers if they come from <tt>java.util</tt> or keep
+ * the <tt>toString()</tt> of <tt>AbstractCollection</tt> / <tt>AbstractMap</tt>; all other objects use their own
+ * <tt>toString()</tt>.
+ *
+ * Each argument renders to at most {@link #ARGUMENT_LIMIT} characters and a message stops rendering arguments after
+ * {@link #MESSAGE_LIMIT} characters. Cut output ends with <tt>...</tt>. The limits bound the output and the work of
+ * the built-in renderers, but not the work of a <tt>toString()</tt>: an object without a renderer still builds its
+ * whole string, of which only the budget is kept. Register a renderer or implement {@link LogRenderable} for objects
+ * with large string forms.
+ */
+public final class ArgumentRenderers
+{
+    public static final int ARGUMENT_LIMIT = Integer.getInteger(SystemPropertyKeys.LOGGING_ARGUMENT_LIMIT, 8192);
+    public static final int MESSAGE_LIMIT = Integer.getInteger(SystemPropertyKeys.LOGGING_MESSAGE_LIMIT, 65536);
+    public static final int MAX_ELEMENTS = 100;
+
+    private static final int MAX_BYTES = 256;
+    private static final String TRUNCATED = "...";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final List<Registration> REGISTRATIONS = new CopyOnWriteArrayList<Registration>();
+    private static volatile int version = 0;
+
+    private static final ClassValue<Resolved> RENDERERS = new ClassValue<Resolved>() {
+        @Override
+        protected Resolved computeValue(final Class<?> type)
+        {
+            final int currentVersion = version;
+            return new Resolved(currentVersion, resolve(type));
+        }
+    };
+
+    private ArgumentRenderers()
+    {
+    }
+
+    /**
+     * Registers a renderer for a type and its subtypes. The most recent registration that matches a class wins over
+     * older ones and over the built-in renderers. Meant to be called while an application starts.
+     */
+    public static synchronized <T> void register(final Class<T> type, final ArgumentRenderer<? super T> renderer)
+    {
+        REGISTRATIONS.add(0, new Registration(checkNotNull(type, "type"), checkNotNull(renderer, "renderer")));
+        version++;
+    }
+
+    /**
+     * Renders an argument into a builder that holds a single message. An argument whose rendering throws renders as
+     * <tt>&lt;ExceptionName&gt;</tt>.
+     */
+    public static void append(final StringBuilder sb, final Object arg)
+    {
+        final int start = sb.length();
+        try {
+            appendStrict(sb, arg);
+        }
+        catch (Exception e) {
+            sb.setLength(start);
+            sb.append("<").append(e.getClass().getSimpleName()).append(">");
+        }
+    }
+
+    /**
+     * Like {@link #append(StringBuilder, Object)}, but exceptions thrown while rendering are passed on. The builder
+     * contains partial output in that case.
+     */
+    public static void appendStrict(final StringBuilder sb, final Object arg)
+    {
+        final int start = sb.length();
+        if (start >= MESSAGE_LIMIT) {
+            sb.append(TRUNCATED);
+            return;
+        }
+
+        final int end = Math.min(start + ARGUMENT_LIMIT, MESSAGE_LIMIT);
+        new RenderContext(sb, end).append(arg);
+
+        if (sb.length() > end) {
+            sb.setLength(end);
+            sb.append(TRUNCATED);
+        }
+    }
+
+    /**
+     * Returns the renderer for a class, or <tt>null</tt> if <tt>toString()</tt> is used.
+     */
+    static ArgumentRenderer<Object> rendererFor(final Class<?> type)
+    {
+        Resolved resolved = RENDERERS.get(type);
+        if (resolved.version != version) {
+            RENDERERS.remove(type);
+            resolved = RENDERERS.get(type);
+        }
+        return resolved.renderer;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentRenderer<Object> resolve(final Class<?> type)
+    {
+        for (final Registration registration : REGISTRATIONS) {
+            if (registration.type.isAssignableFrom(type)) {
+                return (ArgumentRenderer<Object>) registration.renderer;
+            }
+        }
+
+        if (LogRenderable.class.isAssignableFrom(type)) {
+            return RENDERABLE;
+        }
+        else if (type.isArray()) {
+            return ARRAY;
+        }
+        else if (ByteBuffer.class.isAssignableFrom(type)) {
+            return BYTE_BUFFER;
+        }
+        else if (Collection.class.isAssignableFrom(type) && hasPlainToString(type, AbstractCollection.class)) {
+            return COLLECTION;
+        }
+        else if (Map.class.isAssignableFrom(type) && hasPlainToString(type, AbstractMap.class)) {
+            return MAP;
+        }
+        return null;
+    }
+
+    private static boolean hasPlainToString(final Class<?> type, final Class<?> base)
+    {
+        if (type.getName().startsWith("java.util.")) {
+            return true;
+        }
+        try {
+            return type.getMethod("toString").getDeclaringClass() == base;
+        }
+        catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static boolean appendMore(final RenderContext context, final int index, final int size)
+    {
+        if (index >= MAX_ELEMENTS || context.isFull()) {
+            context.builder().append(TRUNCATED).append(' ').append(size - index).append(" more");
+            return true;
+        }
+        return false;
+    }
+
+    private static final ArgumentRenderer<Object> RENDERABLE = new ArgumentRenderer<Object>() {
+        @Override
+        public void render(final RenderContext context, final Object value)
+        {
+            try {
+                ((LogRenderable) value).renderTo(context.appendable());
+            }
+            catch (IOException e) {
+                // The appendable writes to a StringBuilder and does not throw.
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private static final ArgumentRenderer<Object> ARRAY = new ArgumentRenderer<Object>() {
+        @Override
+        public void render(final RenderContext context, final Object array)
+        {
+            final StringBuilder sb = context.builder();
+            final int length = Array.getLength(array);
+            final Class<?> componentType = array.getClass().getComponentType();
+
+            sb.append('[');
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                if (appendMore(context, i, length)) {
+                    break;
+                }
+
+                if (!componentType.isPrimitive()) {
+                    context.append(((Object[]) array)[i]);
+                }
+                else if (componentType == int.class) {
+                    sb.append(((int[]) array)[i]);
+                }
+                else if (componentType == long.class) {
+                    sb.append(((long[]) array)[i]);
+                }
+                else if (componentType == byte.class) {
+                    sb.append(((byte[]) array)[i]);
+                }
+                else if (componentType == short.class) {
+                    sb.append(((short[]) array)[i]);
+                }
+                else if (componentType == char.class) {
+                    sb.append(((char[]) array)[i]);
+                }
+                else if (componentType == boolean.class) {
+                    sb.append(((boolean[]) array)[i]);
+                }
+                else if (componentType == float.class) {
+                    sb.append(((float[]) array)[i]);
+                }
+                else {
+                    sb.append(((double[]) array)[i]);
+                }
+            }
+            sb.append(']');
+        }
+    };
+
+    private static final ArgumentRenderer<Object> COLLECTION = new ArgumentRenderer<Object>() {
+        @Override
+        public void render(final RenderContext context, final Object value)
+        {
+            final Collection<?> collection = (Collection<?>) value;
+            final StringBuilder sb = context.builder();
+            final int size = collection.size();
+
+            sb.append('[');
+            int i = 0;
+            for (final Object element : collection) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                if (appendMore(context, i, size)) {
+                    break;
+                }
+                context.append(element == collection ? "(this Collection)" : element);
+                i++;
+            }
+            sb.append(']');
+        }
+    };
+
+    private static final ArgumentRenderer<Object> MAP = new ArgumentRenderer<Object>() {
+        @Override
+        public void render(final RenderContext context, final Object value)
+        {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            final StringBuilder sb = context.builder();
+            final int size = map.size();
+
+            sb.append('{');
+            int i = 0;
+            for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                if (appendMore(context, i, size)) {
+                    break;
+                }
+                context.append(entry.getKey() == map ? "(this Map)" : entry.getKey());
+                sb.append('=');
+                context.append(entry.getValue() == map ? "(this Map)" : entry.getValue());
+                i++;
+            }
+            sb.append('}');
+        }
+    };
+
+    private static final ArgumentRenderer<Object> BYTE_BUFFER = new ArgumentRenderer<Object>() {
+        @Override
+        public void render(final RenderContext context, final Object value)
+        {
+            final ByteBuffer buffer = (ByteBuffer) value;
+            final StringBuilder sb = context.builder();
+            final int position = buffer.position();
+            final int limit = buffer.limit();
+            final int end = Math.min(limit, position + MAX_BYTES);
+
+            sb.append(buffer.getClass().getSimpleName())
+                .append("[pos=").append(position)
+                .append(" lim=").append(limit)
+                .append(" cap=").append(buffer.capacity())
+                .append(' ');
+            for (int i = position; i < end && !context.isFull(); i++) {
+                final int b = buffer.get(i) & 0xff;
+                sb.append(HEX[b >>> 4]).append(HEX[b & 0xf]);
+            }
+            if (end < limit) {
+                sb.append(TRUNCATED);
+            }
+            sb.append(']');
+        }
+    };
+
+    private static final class Registration
+    {
+        private final Class<?> type;
+        private final ArgumentRenderer<?> renderer;
+
+        private Registration(final Class<?> type, final ArgumentRenderer<?> renderer)
+        {
+            this.type = type;
+            this.renderer = renderer;
+        }
+    }
+
+    private static final class Resolved
+    {
+        private final int version;
+        private final ArgumentRenderer<Object> renderer;
+
+        private Resolved(final int version, final ArgumentRenderer<Object> renderer)
+        {
+            this.version = version;
+            this.renderer = renderer;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+/**
+ * What an asynchronous logger does when its queue is full, see {@link LogConfigurator#startAsync(int, AsyncOverflow)}.
+ */
+public enum AsyncOverflow
+{
+    /** The logging thread waits for room in the queue. No message is lost. */
+    BLOCK,
+
+    /**
+     * TRACE and DEBUG messages are dropped once the queue is three quarters full, leaving room for the other levels,
+     * which wait for room.
+     */
+    DROP_DEBUG_FIRST,
+
+    /** Messages are dropped while the queue is full. */
+    DROP;
+}
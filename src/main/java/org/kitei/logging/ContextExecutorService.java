@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.common.util.concurrent.ForwardingExecutorService;
+
+/**
+ * Runs each task with the {@link LogContext} of the submitting thread.
+ */
+final class ContextExecutorService extends ForwardingExecutorService
+{
+    private final ExecutorService delegate;
+
+    ContextExecutorService(final ExecutorService delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    @Override
+    protected ExecutorService delegate()
+    {
+        return delegate;
+    }
+
+    @Override
+    public void execute(final Runnable command)
+    {
+        delegate.execute(LogContext.propagate(command));
+    }
+
+    @Override
+    public <T> Future<T> submit(final Callable<T> task)
+    {
+        return delegate.submit(LogContext.propagate(task));
+    }
+
+    @Override
+    public Future<?> submit(final Runnable task)
+    {
+        return delegate.submit(LogContext.propagate(task));
+    }
+
+    @Override
+    public <T> Future<T> submit(final Runnable task, final T result)
+    {
+        return delegate.submit(LogContext.propagate(task), result);
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(final Collection<? extends Callable<T>> tasks) throws InterruptedException
+    {
+        return delegate.invokeAll(propagate(tasks));
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(final Collection<? extends Callable<T>> tasks, final long timeout, final TimeUnit unit) throws InterruptedException
+    {
+        return delegate.invokeAll(propagate(tasks), timeout, unit);
+    }
+
+    @Override
+    public <T> T invokeAny(final Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException
+    {
+        return delegate.invokeAny(propagate(tasks));
+    }
+
+    @Override
+    public <T> T invokeAny(final Collection<? extends Callable<T>> tasks, final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+    {
+        return delegate.invokeAny(propagate(tasks), timeout, unit);
+    }
+
+    private static <T> List<Callable<T>> propagate(final Collection<? extends Callable<T>> tasks)
+    {
+        final LogContext context = LogContext.current();
+        final List<Callable<T>> result = new ArrayList<Callable<T>>(tasks.size());
+        for (final Callable<T> task : tasks) {
+            result.add(context.wrap(task));
+        }
+        return result;
+    }
+}
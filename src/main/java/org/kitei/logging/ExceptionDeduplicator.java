@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Remembers which exceptions were logged with a full stack trace. An exception is identified by a fingerprint of the
+ * message template, its type, the top stack frames and the same for each cause. The table is bounded; an entry expires
+ * one window after its full stack trace was logged.
+ */
+final class ExceptionDeduplicator
+{
+    private static final int MAX_ENTRIES = 1024;
+    private static final int MAX_FRAMES = 8;
+    private static final int MAX_CAUSES = 8;
+
+    private final ConcurrentMap<Long, AtomicInteger> seen;
+
+    ExceptionDeduplicator(final long window, final TimeUnit unit, final Ticker ticker)
+    {
+        this.seen = CacheBuilder.newBuilder()
+            .maximumSize(MAX_ENTRIES)
+            .expireAfterWrite(window, unit)
+            .ticker(ticker)
+            .<Long, AtomicInteger>build()
+            .asMap();
+    }
+
+    /**
+     * Returns 0 if the full stack trace should be logged, otherwise how often the exception was seen again since then.
+     */
+    int occurrence(final String template, final Throwable t)
+    {
+        final Long fingerprint = fingerprint(template, t);
+        final AtomicInteger count = seen.get(fingerprint);
+        if (count != null) {
+            return count.incrementAndGet();
+        }
+        final AtomicInteger previous = seen.putIfAbsent(fingerprint, new AtomicInteger());
+        return (previous == null) ? 0 : previous.incrementAndGet();
+    }
+
+    static long fingerprint(final String template, final Throwable t)
+    {
+        long hash = (template == null) ? 0L : template.hashCode();
+        Throwable current = t;
+        for (int i = 0; current != null && i < MAX_CAUSES; i++) {
+            hash = mix(hash, current.getClass().getName().hashCode());
+            final StackTraceElement[] frames = current.getStackTrace();
+            final int frameCount = Math.min(frames.length, MAX_FRAMES);
+            for (int j = 0; j < frameCount; j++) {
+                hash = mix(hash, frames[j].hashCode());
+            }
+            current = (current.getCause() == current) ? null : current.getCause();
+        }
+        return hash;
+    }
+
+    private static long mix(final long hash, final int value)
+    {
+        return (hash ^ value) * 0x9E3779B97F4A7C15L;
+    }
+}
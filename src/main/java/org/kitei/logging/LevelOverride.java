@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kitei.logging.Log.LogLevel;
+
+/**
+ * Forces a level for the current thread, e.g. to debug a single request without changing the level for everybody.
+ *
+ * <pre>
+ * try (LevelOverride override = LevelOverride.force(LogLevel.DEBUG)) {
+ *     handle(request);
+ * }
+ * </pre>
+ *
+ * While the override is open, every Log (or every Log whose category starts with a prefix) on this thread logs at the
+ * given level or above, regardless of the configured levels. Overrides nest; closing one restores the previous one,
+ * and also closes the overrides opened after it that are still open. It must be closed on the thread that opened it. An override is kept in a thread local, which works the same for
+ * virtual threads; work handed to other threads does not see it.
+ *
+ * As long as no override is open anywhere, a Log pays one extra check of a shared counter, and only when a level is
+ * disabled.
+ */
+public final class LevelOverride implements AutoCloseable
+{
+    private static final int ALL_LEVELS = (1 << LogLevel.values().length) - 1;
+
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+
+    private static final ThreadLocal<LevelOverride> CURRENT = new ThreadLocal<LevelOverride>();
+
+    private final int levelMask;
+    private final String categoryPrefix;
+    private final LevelOverride previous;
+    private boolean closed = false;
+
+    private LevelOverride(final LogLevel level, final String categoryPrefix, final LevelOverride previous)
+    {
+        this.levelMask = ALL_LEVELS & ~((1 << level.ordinal()) - 1);
+        this.categoryPrefix = categoryPrefix;
+        this.previous = previous;
+    }
+
+    /**
+     * Forces a level for all categories on this thread.
+     */
+    public static LevelOverride force(final LogLevel level)
+    {
+        return force(level, null);
+    }
+
+    /**
+     * Forces a level for all categories starting with a prefix on this thread. A <tt>null</tt> prefix matches all
+     * categories.
+     */
+    public static LevelOverride force(final LogLevel level, final String categoryPrefix)
+    {
+        checkNotNull(level, "level");
+
+        final LevelOverride override = new LevelOverride(level, categoryPrefix, CURRENT.get());
+        CURRENT.set(override);
+        ACTIVE.incrementAndGet();
+        return override;
+    }
+
+    /**
+     * Returns whether an override on this thread enables a level for a category.
+     */
+    static boolean forces(final int levelMask, final String category)
+    {
+        if (ACTIVE.get() == 0) {
+            return false;
+        }
+
+        final LevelOverride override = CURRENT.get();
+        return override != null && (override.levelMask & levelMask) != 0
+            && (override.categoryPrefix == null || category.startsWith(override.categoryPrefix));
+    }
+
+    /**
+     * Restores the previous override.
+     *
+     * @throws IllegalStateException if the override is not open on this thread.
+     */
+    @Override
+    public void close()
+    {
+        if (closed) {
+            return;
+        }
+
+        final LevelOverride current = CURRENT.get();
+        for (LevelOverride override = current; override != this; override = override.previous) {
+            if (override == null) {
+                throw new IllegalStateException("override is not open on this thread");
+            }
+        }
+        for (LevelOverride override = current; override != previous; override = override.previous) {
+            override.closed = true;
+            ACTIVE.decrementAndGet();
+        }
+
+        if (previous == null) {
+            CURRENT.remove();
+        }
+        else {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -13,21 +13,51 @@
  */
 package org.kitei.logging;
 
+import org.kitei.internal.FormatTemplate;
 import org.kitei.internal.FormattingUtils;
+import org.kitei.internal.PlaceholderFormat;
+import org.kitei.logging.internal.AsyncDispatcher;
+import org.kitei.logging.internal.ConfigurationGeneration;
+import org.kitei.logging.internal.Log4jDispatch;
 import org.kitei.system.SystemPropertyKeys;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
-
+import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.IllegalFormatException;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.lang.String.format;
 
 /**
  * Wraps a slf4j logger into a number of convenience methods such as varargs.
+ *
+ * Calls with up to four arguments and calls with a single primitive argument resolve to fixed-arity
+ * overloads, so a call for a disabled level neither allocates a varargs array nor boxes its arguments.
+ * <tt>byte</tt> and <tt>short</tt> arguments widen to the <tt>int</tt> overloads.
+ *
+ * Messages use <tt>String.format</tt> syntax unless the Log was obtained with {@link #withFormatStyle(FormatStyle)}.
+ *
+ * Arguments that are a {@link Supplier} and messages given as a {@link Supplier} are only evaluated after the
+ * level check passed, so they can be used for arguments that are expensive to compute.
+ *
+ * <b>Levels are cached.</b> Changes through {@link LogConfigurator}, reconfiguration and appender changes take effect
+ * at once. Levels, thresholds or additivity changed directly through the log4j API are only seen after
+ * {@link LogConfigurator#levelsChanged()} is called, or after the next periodic refresh if
+ * {@link SystemPropertyKeys#LOGGING_LEVEL_REFRESH_INTERVAL} is set.
  */
 public final class Log
 {
@@ -40,25 +70,105 @@ public final class Log
         ERROR
     };
 
+    /**
+     * How messages with arguments are rendered.
+     */
+    public enum FormatStyle
+    {
+        /** <tt>String.format</tt> style, e.g. <tt>"%s took %d ms"</tt>. This is the default. */
+        PRINTF,
+
+        /** slf4j style, e.g. <tt>"{} took {} ms"</tt>. */
+        PLACEHOLDER
+    };
+
     private static final String LOG_NAME = Log.class.getName();
 
-    private final Logger wrappedLogger;
+    private static final LogLevel[] LEVELS = LogLevel.values();
+
+    private static final int LEVEL_BITS = 32 - ConfigurationGeneration.BITS;
+
+    /**
+     * Canonical Log instances. A Log holds no reference to the classes it logs for and is only weakly held here, so
+     * neither cache keeps a classloader from being unloaded. As the Log is shared, the
+     * {@link SystemPropertyKeys#LOGGING_TRIM_EXCEPTIONS} property is read when a category is first used.
+     */
+    private static final LoadingCache<String, Log> CATEGORY_LOGS = CacheBuilder.newBuilder()
+        .weakValues()
+        .recordStats()
+        .build(new CacheLoader<String, Log>() {
+            @Override
+            public Log load(final String category)
+            {
+                return new Log(LoggerFactory.getLogger(category));
+            }
+        });
+
+    private static final LoadingCache<Logger, Log> LOGGER_LOGS = CacheBuilder.newBuilder()
+        .weakKeys()
+        .weakValues()
+        .recordStats()
+        .build(new CacheLoader<Logger, Log>() {
+            @Override
+            public Log load(final Logger wrappedLogger)
+            {
+                return new Log(wrappedLogger);
+            }
+        });
+
+    /**
+     * <tt>StackWalker#getCallerClass()</tt> on JVMs that have it, which only walks up to the calling frame. Must be
+     * invoked directly from the public method whose caller is wanted.
+     */
+    private static final MethodHandle GET_CALLER_CLASS = findGetCallerClass();
+
+    /** The Log returned by {@link #findLog()} for each calling class. */
+    private static final ClassValue<Log> CALLER_LOGS = new ClassValue<Log>() {
+        @Override
+        protected Log computeValue(final Class<?> type)
+        {
+            return forClass(type);
+        }
+    };
+
+    private final String category;
+    private volatile Logger wrappedLogger;
+
+    /**
+     * The configuration generation in the upper bits, one bit per enabled level in the lower bits. An int is
+     * always written atomically, so racing updates are harmless.
+     */
+    private int levelState = 0;
     private final boolean trimExceptions;
+    private final FormatStyle formatStyle;
+    private final ExceptionDeduplicator deduplicator;
+    private volatile LogTimers timers;
 
     /**
-     * Finds the logger for the current class by using the call stack.
+     * Finds the logger for the current class by using the call stack. On JVMs with <tt>StackWalker</tt>, only the
+     * calling frame is looked at and the Log is cached per calling class; otherwise the whole stack trace is taken.
      */
     public static Log findLog()
     {
-        return findLog(0);
+        Class<?> caller = null;
+        if (GET_CALLER_CLASS != null) {
+            try {
+                caller = (Class<?>) GET_CALLER_CLASS.invokeExact();
+            }
+            catch (Throwable t) {
+                // use the stack trace.
+            }
+        }
+        return (caller == null) ? findLogByStackTrace(0) : CALLER_LOGS.get(caller);
     }
 
     /**
-     * Finds the logger for the caller by using the call stack.
+     * Finds the logger for the caller by using the call stack. This always takes the whole stack trace, callers
+     * that run often should keep the result.
      */
     public static Log findCallerLog()
     {
-        return findLog(1);
+        return findLogByStackTrace(1);
     }
 
     /**
@@ -67,7 +177,7 @@ public final class Log
     public static Log forClass(final Class<?> clazz)
     {
         Preconditions.checkNotNull(clazz, "clazz");
-        return new Log(LoggerFactory.getLogger(clazz));
+        return CATEGORY_LOGS.getUnchecked(clazz.getName());
     }
 
     /**
@@ -76,7 +186,7 @@ public final class Log
     public static Log forCategory(final String category)
     {
         Preconditions.checkNotNull(category, "category");
-        return new Log(LoggerFactory.getLogger(category));
+        return CATEGORY_LOGS.getUnchecked(category);
     }
 
     /**
@@ -84,10 +194,48 @@ public final class Log
      */
     public static Log forLogger(final Logger wrappedLogger)
     {
-        return new Log(wrappedLogger);
+        Preconditions.checkNotNull(wrappedLogger, "wrappedLogger");
+        return LOGGER_LOGS.getUnchecked(wrappedLogger);
+    }
+
+    /**
+     * Returns a Logger for a given class that looks up the underlying logger only when it is first used.
+     *
+     * Meant for <tt>static final</tt> Log fields in classes that rarely log; class initialization does not pay
+     * for the logging framework's logger lookup. Once bound, the Log costs the same as one from {@link #forClass(Class)}.
+     */
+    public static Log lazyForClass(final Class<?> clazz)
+    {
+        Preconditions.checkNotNull(clazz, "clazz");
+        return lazyForCategory(clazz.getName());
+    }
+
+    /**
+     * Returns a Logger for a given category name that looks up the underlying logger only when it is first used.
+     */
+    public static Log lazyForCategory(final String category)
+    {
+        Preconditions.checkNotNull(category, "category");
+
+        final Log log = CATEGORY_LOGS.getIfPresent(category);
+        if (log != null) {
+            return log;
+        }
+        final Log lazyLog = new Log(category);
+        final Log existingLog = CATEGORY_LOGS.asMap().putIfAbsent(category, lazyLog);
+        return (existingLog == null) ? lazyLog : existingLog;
+    }
+
+    /**
+     * Returns the hit and miss statistics of the caches behind {@link #forClass(Class)}, {@link #forCategory(String)}
+     * and {@link #forLogger(Logger)}.
+     */
+    public static CacheStats getCacheStats()
+    {
+        return CATEGORY_LOGS.stats().plus(LOGGER_LOGS.stats());
     }
 
-    private static Log findLog(final int depth)
+    private static Log findLogByStackTrace(final int depth)
     {
         final StackTraceElement[] stacktrace = Thread.currentThread().getStackTrace();
         int i = 1;
@@ -100,16 +248,103 @@ public final class Log
         throw new IllegalStateException(format("Attempt to generate a logger for an invalid depth (%d vs. %d).", depth, stacktrace.length - i));
     }
 
+    private static MethodHandle findGetCallerClass()
+    {
+        try {
+            final Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+            final Class<?> optionClass = Class.forName("java.lang.StackWalker$Option");
+            final Object walker = walkerClass.getMethod("getInstance", optionClass)
+                .invoke(null, optionClass.getField("RETAIN_CLASS_REFERENCE").get(null));
+            // getCallerClass is caller sensitive and can not be looked up with the public lookup.
+            return MethodHandles.lookup().findVirtual(walkerClass, "getCallerClass", MethodType.methodType(Class.class)).bindTo(walker);
+        }
+        catch (ReflectiveOperationException e) {
+            // Before Java 9.
+            return null;
+        }
+        catch (RuntimeException e) {
+            // Not permitted, use the stack trace.
+            return null;
+        }
+    }
+
     private Log(final Logger wrappedLogger)
     {
-        this.wrappedLogger = checkNotNull(wrappedLogger, "wrappedLogger");
-        this.trimExceptions = Boolean.getBoolean(SystemPropertyKeys.LOGGING_TRIM_EXCEPTIONS);
+        this(checkNotNull(wrappedLogger, "wrappedLogger").getName(), wrappedLogger, Boolean.getBoolean(SystemPropertyKeys.LOGGING_TRIM_EXCEPTIONS), FormatStyle.PRINTF, null);
+    }
+
+    private Log(final String category)
+    {
+        this(category, null, Boolean.getBoolean(SystemPropertyKeys.LOGGING_TRIM_EXCEPTIONS), FormatStyle.PRINTF, null);
+    }
+
+    private Log(final String category, final Logger wrappedLogger, final boolean trimExceptions, final FormatStyle formatStyle, final ExceptionDeduplicator deduplicator)
+    {
+        this.category = checkNotNull(category, "category");
+        this.wrappedLogger = wrappedLogger;
+        this.trimExceptions = trimExceptions;
+        this.formatStyle = checkNotNull(formatStyle, "formatStyle");
+        this.deduplicator = deduplicator;
+    }
+
+    /**
+     * Returns a Log for the same category that renders messages in the given style.
+     */
+    public Log withFormatStyle(final FormatStyle formatStyle)
+    {
+        return (formatStyle == this.formatStyle) ? this : new Log(category, wrappedLogger, trimExceptions, formatStyle, deduplicator);
+    }
+
+    /**
+     * Returns a Log for the same category that logs the stack trace of a repeated exception only once per window.
+     * Repeats of the same message template with the same exception (type, top frames and causes) within the window
+     * are logged as a single line with the exception and a "seen N more times" count.
+     */
+    public Log withDeduplication(final long window, final TimeUnit unit)
+    {
+        return withDeduplication(window, unit, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    Log withDeduplication(final long window, final TimeUnit unit, final Ticker ticker)
+    {
+        Preconditions.checkArgument(window > 0, "window must be positive");
+        checkNotNull(unit, "unit");
+        return new Log(category, wrappedLogger, trimExceptions, formatStyle, new ExceptionDeduplicator(window, unit, ticker));
+    }
+
+    public FormatStyle getFormatStyle()
+    {
+        return formatStyle;
     }
 
     @VisibleForTesting
     Logger getWrappedLogger()
     {
-        return wrappedLogger;
+        return logger();
+    }
+
+    @VisibleForTesting
+    boolean isBound()
+    {
+        return wrappedLogger != null;
+    }
+
+    /**
+     * Returns the wrapped logger, binding it on first use for a Log created by {@link #lazyForClass(Class)}.
+     */
+    private Logger logger()
+    {
+        final Logger logger = wrappedLogger;
+        return (logger != null) ? logger : bind();
+    }
+
+    private Logger bind()
+    {
+        // LoggerFactory returns the same logger for concurrent callers, so racing binds are harmless.
+        final Logger logger = LoggerFactory.getLogger(category);
+        wrappedLogger = logger;
+        return logger;
     }
 
     // ========================================================================
@@ -118,460 +353,2531 @@ public final class Log
     //
     // ========================================================================
 
+    /**
+     * Returns whether a level is enabled. The enabled levels are cached and recomputed when the logging
+     * configuration changes, see {@link LogConfigurator#levelsChanged()}.
+     */
+    public boolean isEnabled(final LogLevel level)
+    {
+        return isEnabled(1 << level.ordinal());
+    }
+
+    /**
+     * Level check with a precomputed <tt>1 &lt;&lt; level.ordinal()</tt> mask.
+     */
+    boolean isEnabled(final int levelMask)
+    {
+        return isLogged(levelMask) || LogBuffer.captures(levelMask);
+    }
+
+    /**
+     * Decides whether INFO, WARN and ERROR messages include the stack trace with trimmed exceptions. Ignores a
+     * {@link LogBuffer}, so that buffering does not change what is logged.
+     */
+    private boolean isDebugLogged()
+    {
+        return isLogged(1 << LogLevel.DEBUG.ordinal());
+    }
+
+    /**
+     * Like {@link #isEnabled(int)}, but false for levels that a {@link LogBuffer} only captures.
+     */
+    boolean isLogged(final int levelMask)
+    {
+        return isConfigured(levelMask) || LevelOverride.forces(levelMask, category);
+    }
+
+    /**
+     * Whether the logging framework has a level enabled for the category, ignoring {@link LevelOverride}.
+     */
+    private boolean isConfigured(final int levelMask)
+    {
+        int state = levelState;
+        if ((state >>> LEVEL_BITS) != ConfigurationGeneration.current()) {
+            state = refreshLevels();
+        }
+        return (state & levelMask) != 0;
+    }
+
+    /**
+     * Returns whether a level is enabled and messages with the marker pass the {@link MarkerFilter}.
+     */
+    public boolean isEnabled(final LogLevel level, final Marker marker)
+    {
+        return isEnabled(level) && (marker == null || MarkerFilter.active().accepts(marker, MarkerIds.mask(marker)));
+    }
+
+    private int refreshLevels()
+    {
+        // Read the generation first. A configuration change while the levels are read leaves
+        // an outdated generation behind, so the levels are read again on the next check.
+        final int generation = ConfigurationGeneration.current();
+        ConfigurationGeneration.watch();
+
+        final Logger logger = logger();
+        final int state = (generation << LEVEL_BITS)
+            | (logger.isTraceEnabled() ? 1 << LogLevel.TRACE.ordinal() : 0)
+            | (logger.isDebugEnabled() ? 1 << LogLevel.DEBUG.ordinal() : 0)
+            | (logger.isInfoEnabled() ? 1 << LogLevel.INFO.ordinal() : 0)
+            | (logger.isWarnEnabled() ? 1 << LogLevel.WARN.ordinal() : 0)
+            | (logger.isErrorEnabled() ? 1 << LogLevel.ERROR.ordinal() : 0);
+        levelState = state;
+        return state;
+    }
+
     public boolean isTraceEnabled()
     {
-        return wrappedLogger.isTraceEnabled();
+        return isEnabled(LogLevel.TRACE);
     }
 
     public boolean isDebugEnabled()
     {
-        return wrappedLogger.isDebugEnabled();
+        return isEnabled(LogLevel.DEBUG);
     }
 
     public boolean isInfoEnabled()
     {
-        return wrappedLogger.isInfoEnabled();
+        return isEnabled(LogLevel.INFO);
     }
 
     public boolean isWarnEnabled()
     {
-        return wrappedLogger.isWarnEnabled();
+        return isEnabled(LogLevel.WARN);
     }
 
     public boolean isErrorEnabled()
     {
-        return wrappedLogger.isErrorEnabled();
+        return isEnabled(LogLevel.ERROR);
     }
 
-    // ========================================================================
-    //
-    // Trace level methods
-    //
-    // ========================================================================
-
-    public void trace(final String message)
+    /**
+     * Returns a handle for a single log statement. Keep it in a <tt>static final</tt> field; the pattern is compiled once
+     * and a disabled call costs one cached level check.
+     *
+     * <pre>
+     * private static final LogSite SLOW_QUERY = LOG.site(LogLevel.DEBUG, "slow query %s took %d ms");
+     * ...
+     * SLOW_QUERY.log(query, millis);
+     * </pre>
+     */
+    public LogSite site(final LogLevel level, final String pattern)
     {
-        wrappedLogger.trace(message);
+        checkNotNull(level, "level");
+        return new LogSite(this, level, pattern);
     }
 
-    public void trace(final Throwable t)
+    /**
+     * Starts a structured event at a level, see {@link LogEvent}. Returns a shared no-op event if the level is disabled.
+     */
+    public LogEvent at(final LogLevel level)
     {
-        wrappedLogger.trace("", t);
+        return isEnabled(level) ? LogEvent.acquire(this, level) : LogEvent.DISABLED;
     }
 
-    public void trace(final Throwable t, final String message)
+    public LogEvent atTrace()
     {
-        wrappedLogger.trace(message, t);
+        return at(LogLevel.TRACE);
     }
 
-    public void trace(final String message, final Object... args)
+    public LogEvent atDebug()
     {
-        if (wrappedLogger.isTraceEnabled()) {
-            wrappedLogger.trace(safeFormat(LogLevel.TRACE, message, args));
-        }
+        return at(LogLevel.DEBUG);
     }
 
-    public void trace(final Throwable t, final String message, final Object... args)
+    public LogEvent atInfo()
     {
-        if (wrappedLogger.isTraceEnabled()) {
-            wrappedLogger.trace(safeFormat(LogLevel.TRACE, message, args), t);
-        }
+        return at(LogLevel.INFO);
     }
 
-    // ========================================================================
-    //
-    // Debug level methods
-    //
-    // ========================================================================
+    public LogEvent atWarn()
+    {
+        return at(LogLevel.WARN);
+    }
 
-    public void debug(final String message)
+    public LogEvent atError()
     {
-        wrappedLogger.debug(message);
+        return at(LogLevel.ERROR);
     }
 
-    public void debug(final Throwable t)
+    /**
+     * Starts a batch of messages that are written together when it is closed, see {@link LogBatch}.
+     */
+    public LogBatch batch()
     {
-        wrappedLogger.debug("", t);
+        return new LogBatch(this);
     }
 
-    public void debug(final Throwable t, final String message)
+    /**
+     * Starts a stopwatch for a named timer. Instead of a line per measurement, the Log writes one summary line per
+     * timer and interval with count, median, 99th percentile and maximum. The interval and level are set with the
+     * {@link SystemPropertyKeys#LOGGING_TIMER_INTERVAL} and {@link SystemPropertyKeys#LOGGING_TIMER_LEVEL} properties.
+     * If that level is disabled, the returned timer does nothing. Names should be constants: a Log keeps at most 1000
+     * timers and summarizes the measurements of further names as <tt>&lt;other&gt;</tt>.
+     */
+    public LogTimer timer(final String name)
     {
-        wrappedLogger.debug(message, t);
+        checkNotNull(name, "name");
+        return timers().start(name);
     }
 
-    public void debug(final String message, final Object... args)
+    @VisibleForTesting
+    void reportTimers()
     {
-        if (wrappedLogger.isDebugEnabled()) {
-            wrappedLogger.debug(safeFormat(LogLevel.DEBUG, message, args));
-        }
+        timers().run();
     }
 
-    public void debug(final Throwable t, final String message, final Object... args)
+    private LogTimers timers()
     {
-        if (wrappedLogger.isDebugEnabled()) {
-            wrappedLogger.debug(safeFormat(LogLevel.DEBUG, message, args), t);
+        LogTimers result = timers;
+        if (result == null) {
+            synchronized (this) {
+                result = timers;
+                if (result == null) {
+                    result = new LogTimers(this);
+                    timers = result;
+                }
+            }
         }
+        return result;
     }
 
     // ========================================================================
     //
-    // Info level methods
+    // Trace level methods
     //
     // ========================================================================
 
-    public void info(final String message)
+    public void trace(final String message)
     {
-        wrappedLogger.info(message);
+        if (isTraceEnabled()) {
+            emit(LogLevel.TRACE, message, null);
+        }
     }
 
-    public void info(final Throwable t)
+    public void trace(final Throwable t)
     {
-        if (!trimExceptions) {
-            wrappedLogger.info("", t);
+        if (isTraceEnabled()) {
+            logThrowable(LogLevel.TRACE, "", "", t);
         }
-        else {
-            if (wrappedLogger.isDebugEnabled()) {
-                wrappedLogger.info("", t);
+    }
+
+    public void trace(final Throwable t, final String message)
+    {
+        if (isTraceEnabled()) {
+            logThrowable(LogLevel.TRACE, message, message, t);
+        }
+    }
+
+    public void trace(final String message, final Object... args)
+    {
+        if (isTraceEnabled()) {
+            if (isDeferred(LogLevel.TRACE)) {
+                defer(LogLevel.TRACE, null, message, args);
             }
             else {
-                wrappedLogger.info(summarize(LogLevel.INFO, t, ""));
+                emit(LogLevel.TRACE, safeFormat(LogLevel.TRACE, message, args), null);
             }
         }
     }
 
-    public void info(final Throwable t, final String message)
+    public void trace(final Throwable t, final String message, final Object... args)
     {
-        if (!trimExceptions) {
-            wrappedLogger.info(message, t);
-        }
-        else {
-            if (wrappedLogger.isDebugEnabled()) {
-                wrappedLogger.info(message, t);
+        if (isTraceEnabled()) {
+            if (isDeferred(LogLevel.TRACE)) {
+                defer(LogLevel.TRACE, t, message, args);
             }
             else {
-                wrappedLogger.info(summarize(LogLevel.INFO, t, message));
+                logThrowable(LogLevel.TRACE, message, safeFormat(LogLevel.TRACE, message, args), t);
             }
         }
     }
 
-    public void info(final String message, final Object... args)
+    public void trace(final String message, final Object arg1)
     {
-        if (wrappedLogger.isInfoEnabled()) {
-            wrappedLogger.info(safeFormat(LogLevel.INFO, message, args));
+        if (isTraceEnabled()) {
+            if (isDeferred(LogLevel.TRACE)) {
+                defer(LogLevel.TRACE, null, message, arg1);
+            }
+            else {
+                emit(LogLevel.TRACE, safeFormat(LogLevel.TRACE, message, arg1), null);
+            }
         }
     }
 
-    public void info(final Throwable t, final String message, final Object... args)
+    public void trace(final String message, final Object arg1, final Object arg2)
     {
-        if (!trimExceptions) {
-            if (wrappedLogger.isInfoEnabled()) {
-                wrappedLogger.info(safeFormat(LogLevel.INFO, message, args), t);
+        if (isTraceEnabled()) {
+            if (isDeferred(LogLevel.TRACE)) {
+                defer(LogLevel.TRACE, null, message, arg1, arg2);
+            }
+            else {
+                emit(LogLevel.TRACE, safeFormat(LogLevel.TRACE, message, arg1, arg2), null);
             }
         }
-        else {
-            if (wrappedLogger.isDebugEnabled()) {
-                wrappedLogger.info(safeFormat(LogLevel.INFO, message, args), t);
+    }
+
+    public void trace(final String message, final Object arg1, final Object arg2, final Object arg3)
+    {
+        if (isTraceEnabled()) {
+            if (isDeferred(LogLevel.TRACE)) {
+                defer(LogLevel.TRACE, null, message, arg1, arg2, arg3);
             }
-            else if (wrappedLogger.isInfoEnabled()) {
-                wrappedLogger.info(summarize(LogLevel.INFO, t, message, args));
+            else {
+                emit(LogLevel.TRACE, safeFormat(LogLevel.TRACE, message, arg1, arg2, arg3), null);
             }
         }
     }
 
-    // ========================================================================
-    //
-    // Warn level methods
-    //
-    // ========================================================================
-
-    public void warn(final String message)
+    public void trace(final String message, final Object arg1, final Object arg2, final Object arg3, final Object arg4)
     {
-        wrappedLogger.warn(message);
+        if (isTraceEnabled()) {
+            if (isDeferred(LogLevel.TRACE)) {
+                defer(LogLevel.TRACE, null, message, arg1, arg2, arg3, arg4);
+            }
+            else {
+                emit(LogLevel.TRACE, safeFormat(LogLevel.TRACE, message, arg1, arg2, arg3, arg4), null);
+            }
+        }
     }
 
-    public void warn(final Throwable t)
+    public void trace(final Throwable t, final String message, final Object arg1)
     {
-        if (!trimExceptions) {
-            wrappedLogger.warn("", t);
-        }
-        else {
-            if (wrappedLogger.isDebugEnabled()) {
-                wrappedLogger.warn("", t);
+        if (isTraceEnabled()) {
+            if (isDeferred(LogLevel.TRACE)) {
+                defer(LogLevel.TRACE, t, message, arg1);
             }
             else {
-                wrappedLogger.warn(summarize(LogLevel.WARN, t, ""));
+                logThrowable(LogLevel.TRACE, message, safeFormat(LogLevel.TRACE, message, arg1), t);
             }
         }
     }
 
-    public void warn(final Throwable t, final String message)
+    public void trace(final Throwable t, final String message, final Object arg1, final Object arg2)
     {
-        if (!trimExceptions) {
-            wrappedLogger.warn(message, t);
-        }
-        else {
-            if (wrappedLogger.isDebugEnabled()) {
-                wrappedLogger.warn(message, t);
+        if (isTraceEnabled()) {
+            if (isDeferred(LogLevel.TRACE)) {
+                defer(LogLevel.TRACE, t, message, arg1, arg2);
             }
             else {
-                wrappedLogger.warn(summarize(LogLevel.WARN, t, message));
+                logThrowable(LogLevel.TRACE, message, safeFormat(LogLevel.TRACE, message, arg1, arg2), t);
             }
         }
     }
 
-    public void warn(final String message, final Object... args)
+    public void trace(final Throwable t, final String message, final Object arg1, final Object arg2, final Object arg3)
     {
-        if (isWarnEnabled()) {
-            wrappedLogger.warn(safeFormat(LogLevel.WARN, message, args));
+        if (isTraceEnabled()) {
+            if (isDeferred(LogLevel.TRACE)) {
+                defer(LogLevel.TRACE, t, message, arg1, arg2, arg3);
+            }
+            else {
+                logThrowable(LogLevel.TRACE, message, safeFormat(LogLevel.TRACE, message, arg1, arg2, arg3), t);
+            }
         }
     }
 
-    public void warn(final Throwable t, final String message, final Object... args)
+    public void trace(final Throwable t, final String message, final Object arg1, final Object arg2, final Object arg3, final Object arg4)
     {
-        if (!trimExceptions) {
-            if (isWarnEnabled()) {
-                wrappedLogger.warn(safeFormat(LogLevel.WARN, message, args), t);
+        if (isTraceEnabled()) {
+            if (isDeferred(LogLevel.TRACE)) {
+                defer(LogLevel.TRACE, t, message, arg1, arg2, arg3, arg4);
+            }
+            else {
+                logThrowable(LogLevel.TRACE, message, safeFormat(LogLevel.TRACE, message, arg1, arg2, arg3, arg4), t);
             }
         }
-        else {
-            if (wrappedLogger.isDebugEnabled()) {
-                wrappedLogger.warn(safeFormat(LogLevel.WARN, message, args), t);
+    }
+
+    public void trace(final String message, final long arg1)
+    {
+        if (isTraceEnabled()) {
+            if (isDeferred(LogLevel.TRACE)) {
+                defer(LogLevel.TRACE, null, message, arg1);
             }
-            else if (isWarnEnabled()) {
-                wrappedLogger.warn(summarize(LogLevel.WARN, t, message, args));
+            else {
+                emit(LogLevel.TRACE, safeFormat(LogLevel.TRACE, message, arg1), null);
             }
         }
     }
 
-    // ========================================================================
-    //
-    // Error level methods
-    //
-    // ========================================================================
-
-    public void error(final String message)
+    public void trace(final String message, final int arg1)
     {
-        wrappedLogger.error(message);
+        if (isTraceEnabled()) {
+            if (isDeferred(LogLevel.TRACE)) {
+                defer(LogLevel.TRACE, null, message, arg1);
+            }
+            else {
+                emit(LogLevel.TRACE, safeFormat(LogLevel.TRACE, message, arg1), null);
+            }
+        }
     }
 
-    public void error(final Throwable t)
+    public void trace(final String message, final double arg1)
     {
-        if (!trimExceptions) {
-            wrappedLogger.error("", t);
-        }
-        else {
-            if (wrappedLogger.isDebugEnabled()) {
-                wrappedLogger.error("", t);
+        if (isTraceEnabled()) {
+            if (isDeferred(LogLevel.TRACE)) {
+                defer(LogLevel.TRACE, null, message, arg1);
             }
             else {
-                wrappedLogger.error(summarize(LogLevel.ERROR, t, ""));
+                emit(LogLevel.TRACE, safeFormat(LogLevel.TRACE, message, arg1), null);
             }
         }
     }
 
-    public void error(final Throwable t, final String message)
+    public void trace(final String message, final boolean arg1)
     {
-        if (!trimExceptions) {
-            wrappedLogger.error(message, t);
-        }
-        else {
-            if (wrappedLogger.isDebugEnabled()) {
-                wrappedLogger.error(message, t);
+        if (isTraceEnabled()) {
+            if (isDeferred(LogLevel.TRACE)) {
+                defer(LogLevel.TRACE, null, message, arg1);
             }
             else {
-                wrappedLogger.error(summarize(LogLevel.ERROR, t, message));
+                emit(LogLevel.TRACE, safeFormat(LogLevel.TRACE, message, arg1), null);
             }
         }
     }
 
-    public void error(final String message, final Object... args)
+    public void trace(final String message, final char arg1)
     {
-        if (isErrorEnabled()) {
-            wrappedLogger.error(safeFormat(LogLevel.ERROR, message, args));
+        if (isTraceEnabled()) {
+            if (isDeferred(LogLevel.TRACE)) {
+                defer(LogLevel.TRACE, null, message, arg1);
+            }
+            else {
+                emit(LogLevel.TRACE, safeFormat(LogLevel.TRACE, message, arg1), null);
+            }
         }
     }
 
-    public void error(final Throwable t, final String message, final Object... args)
+    public void trace(final String message, final float arg1)
+    {
+        if (isTraceEnabled()) {
+            if (isDeferred(LogLevel.TRACE)) {
+                defer(LogLevel.TRACE, null, message, arg1);
+            }
+            else {
+                emit(LogLevel.TRACE, safeFormat(LogLevel.TRACE, message, arg1), null);
+            }
+        }
+    }
+
+    public void trace(final Supplier<String> message)
+    {
+        if (isTraceEnabled()) {
+            trace(resolve(message));
+        }
+    }
+
+    public void trace(final Throwable t, final Supplier<String> message)
+    {
+        if (isTraceEnabled()) {
+            trace(t, resolve(message));
+        }
+    }
+
+    public void trace(final Marker marker, final String message)
+    {
+        if (isEnabled(LogLevel.TRACE, marker)) {
+            logMarked(LogLevel.TRACE, marker, message, null);
+        }
+    }
+
+    public void trace(final Marker marker, final String message, final Object... args)
+    {
+        if (isEnabled(LogLevel.TRACE, marker)) {
+            logMarked(LogLevel.TRACE, marker, safeFormat(LogLevel.TRACE, message, args), null);
+        }
+    }
+
+    public void trace(final Marker marker, final Throwable t, final String message, final Object... args)
+    {
+        if (isEnabled(LogLevel.TRACE, marker)) {
+            logMarked(LogLevel.TRACE, marker, safeFormat(LogLevel.TRACE, message, args), t);
+        }
+    }
+
+    // ========================================================================
+    //
+    // Debug level methods
+    //
+    // ========================================================================
+
+    public void debug(final String message)
+    {
+        if (isDebugEnabled()) {
+            emit(LogLevel.DEBUG, message, null);
+        }
+    }
+
+    public void debug(final Throwable t)
+    {
+        if (isDebugEnabled()) {
+            logThrowable(LogLevel.DEBUG, "", "", t);
+        }
+    }
+
+    public void debug(final Throwable t, final String message)
+    {
+        if (isDebugEnabled()) {
+            logThrowable(LogLevel.DEBUG, message, message, t);
+        }
+    }
+
+    public void debug(final String message, final Object... args)
+    {
+        if (isDebugEnabled()) {
+            if (isDeferred(LogLevel.DEBUG)) {
+                defer(LogLevel.DEBUG, null, message, args);
+            }
+            else {
+                emit(LogLevel.DEBUG, safeFormat(LogLevel.DEBUG, message, args), null);
+            }
+        }
+    }
+
+    public void debug(final Throwable t, final String message, final Object... args)
+    {
+        if (isDebugEnabled()) {
+            if (isDeferred(LogLevel.DEBUG)) {
+                defer(LogLevel.DEBUG, t, message, args);
+            }
+            else {
+                logThrowable(LogLevel.DEBUG, message, safeFormat(LogLevel.DEBUG, message, args), t);
+            }
+        }
+    }
+
+    public void debug(final String message, final Object arg1)
+    {
+        if (isDebugEnabled()) {
+            if (isDeferred(LogLevel.DEBUG)) {
+                defer(LogLevel.DEBUG, null, message, arg1);
+            }
+            else {
+                emit(LogLevel.DEBUG, safeFormat(LogLevel.DEBUG, message, arg1), null);
+            }
+        }
+    }
+
+    public void debug(final String message, final Object arg1, final Object arg2)
+    {
+        if (isDebugEnabled()) {
+            if (isDeferred(LogLevel.DEBUG)) {
+                defer(LogLevel.DEBUG, null, message, arg1, arg2);
+            }
+            else {
+                emit(LogLevel.DEBUG, safeFormat(LogLevel.DEBUG, message, arg1, arg2), null);
+            }
+        }
+    }
+
+    public void debug(final String message, final Object arg1, final Object arg2, final Object arg3)
+    {
+        if (isDebugEnabled()) {
+            if (isDeferred(LogLevel.DEBUG)) {
+                defer(LogLevel.DEBUG, null, message, arg1, arg2, arg3);
+            }
+            else {
+                emit(LogLevel.DEBUG, safeFormat(LogLevel.DEBUG, message, arg1, arg2, arg3), null);
+            }
+        }
+    }
+
+    public void debug(final String message, final Object arg1, final Object arg2, final Object arg3, final Object arg4)
+    {
+        if (isDebugEnabled()) {
+            if (isDeferred(LogLevel.DEBUG)) {
+                defer(LogLevel.DEBUG, null, message, arg1, arg2, arg3, arg4);
+            }
+            else {
+                emit(LogLevel.DEBUG, safeFormat(LogLevel.DEBUG, message, arg1, arg2, arg3, arg4), null);
+            }
+        }
+    }
+
+    public void debug(final Throwable t, final String message, final Object arg1)
+    {
+        if (isDebugEnabled()) {
+            if (isDeferred(LogLevel.DEBUG)) {
+                defer(LogLevel.DEBUG, t, message, arg1);
+            }
+            else {
+                logThrowable(LogLevel.DEBUG, message, safeFormat(LogLevel.DEBUG, message, arg1), t);
+            }
+        }
+    }
+
+    public void debug(final Throwable t, final String message, final Object arg1, final Object arg2)
+    {
+        if (isDebugEnabled()) {
+            if (isDeferred(LogLevel.DEBUG)) {
+                defer(LogLevel.DEBUG, t, message, arg1, arg2);
+            }
+            else {
+                logThrowable(LogLevel.DEBUG, message, safeFormat(LogLevel.DEBUG, message, arg1, arg2), t);
+            }
+        }
+    }
+
+    public void debug(final Throwable t, final String message, final Object arg1, final Object arg2, final Object arg3)
+    {
+        if (isDebugEnabled()) {
+            if (isDeferred(LogLevel.DEBUG)) {
+                defer(LogLevel.DEBUG, t, message, arg1, arg2, arg3);
+            }
+            else {
+                logThrowable(LogLevel.DEBUG, message, safeFormat(LogLevel.DEBUG, message, arg1, arg2, arg3), t);
+            }
+        }
+    }
+
+    public void debug(final Throwable t, final String message, final Object arg1, final Object arg2, final Object arg3, final Object arg4)
+    {
+        if (isDebugEnabled()) {
+            if (isDeferred(LogLevel.DEBUG)) {
+                defer(LogLevel.DEBUG, t, message, arg1, arg2, arg3, arg4);
+            }
+            else {
+                logThrowable(LogLevel.DEBUG, message, safeFormat(LogLevel.DEBUG, message, arg1, arg2, arg3, arg4), t);
+            }
+        }
+    }
+
+    public void debug(final String message, final long arg1)
+    {
+        if (isDebugEnabled()) {
+            if (isDeferred(LogLevel.DEBUG)) {
+                defer(LogLevel.DEBUG, null, message, arg1);
+            }
+            else {
+                emit(LogLevel.DEBUG, safeFormat(LogLevel.DEBUG, message, arg1), null);
+            }
+        }
+    }
+
+    public void debug(final String message, final int arg1)
+    {
+        if (isDebugEnabled()) {
+            if (isDeferred(LogLevel.DEBUG)) {
+                defer(LogLevel.DEBUG, null, message, arg1);
+            }
+            else {
+                emit(LogLevel.DEBUG, safeFormat(LogLevel.DEBUG, message, arg1), null);
+            }
+        }
+    }
+
+    public void debug(final String message, final double arg1)
+    {
+        if (isDebugEnabled()) {
+            if (isDeferred(LogLevel.DEBUG)) {
+                defer(LogLevel.DEBUG, null, message, arg1);
+            }
+            else {
+                emit(LogLevel.DEBUG, safeFormat(LogLevel.DEBUG, message, arg1), null);
+            }
+        }
+    }
+
+    public void debug(final String message, final boolean arg1)
+    {
+        if (isDebugEnabled()) {
+            if (isDeferred(LogLevel.DEBUG)) {
+                defer(LogLevel.DEBUG, null, message, arg1);
+            }
+            else {
+                emit(LogLevel.DEBUG, safeFormat(LogLevel.DEBUG, message, arg1), null);
+            }
+        }
+    }
+
+    public void debug(final String message, final char arg1)
+    {
+        if (isDebugEnabled()) {
+            if (isDeferred(LogLevel.DEBUG)) {
+                defer(LogLevel.DEBUG, null, message, arg1);
+            }
+            else {
+                emit(LogLevel.DEBUG, safeFormat(LogLevel.DEBUG, message, arg1), null);
+            }
+        }
+    }
+
+    public void debug(final String message, final float arg1)
+    {
+        if (isDebugEnabled()) {
+            if (isDeferred(LogLevel.DEBUG)) {
+                defer(LogLevel.DEBUG, null, message, arg1);
+            }
+            else {
+                emit(LogLevel.DEBUG, safeFormat(LogLevel.DEBUG, message, arg1), null);
+            }
+        }
+    }
+
+    public void debug(final Supplier<String> message)
+    {
+        if (isDebugEnabled()) {
+            debug(resolve(message));
+        }
+    }
+
+    public void debug(final Throwable t, final Supplier<String> message)
+    {
+        if (isDebugEnabled()) {
+            debug(t, resolve(message));
+        }
+    }
+
+    public void debug(final Marker marker, final String message)
+    {
+        if (isEnabled(LogLevel.DEBUG, marker)) {
+            logMarked(LogLevel.DEBUG, marker, message, null);
+        }
+    }
+
+    public void debug(final Marker marker, final String message, final Object... args)
+    {
+        if (isEnabled(LogLevel.DEBUG, marker)) {
+            logMarked(LogLevel.DEBUG, marker, safeFormat(LogLevel.DEBUG, message, args), null);
+        }
+    }
+
+    public void debug(final Marker marker, final Throwable t, final String message, final Object... args)
+    {
+        if (isEnabled(LogLevel.DEBUG, marker)) {
+            logMarked(LogLevel.DEBUG, marker, safeFormat(LogLevel.DEBUG, message, args), t);
+        }
+    }
+
+    // ========================================================================
+    //
+    // Info level methods
+    //
+    // ========================================================================
+
+    public void info(final String message)
+    {
+        if (isInfoEnabled()) {
+            emit(LogLevel.INFO, message, null);
+        }
+    }
+
+    public void info(final Throwable t)
+    {
+        if (isInfoEnabled()) {
+            if (!trimExceptions) {
+                logThrowable(LogLevel.INFO, "", "", t);
+            }
+            else {
+                if (isDebugLogged()) {
+                    logThrowable(LogLevel.INFO, "", "", t);
+                }
+                else {
+                    emit(LogLevel.INFO, summarize(LogLevel.INFO, t, ""), null);
+                }
+            }
+        }
+    }
+
+    public void info(final Throwable t, final String message)
+    {
+        if (isInfoEnabled()) {
+            if (!trimExceptions) {
+                logThrowable(LogLevel.INFO, message, message, t);
+            }
+            else {
+                if (isDebugLogged()) {
+                    logThrowable(LogLevel.INFO, message, message, t);
+                }
+                else {
+                    emit(LogLevel.INFO, summarize(LogLevel.INFO, t, message), null);
+                }
+            }
+        }
+    }
+
+    public void info(final String message, final Object... args)
+    {
+        if (isInfoEnabled()) {
+            emit(LogLevel.INFO, safeFormat(LogLevel.INFO, message, args), null);
+        }
+    }
+
+    public void info(final Throwable t, final String message, final Object... args)
     {
         if (!trimExceptions) {
-            if (isErrorEnabled()) {
-                wrappedLogger.error(safeFormat(LogLevel.ERROR, message, args), t);
+            if (isInfoEnabled()) {
+                logThrowable(LogLevel.INFO, message, safeFormat(LogLevel.INFO, message, args), t);
             }
         }
         else {
-            if (wrappedLogger.isDebugEnabled()) {
-                wrappedLogger.error(safeFormat(LogLevel.ERROR, message, args), t);
+            if (isDebugLogged()) {
+                logThrowable(LogLevel.INFO, message, safeFormat(LogLevel.INFO, message, args), t);
             }
-            else if (isErrorEnabled()) {
-                wrappedLogger.error(summarize(LogLevel.ERROR, t, message, args));
+            else if (isInfoEnabled()) {
+                emit(LogLevel.INFO, summarize(LogLevel.INFO, t, message, args), null);
+            }
+        }
+    }
+
+    public void info(final String message, final Object arg1)
+    {
+        if (isInfoEnabled()) {
+            emit(LogLevel.INFO, safeFormat(LogLevel.INFO, message, arg1), null);
+        }
+    }
+
+    public void info(final String message, final Object arg1, final Object arg2)
+    {
+        if (isInfoEnabled()) {
+            emit(LogLevel.INFO, safeFormat(LogLevel.INFO, message, arg1, arg2), null);
+        }
+    }
+
+    public void info(final String message, final Object arg1, final Object arg2, final Object arg3)
+    {
+        if (isInfoEnabled()) {
+            emit(LogLevel.INFO, safeFormat(LogLevel.INFO, message, arg1, arg2, arg3), null);
+        }
+    }
+
+    public void info(final String message, final Object arg1, final Object arg2, final Object arg3, final Object arg4)
+    {
+        if (isInfoEnabled()) {
+            emit(LogLevel.INFO, safeFormat(LogLevel.INFO, message, arg1, arg2, arg3, arg4), null);
+        }
+    }
+
+    public void info(final Throwable t, final String message, final Object arg1)
+    {
+        if (!trimExceptions) {
+            if (isInfoEnabled()) {
+                logThrowable(LogLevel.INFO, message, safeFormat(LogLevel.INFO, message, arg1), t);
+            }
+        }
+        else {
+            if (isDebugLogged()) {
+                logThrowable(LogLevel.INFO, message, safeFormat(LogLevel.INFO, message, arg1), t);
+            }
+            else if (isInfoEnabled()) {
+                emit(LogLevel.INFO, summarize(LogLevel.INFO, t, message, arg1), null);
+            }
+        }
+    }
+
+    public void info(final Throwable t, final String message, final Object arg1, final Object arg2)
+    {
+        if (!trimExceptions) {
+            if (isInfoEnabled()) {
+                logThrowable(LogLevel.INFO, message, safeFormat(LogLevel.INFO, message, arg1, arg2), t);
+            }
+        }
+        else {
+            if (isDebugLogged()) {
+                logThrowable(LogLevel.INFO, message, safeFormat(LogLevel.INFO, message, arg1, arg2), t);
             }
+            else if (isInfoEnabled()) {
+                emit(LogLevel.INFO, summarize(LogLevel.INFO, t, message, arg1, arg2), null);
+            }
+        }
+    }
+
+    public void info(final Throwable t, final String message, final Object arg1, final Object arg2, final Object arg3)
+    {
+        if (!trimExceptions) {
+            if (isInfoEnabled()) {
+                logThrowable(LogLevel.INFO, message, safeFormat(LogLevel.INFO, message, arg1, arg2, arg3), t);
+            }
+        }
+        else {
+            if (isDebugLogged()) {
+                logThrowable(LogLevel.INFO, message, safeFormat(LogLevel.INFO, message, arg1, arg2, arg3), t);
+            }
+            else if (isInfoEnabled()) {
+                emit(LogLevel.INFO, summarize(LogLevel.INFO, t, message, arg1, arg2, arg3), null);
+            }
+        }
+    }
+
+    public void info(final Throwable t, final String message, final Object arg1, final Object arg2, final Object arg3, final Object arg4)
+    {
+        if (!trimExceptions) {
+            if (isInfoEnabled()) {
+                logThrowable(LogLevel.INFO, message, safeFormat(LogLevel.INFO, message, arg1, arg2, arg3, arg4), t);
+            }
+        }
+        else {
+            if (isDebugLogged()) {
+                logThrowable(LogLevel.INFO, message, safeFormat(LogLevel.INFO, message, arg1, arg2, arg3, arg4), t);
+            }
+            else if (isInfoEnabled()) {
+                emit(LogLevel.INFO, summarize(LogLevel.INFO, t, message, arg1, arg2, arg3, arg4), null);
+            }
+        }
+    }
+
+    public void info(final String message, final long arg1)
+    {
+        if (isInfoEnabled()) {
+            emit(LogLevel.INFO, safeFormat(LogLevel.INFO, message, arg1), null);
+        }
+    }
+
+    public void info(final String message, final int arg1)
+    {
+        if (isInfoEnabled()) {
+            emit(LogLevel.INFO, safeFormat(LogLevel.INFO, message, arg1), null);
+        }
+    }
+
+    public void info(final String message, final double arg1)
+    {
+        if (isInfoEnabled()) {
+            emit(LogLevel.INFO, safeFormat(LogLevel.INFO, message, arg1), null);
+        }
+    }
+
+    public void info(final String message, final boolean arg1)
+    {
+        if (isInfoEnabled()) {
+            emit(LogLevel.INFO, safeFormat(LogLevel.INFO, message, arg1), null);
+        }
+    }
+
+    public void info(final String message, final char arg1)
+    {
+        if (isInfoEnabled()) {
+            emit(LogLevel.INFO, safeFormat(LogLevel.INFO, message, arg1), null);
+        }
+    }
+
+    public void info(final String message, final float arg1)
+    {
+        if (isInfoEnabled()) {
+            emit(LogLevel.INFO, safeFormat(LogLevel.INFO, message, arg1), null);
+        }
+    }
+
+    public void info(final Supplier<String> message)
+    {
+        if (isInfoEnabled()) {
+            info(resolve(message));
+        }
+    }
+
+    public void info(final Throwable t, final Supplier<String> message)
+    {
+        if (isInfoEnabled()) {
+            info(t, resolve(message));
+        }
+    }
+
+    public void info(final Marker marker, final String message)
+    {
+        if (isEnabled(LogLevel.INFO, marker)) {
+            logMarked(LogLevel.INFO, marker, message, null);
+        }
+    }
+
+    public void info(final Marker marker, final String message, final Object... args)
+    {
+        if (isEnabled(LogLevel.INFO, marker)) {
+            logMarked(LogLevel.INFO, marker, safeFormat(LogLevel.INFO, message, args), null);
+        }
+    }
+
+    public void info(final Marker marker, final Throwable t, final String message, final Object... args)
+    {
+        if (isEnabled(LogLevel.INFO, marker)) {
+            if (trimExceptions && !isDebugLogged()) {
+                logMarked(LogLevel.INFO, marker, summarize(LogLevel.INFO, t, message, args), null);
+            }
+            else {
+                logMarked(LogLevel.INFO, marker, safeFormat(LogLevel.INFO, message, args), t);
+            }
+        }
+    }
+
+    // ========================================================================
+    //
+    // Warn level methods
+    //
+    // ========================================================================
+
+    public void warn(final String message)
+    {
+        if (isWarnEnabled()) {
+            emit(LogLevel.WARN, message, null);
+        }
+    }
+
+    public void warn(final Throwable t)
+    {
+        if (isWarnEnabled()) {
+            if (!trimExceptions) {
+                logThrowable(LogLevel.WARN, "", "", t);
+            }
+            else {
+                if (isDebugLogged()) {
+                    logThrowable(LogLevel.WARN, "", "", t);
+                }
+                else {
+                    emit(LogLevel.WARN, summarize(LogLevel.WARN, t, ""), null);
+                }
+            }
+        }
+    }
+
+    public void warn(final Throwable t, final String message)
+    {
+        if (isWarnEnabled()) {
+            if (!trimExceptions) {
+                logThrowable(LogLevel.WARN, message, message, t);
+            }
+            else {
+                if (isDebugLogged()) {
+                    logThrowable(LogLevel.WARN, message, message, t);
+                }
+                else {
+                    emit(LogLevel.WARN, summarize(LogLevel.WARN, t, message), null);
+                }
+            }
+        }
+    }
+
+    public void warn(final String message, final Object... args)
+    {
+        if (isWarnEnabled()) {
+            emit(LogLevel.WARN, safeFormat(LogLevel.WARN, message, args), null);
+        }
+    }
+
+    public void warn(final Throwable t, final String message, final Object... args)
+    {
+        if (!trimExceptions) {
+            if (isWarnEnabled()) {
+                logThrowable(LogLevel.WARN, message, safeFormat(LogLevel.WARN, message, args), t);
+            }
+        }
+        else {
+            if (isDebugLogged()) {
+                logThrowable(LogLevel.WARN, message, safeFormat(LogLevel.WARN, message, args), t);
+            }
+            else if (isWarnEnabled()) {
+                emit(LogLevel.WARN, summarize(LogLevel.WARN, t, message, args), null);
+            }
+        }
+    }
+
+    public void warn(final String message, final Object arg1)
+    {
+        if (isWarnEnabled()) {
+            emit(LogLevel.WARN, safeFormat(LogLevel.WARN, message, arg1), null);
+        }
+    }
+
+    public void warn(final String message, final Object arg1, final Object arg2)
+    {
+        if (isWarnEnabled()) {
+            emit(LogLevel.WARN, safeFormat(LogLevel.WARN, message, arg1, arg2), null);
+        }
+    }
+
+    public void warn(final String message, final Object arg1, final Object arg2, final Object arg3)
+    {
+        if (isWarnEnabled()) {
+            emit(LogLevel.WARN, safeFormat(LogLevel.WARN, message, arg1, arg2, arg3), null);
+        }
+    }
+
+    public void warn(final String message, final Object arg1, final Object arg2, final Object arg3, final Object arg4)
+    {
+        if (isWarnEnabled()) {
+            emit(LogLevel.WARN, safeFormat(LogLevel.WARN, message, arg1, arg2, arg3, arg4), null);
+        }
+    }
+
+    public void warn(final Throwable t, final String message, final Object arg1)
+    {
+        if (!trimExceptions) {
+            if (isWarnEnabled()) {
+                logThrowable(LogLevel.WARN, message, safeFormat(LogLevel.WARN, message, arg1), t);
+            }
+        }
+        else {
+            if (isDebugLogged()) {
+                logThrowable(LogLevel.WARN, message, safeFormat(LogLevel.WARN, message, arg1), t);
+            }
+            else if (isWarnEnabled()) {
+                emit(LogLevel.WARN, summarize(LogLevel.WARN, t, message, arg1), null);
+            }
+        }
+    }
+
+    public void warn(final Throwable t, final String message, final Object arg1, final Object arg2)
+    {
+        if (!trimExceptions) {
+            if (isWarnEnabled()) {
+                logThrowable(LogLevel.WARN, message, safeFormat(LogLevel.WARN, message, arg1, arg2), t);
+            }
+        }
+        else {
+            if (isDebugLogged()) {
+                logThrowable(LogLevel.WARN, message, safeFormat(LogLevel.WARN, message, arg1, arg2), t);
+            }
+            else if (isWarnEnabled()) {
+                emit(LogLevel.WARN, summarize(LogLevel.WARN, t, message, arg1, arg2), null);
+            }
+        }
+    }
+
+    public void warn(final Throwable t, final String message, final Object arg1, final Object arg2, final Object arg3)
+    {
+        if (!trimExceptions) {
+            if (isWarnEnabled()) {
+                logThrowable(LogLevel.WARN, message, safeFormat(LogLevel.WARN, message, arg1, arg2, arg3), t);
+            }
+        }
+        else {
+            if (isDebugLogged()) {
+                logThrowable(LogLevel.WARN, message, safeFormat(LogLevel.WARN, message, arg1, arg2, arg3), t);
+            }
+            else if (isWarnEnabled()) {
+                emit(LogLevel.WARN, summarize(LogLevel.WARN, t, message, arg1, arg2, arg3), null);
+            }
+        }
+    }
+
+    public void warn(final Throwable t, final String message, final Object arg1, final Object arg2, final Object arg3, final Object arg4)
+    {
+        if (!trimExceptions) {
+            if (isWarnEnabled()) {
+                logThrowable(LogLevel.WARN, message, safeFormat(LogLevel.WARN, message, arg1, arg2, arg3, arg4), t);
+            }
+        }
+        else {
+            if (isDebugLogged()) {
+                logThrowable(LogLevel.WARN, message, safeFormat(LogLevel.WARN, message, arg1, arg2, arg3, arg4), t);
+            }
+            else if (isWarnEnabled()) {
+                emit(LogLevel.WARN, summarize(LogLevel.WARN, t, message, arg1, arg2, arg3, arg4), null);
+            }
+        }
+    }
+
+    public void warn(final String message, final long arg1)
+    {
+        if (isWarnEnabled()) {
+            emit(LogLevel.WARN, safeFormat(LogLevel.WARN, message, arg1), null);
+        }
+    }
+
+    public void warn(final String message, final int arg1)
+    {
+        if (isWarnEnabled()) {
+            emit(LogLevel.WARN, safeFormat(LogLevel.WARN, message, arg1), null);
+        }
+    }
+
+    public void warn(final String message, final double arg1)
+    {
+        if (isWarnEnabled()) {
+            emit(LogLevel.WARN, safeFormat(LogLevel.WARN, message, arg1), null);
+        }
+    }
+
+    public void warn(final String message, final boolean arg1)
+    {
+        if (isWarnEnabled()) {
+            emit(LogLevel.WARN, safeFormat(LogLevel.WARN, message, arg1), null);
+        }
+    }
+
+    public void warn(final String message, final char arg1)
+    {
+        if (isWarnEnabled()) {
+            emit(LogLevel.WARN, safeFormat(LogLevel.WARN, message, arg1), null);
+        }
+    }
+
+    public void warn(final String message, final float arg1)
+    {
+        if (isWarnEnabled()) {
+            emit(LogLevel.WARN, safeFormat(LogLevel.WARN, message, arg1), null);
+        }
+    }
+
+    public void warn(final Supplier<String> message)
+    {
+        if (isWarnEnabled()) {
+            warn(resolve(message));
+        }
+    }
+
+    public void warn(final Throwable t, final Supplier<String> message)
+    {
+        if (isWarnEnabled()) {
+            warn(t, resolve(message));
+        }
+    }
+
+    public void warn(final Marker marker, final String message)
+    {
+        if (isEnabled(LogLevel.WARN, marker)) {
+            logMarked(LogLevel.WARN, marker, message, null);
+        }
+    }
+
+    public void warn(final Marker marker, final String message, final Object... args)
+    {
+        if (isEnabled(LogLevel.WARN, marker)) {
+            logMarked(LogLevel.WARN, marker, safeFormat(LogLevel.WARN, message, args), null);
+        }
+    }
+
+    public void warn(final Marker marker, final Throwable t, final String message, final Object... args)
+    {
+        if (isEnabled(LogLevel.WARN, marker)) {
+            if (trimExceptions && !isDebugLogged()) {
+                logMarked(LogLevel.WARN, marker, summarize(LogLevel.WARN, t, message, args), null);
+            }
+            else {
+                logMarked(LogLevel.WARN, marker, safeFormat(LogLevel.WARN, message, args), t);
+            }
+        }
+    }
+
+    // ========================================================================
+    //
+    // Error level methods
+    //
+    // ========================================================================
+
+    public void error(final String message)
+    {
+        if (isErrorEnabled()) {
+            emit(LogLevel.ERROR, message, null);
+        }
+    }
+
+    public void error(final Throwable t)
+    {
+        if (isErrorEnabled()) {
+            if (!trimExceptions) {
+                logThrowable(LogLevel.ERROR, "", "", t);
+            }
+            else {
+                if (isDebugLogged()) {
+                    logThrowable(LogLevel.ERROR, "", "", t);
+                }
+                else {
+                    emit(LogLevel.ERROR, summarize(LogLevel.ERROR, t, ""), null);
+                }
+            }
+        }
+    }
+
+    public void error(final Throwable t, final String message)
+    {
+        if (isErrorEnabled()) {
+            if (!trimExceptions) {
+                logThrowable(LogLevel.ERROR, message, message, t);
+            }
+            else {
+                if (isDebugLogged()) {
+                    logThrowable(LogLevel.ERROR, message, message, t);
+                }
+                else {
+                    emit(LogLevel.ERROR, summarize(LogLevel.ERROR, t, message), null);
+                }
+            }
+        }
+    }
+
+    public void error(final String message, final Object... args)
+    {
+        if (isErrorEnabled()) {
+            emit(LogLevel.ERROR, safeFormat(LogLevel.ERROR, message, args), null);
+        }
+    }
+
+    public void error(final Throwable t, final String message, final Object... args)
+    {
+        if (!trimExceptions) {
+            if (isErrorEnabled()) {
+                logThrowable(LogLevel.ERROR, message, safeFormat(LogLevel.ERROR, message, args), t);
+            }
+        }
+        else {
+            if (isDebugLogged()) {
+                logThrowable(LogLevel.ERROR, message, safeFormat(LogLevel.ERROR, message, args), t);
+            }
+            else if (isErrorEnabled()) {
+                emit(LogLevel.ERROR, summarize(LogLevel.ERROR, t, message, args), null);
+            }
+        }
+    }
+
+    public void error(final String message, final Object arg1)
+    {
+        if (isErrorEnabled()) {
+            emit(LogLevel.ERROR, safeFormat(LogLevel.ERROR, message, arg1), null);
+        }
+    }
+
+    public void error(final String message, final Object arg1, final Object arg2)
+    {
+        if (isErrorEnabled()) {
+            emit(LogLevel.ERROR, safeFormat(LogLevel.ERROR, message, arg1, arg2), null);
+        }
+    }
+
+    public void error(final String message, final Object arg1, final Object arg2, final Object arg3)
+    {
+        if (isErrorEnabled()) {
+            emit(LogLevel.ERROR, safeFormat(LogLevel.ERROR, message, arg1, arg2, arg3), null);
+        }
+    }
+
+    public void error(final String message, final Object arg1, final Object arg2, final Object arg3, final Object arg4)
+    {
+        if (isErrorEnabled()) {
+            emit(LogLevel.ERROR, safeFormat(LogLevel.ERROR, message, arg1, arg2, arg3, arg4), null);
+        }
+    }
+
+    public void error(final Throwable t, final String message, final Object arg1)
+    {
+        if (!trimExceptions) {
+            if (isErrorEnabled()) {
+                logThrowable(LogLevel.ERROR, message, safeFormat(LogLevel.ERROR, message, arg1), t);
+            }
+        }
+        else {
+            if (isDebugLogged()) {
+                logThrowable(LogLevel.ERROR, message, safeFormat(LogLevel.ERROR, message, arg1), t);
+            }
+            else if (isErrorEnabled()) {
+                emit(LogLevel.ERROR, summarize(LogLevel.ERROR, t, message, arg1), null);
+            }
+        }
+    }
+
+    public void error(final Throwable t, final String message, final Object arg1, final Object arg2)
+    {
+        if (!trimExceptions) {
+            if (isErrorEnabled()) {
+                logThrowable(LogLevel.ERROR, message, safeFormat(LogLevel.ERROR, message, arg1, arg2), t);
+            }
+        }
+        else {
+            if (isDebugLogged()) {
+                logThrowable(LogLevel.ERROR, message, safeFormat(LogLevel.ERROR, message, arg1, arg2), t);
+            }
+            else if (isErrorEnabled()) {
+                emit(LogLevel.ERROR, summarize(LogLevel.ERROR, t, message, arg1, arg2), null);
+            }
+        }
+    }
+
+    public void error(final Throwable t, final String message, final Object arg1, final Object arg2, final Object arg3)
+    {
+        if (!trimExceptions) {
+            if (isErrorEnabled()) {
+                logThrowable(LogLevel.ERROR, message, safeFormat(LogLevel.ERROR, message, arg1, arg2, arg3), t);
+            }
+        }
+        else {
+            if (isDebugLogged()) {
+                logThrowable(LogLevel.ERROR, message, safeFormat(LogLevel.ERROR, message, arg1, arg2, arg3), t);
+            }
+            else if (isErrorEnabled()) {
+                emit(LogLevel.ERROR, summarize(LogLevel.ERROR, t, message, arg1, arg2, arg3), null);
+            }
+        }
+    }
+
+    public void error(final Throwable t, final String message, final Object arg1, final Object arg2, final Object arg3, final Object arg4)
+    {
+        if (!trimExceptions) {
+            if (isErrorEnabled()) {
+                logThrowable(LogLevel.ERROR, message, safeFormat(LogLevel.ERROR, message, arg1, arg2, arg3, arg4), t);
+            }
+        }
+        else {
+            if (isDebugLogged()) {
+                logThrowable(LogLevel.ERROR, message, safeFormat(LogLevel.ERROR, message, arg1, arg2, arg3, arg4), t);
+            }
+            else if (isErrorEnabled()) {
+                emit(LogLevel.ERROR, summarize(LogLevel.ERROR, t, message, arg1, arg2, arg3, arg4), null);
+            }
+        }
+    }
+
+    public void error(final String message, final long arg1)
+    {
+        if (isErrorEnabled()) {
+            emit(LogLevel.ERROR, safeFormat(LogLevel.ERROR, message, arg1), null);
+        }
+    }
+
+    public void error(final String message, final int arg1)
+    {
+        if (isErrorEnabled()) {
+            emit(LogLevel.ERROR, safeFormat(LogLevel.ERROR, message, arg1), null);
+        }
+    }
+
+    public void error(final String message, final double arg1)
+    {
+        if (isErrorEnabled()) {
+            emit(LogLevel.ERROR, safeFormat(LogLevel.ERROR, message, arg1), null);
+        }
+    }
+
+    public void error(final String message, final boolean arg1)
+    {
+        if (isErrorEnabled()) {
+            emit(LogLevel.ERROR, safeFormat(LogLevel.ERROR, message, arg1), null);
+        }
+    }
+
+    public void error(final String message, final char arg1)
+    {
+        if (isErrorEnabled()) {
+            emit(LogLevel.ERROR, safeFormat(LogLevel.ERROR, message, arg1), null);
+        }
+    }
+
+    public void error(final String message, final float arg1)
+    {
+        if (isErrorEnabled()) {
+            emit(LogLevel.ERROR, safeFormat(LogLevel.ERROR, message, arg1), null);
+        }
+    }
+
+    public void error(final Supplier<String> message)
+    {
+        if (isErrorEnabled()) {
+            error(resolve(message));
+        }
+    }
+
+    public void error(final Throwable t, final Supplier<String> message)
+    {
+        if (isErrorEnabled()) {
+            error(t, resolve(message));
+        }
+    }
+
+    public void error(final Marker marker, final String message)
+    {
+        if (isEnabled(LogLevel.ERROR, marker)) {
+            logMarked(LogLevel.ERROR, marker, message, null);
+        }
+    }
+
+    public void error(final Marker marker, final String message, final Object... args)
+    {
+        if (isEnabled(LogLevel.ERROR, marker)) {
+            logMarked(LogLevel.ERROR, marker, safeFormat(LogLevel.ERROR, message, args), null);
+        }
+    }
+
+    public void error(final Marker marker, final Throwable t, final String message, final Object... args)
+    {
+        if (isEnabled(LogLevel.ERROR, marker)) {
+            if (trimExceptions && !isDebugLogged()) {
+                logMarked(LogLevel.ERROR, marker, summarize(LogLevel.ERROR, t, message, args), null);
+            }
+            else {
+                logMarked(LogLevel.ERROR, marker, safeFormat(LogLevel.ERROR, message, args), t);
+            }
+        }
+    }
+
+    // ========================================================================
+    //
+    // log methods
+    //
+    // ========================================================================
+
+    public void log(final LogLevel level, final String message)
+    {
+        switch (level) {
+            case TRACE:
+                trace(message);
+                break;
+
+            case DEBUG:
+                debug(message);
+                break;
+
+            case INFO:
+                info(message);
+                break;
+
+            case WARN:
+                warn(message);
+                break;
+
+            case ERROR:
+                error(message);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final Throwable t)
+    {
+        switch (level) {
+            case TRACE:
+                trace(t);
+                break;
+
+            case DEBUG:
+                debug(t);
+                break;
+
+            case INFO:
+                info(t);
+                break;
+
+            case WARN:
+                warn(t);
+                break;
+
+            case ERROR:
+                error(t);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final Throwable t, final String message)
+    {
+        switch (level) {
+            case TRACE:
+                trace(t, message);
+                break;
+
+            case DEBUG:
+                debug(t, message);
+                break;
+
+            case INFO:
+                info(t, message);
+                break;
+
+            case WARN:
+                warn(t, message);
+                break;
+
+            case ERROR:
+                error(t, message);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final String message, final Object... args)
+    {
+        switch (level) {
+            case TRACE:
+                trace(message, args);
+                break;
+
+            case DEBUG:
+                debug(message, args);
+                break;
+
+            case INFO:
+                info(message, args);
+                break;
+
+            case WARN:
+                warn(message, args);
+                break;
+
+            case ERROR:
+                error(message, args);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final Throwable t, final String message, final Object... args)
+    {
+        switch (level) {
+            case TRACE:
+                trace(t, message, args);
+                break;
+
+            case DEBUG:
+                debug(t, message, args);
+                break;
+
+            case INFO:
+                info(t, message, args);
+                break;
+
+            case WARN:
+                warn(t, message, args);
+                break;
+
+            case ERROR:
+                error(t, message, args);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final String message, final Object arg1)
+    {
+        switch (level) {
+            case TRACE:
+                trace(message, arg1);
+                break;
+
+            case DEBUG:
+                debug(message, arg1);
+                break;
+
+            case INFO:
+                info(message, arg1);
+                break;
+
+            case WARN:
+                warn(message, arg1);
+                break;
+
+            case ERROR:
+                error(message, arg1);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final String message, final Object arg1, final Object arg2)
+    {
+        switch (level) {
+            case TRACE:
+                trace(message, arg1, arg2);
+                break;
+
+            case DEBUG:
+                debug(message, arg1, arg2);
+                break;
+
+            case INFO:
+                info(message, arg1, arg2);
+                break;
+
+            case WARN:
+                warn(message, arg1, arg2);
+                break;
+
+            case ERROR:
+                error(message, arg1, arg2);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final String message, final Object arg1, final Object arg2, final Object arg3)
+    {
+        switch (level) {
+            case TRACE:
+                trace(message, arg1, arg2, arg3);
+                break;
+
+            case DEBUG:
+                debug(message, arg1, arg2, arg3);
+                break;
+
+            case INFO:
+                info(message, arg1, arg2, arg3);
+                break;
+
+            case WARN:
+                warn(message, arg1, arg2, arg3);
+                break;
+
+            case ERROR:
+                error(message, arg1, arg2, arg3);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final String message, final Object arg1, final Object arg2, final Object arg3, final Object arg4)
+    {
+        switch (level) {
+            case TRACE:
+                trace(message, arg1, arg2, arg3, arg4);
+                break;
+
+            case DEBUG:
+                debug(message, arg1, arg2, arg3, arg4);
+                break;
+
+            case INFO:
+                info(message, arg1, arg2, arg3, arg4);
+                break;
+
+            case WARN:
+                warn(message, arg1, arg2, arg3, arg4);
+                break;
+
+            case ERROR:
+                error(message, arg1, arg2, arg3, arg4);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final Throwable t, final String message, final Object arg1)
+    {
+        switch (level) {
+            case TRACE:
+                trace(t, message, arg1);
+                break;
+
+            case DEBUG:
+                debug(t, message, arg1);
+                break;
+
+            case INFO:
+                info(t, message, arg1);
+                break;
+
+            case WARN:
+                warn(t, message, arg1);
+                break;
+
+            case ERROR:
+                error(t, message, arg1);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final Throwable t, final String message, final Object arg1, final Object arg2)
+    {
+        switch (level) {
+            case TRACE:
+                trace(t, message, arg1, arg2);
+                break;
+
+            case DEBUG:
+                debug(t, message, arg1, arg2);
+                break;
+
+            case INFO:
+                info(t, message, arg1, arg2);
+                break;
+
+            case WARN:
+                warn(t, message, arg1, arg2);
+                break;
+
+            case ERROR:
+                error(t, message, arg1, arg2);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final Throwable t, final String message, final Object arg1, final Object arg2, final Object arg3)
+    {
+        switch (level) {
+            case TRACE:
+                trace(t, message, arg1, arg2, arg3);
+                break;
+
+            case DEBUG:
+                debug(t, message, arg1, arg2, arg3);
+                break;
+
+            case INFO:
+                info(t, message, arg1, arg2, arg3);
+                break;
+
+            case WARN:
+                warn(t, message, arg1, arg2, arg3);
+                break;
+
+            case ERROR:
+                error(t, message, arg1, arg2, arg3);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final Throwable t, final String message, final Object arg1, final Object arg2, final Object arg3, final Object arg4)
+    {
+        switch (level) {
+            case TRACE:
+                trace(t, message, arg1, arg2, arg3, arg4);
+                break;
+
+            case DEBUG:
+                debug(t, message, arg1, arg2, arg3, arg4);
+                break;
+
+            case INFO:
+                info(t, message, arg1, arg2, arg3, arg4);
+                break;
+
+            case WARN:
+                warn(t, message, arg1, arg2, arg3, arg4);
+                break;
+
+            case ERROR:
+                error(t, message, arg1, arg2, arg3, arg4);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final String message, final long arg1)
+    {
+        switch (level) {
+            case TRACE:
+                trace(message, arg1);
+                break;
+
+            case DEBUG:
+                debug(message, arg1);
+                break;
+
+            case INFO:
+                info(message, arg1);
+                break;
+
+            case WARN:
+                warn(message, arg1);
+                break;
+
+            case ERROR:
+                error(message, arg1);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final String message, final int arg1)
+    {
+        switch (level) {
+            case TRACE:
+                trace(message, arg1);
+                break;
+
+            case DEBUG:
+                debug(message, arg1);
+                break;
+
+            case INFO:
+                info(message, arg1);
+                break;
+
+            case WARN:
+                warn(message, arg1);
+                break;
+
+            case ERROR:
+                error(message, arg1);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final String message, final double arg1)
+    {
+        switch (level) {
+            case TRACE:
+                trace(message, arg1);
+                break;
+
+            case DEBUG:
+                debug(message, arg1);
+                break;
+
+            case INFO:
+                info(message, arg1);
+                break;
+
+            case WARN:
+                warn(message, arg1);
+                break;
+
+            case ERROR:
+                error(message, arg1);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final String message, final boolean arg1)
+    {
+        switch (level) {
+            case TRACE:
+                trace(message, arg1);
+                break;
+
+            case DEBUG:
+                debug(message, arg1);
+                break;
+
+            case INFO:
+                info(message, arg1);
+                break;
+
+            case WARN:
+                warn(message, arg1);
+                break;
+
+            case ERROR:
+                error(message, arg1);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final String message, final char arg1)
+    {
+        switch (level) {
+            case TRACE:
+                trace(message, arg1);
+                break;
+
+            case DEBUG:
+                debug(message, arg1);
+                break;
+
+            case INFO:
+                info(message, arg1);
+                break;
+
+            case WARN:
+                warn(message, arg1);
+                break;
+
+            case ERROR:
+                error(message, arg1);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final String message, final float arg1)
+    {
+        switch (level) {
+            case TRACE:
+                trace(message, arg1);
+                break;
+
+            case DEBUG:
+                debug(message, arg1);
+                break;
+
+            case INFO:
+                info(message, arg1);
+                break;
+
+            case WARN:
+                warn(message, arg1);
+                break;
+
+            case ERROR:
+                error(message, arg1);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final Supplier<String> message)
+    {
+        switch (level) {
+            case TRACE:
+                trace(message);
+                break;
+
+            case DEBUG:
+                debug(message);
+                break;
+
+            case INFO:
+                info(message);
+                break;
+
+            case WARN:
+                warn(message);
+                break;
+
+            case ERROR:
+                error(message);
+                break;
+        }
+    }
+
+    public void log(final LogLevel level, final Throwable t, final Supplier<String> message)
+    {
+        switch (level) {
+            case TRACE:
+                trace(t, message);
+                break;
+
+            case DEBUG:
+                debug(t, message);
+                break;
+
+            case INFO:
+                info(t, message);
+                break;
+
+            case WARN:
+                warn(t, message);
+                break;
+
+            case ERROR:
+                error(t, message);
+                break;
         }
     }
 
-    // ========================================================================
-    //
-    // log methods
-    //
-    // ========================================================================
-
-    public void log(final LogLevel level, final String message)
+    public void log(final LogLevel level, final Marker marker, final String message)
     {
         switch (level) {
             case TRACE:
-                trace(message);
+                trace(marker, message);
                 break;
 
             case DEBUG:
-                debug(message);
+                debug(marker, message);
                 break;
 
             case INFO:
-                info(message);
+                info(marker, message);
                 break;
 
             case WARN:
-                warn(message);
+                warn(marker, message);
                 break;
 
             case ERROR:
-                error(message);
+                error(marker, message);
                 break;
         }
     }
 
-    public void log(final LogLevel level, final Throwable t)
+    public void log(final LogLevel level, final Marker marker, final String message, final Object... args)
     {
         switch (level) {
             case TRACE:
-                trace(t);
+                trace(marker, message, args);
                 break;
 
             case DEBUG:
-                debug(t);
+                debug(marker, message, args);
                 break;
 
             case INFO:
-                info(t);
+                info(marker, message, args);
                 break;
 
             case WARN:
-                warn(t);
+                warn(marker, message, args);
                 break;
 
             case ERROR:
-                error(t);
+                error(marker, message, args);
                 break;
         }
     }
 
-    public void log(final LogLevel level, final Throwable t, final String message)
+    public void log(final LogLevel level, final Marker marker, final Throwable t, final String message, final Object... args)
     {
         switch (level) {
             case TRACE:
-                trace(t, message);
+                trace(marker, t, message, args);
                 break;
 
             case DEBUG:
-                debug(t, message);
+                debug(marker, t, message, args);
                 break;
 
             case INFO:
-                info(t, message);
+                info(marker, t, message, args);
                 break;
 
             case WARN:
-                warn(t, message);
+                warn(marker, t, message, args);
                 break;
 
             case ERROR:
-                error(t, message);
+                error(marker, t, message, args);
                 break;
         }
     }
 
-    public void log(final LogLevel level, final String message, final Object... args)
+    // ========================================================================
+
+    /**
+     * Logs a message with the stack trace of an exception, or a single summary line if the exception is a duplicate.
+     */
+    private void logThrowable(final LogLevel level, final String template, final String message, final Throwable t)
+    {
+        if (isDeferred(level)) {
+            LogBuffer.capture(this, level, message, null, t);
+            return;
+        }
+
+        writeThrowable(level, template, message, t);
+    }
+
+    private void writeThrowable(final LogLevel level, final String template, final String message, final Throwable t)
+    {
+        final String duplicate = summarizeDuplicate(template, message, t);
+
+        if (duplicate != null) {
+            write(level, duplicate, null);
+        }
+        else {
+            write(level, message, t);
+        }
+    }
+
+    /**
+     * Returns the summary line for an exception the {@link ExceptionDeduplicator} has seen before, or <tt>null</tt>.
+     */
+    private String summarizeDuplicate(final String template, final String message, final Throwable t)
+    {
+        final int occurrence = (deduplicator == null) ? 0 : deduplicator.occurrence(template, t);
+        return (occurrence > 0) ? (message == null || message.isEmpty() ? "" : message + ": ") + t + " (seen " + occurrence + " more times)" : null;
+    }
+
+    /**
+     * Hands a message to the logger, or to the {@link LogBuffer} of this thread. Every message without a marker
+     * passes through here.
+     */
+    private void emit(final LogLevel level, final String message, final Throwable t)
+    {
+        if (isDeferred(level)) {
+            LogBuffer.capture(this, level, message, null, t);
+        }
+        else {
+            write(level, message, t);
+        }
+    }
+
+    /**
+     * Writes a message whose level was checked. Messages for log4j go straight to its appenders, see
+     * {@link Log4jDispatch}, or to the {@link AsyncDispatcher}.
+     */
+    private void write(final LogLevel level, final String message, final Throwable t)
     {
+        if (level == LogLevel.ERROR) {
+            LogBuffer.errorLogged();
+        }
+
+        final Logger logger = logger();
+        if (Log4jDispatch.isLog4jLogger(logger)) {
+            if (!AsyncDispatcher.enqueue(LOG_NAME, category, level, message, t)) {
+                Log4jDispatch.dispatch(LOG_NAME, category, level, message, t);
+            }
+            return;
+        }
+
         switch (level) {
             case TRACE:
-                trace(message, args);
+                logger.trace(message, t);
                 break;
 
             case DEBUG:
-                debug(message, args);
+                logger.debug(message, t);
                 break;
 
             case INFO:
-                info(message, args);
+                logger.info(message, t);
                 break;
 
             case WARN:
-                warn(message, args);
+                logger.warn(message, t);
                 break;
 
             case ERROR:
-                error(message, args);
+                logger.error(message, t);
                 break;
         }
     }
 
-    public void log(final LogLevel level, final Throwable t, final String message, final Object... args)
+    /**
+     * Returns whether a level is disabled but captured by the {@link LogBuffer} of this thread.
+     */
+    private boolean isDeferred(final LogLevel level)
+    {
+        final int levelMask = 1 << level.ordinal();
+        return (levelState & levelMask) == 0 && LogBuffer.captures(levelMask) && !LevelOverride.forces(levelMask, category);
+    }
+
+    private void defer(final LogLevel level, final Throwable t, final String template, final Object... args)
+    {
+        LogBuffer.capture(this, level, template, args, t);
+    }
+
+    /**
+     * Logs an already formatted message, whose level was checked, like the methods taking a throwable do, but
+     * without formatting it again. Used by {@link LogSite} and {@link LogEvent}.
+     *
+     * @param template Identifies the message for the {@link ExceptionDeduplicator}.
+     */
+    void emitFormatted(final LogLevel level, final String template, final String message, final Throwable t)
+    {
+        if (t == null) {
+            emit(level, message, null);
+        }
+        else if (trimExceptions && level.ordinal() >= LogLevel.INFO.ordinal() && !isDebugLogged()) {
+            emit(level, summarizeFormatted(t, message), null);
+        }
+        else {
+            logThrowable(level, template, message, t);
+        }
+    }
+
+    /**
+     * Writes a message captured by a {@link LogBuffer}, with the time it was captured. With log4j the message bypasses
+     * the level of the category; other bindings can not do that, so it goes to the lowest enabled level above its own
+     * and names its original level.
+     */
+    void replay(final LogLevel level, final long timestamp, final String template, final Object[] args, final Throwable t)
+    {
+        final String message = (args == null) ? template : formatWith(level, null, template, args);
+        final Logger logger = logger();
+        if (Log4jDispatch.isLog4jLogger(logger)) {
+            if (level == LogLevel.ERROR) {
+                LogBuffer.errorLogged();
+            }
+            Log4jDispatch.dispatch(LOG_NAME, category, new LogLevel[] { level }, new long[] { timestamp }, new String[] { message },
+                new Throwable[] { t }, 1);
+            return;
+        }
+
+        for (final LogLevel enabledLevel : LEVELS) {
+            if (enabledLevel.ordinal() >= level.ordinal() && isConfigured(1 << enabledLevel.ordinal())) {
+                write(enabledLevel, (enabledLevel == level) ? message : "[" + level + "] " + message, t);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Formats a message for a {@link LogBatch}, with the same exception trimming and deduplication as logging it
+     * directly. The level was checked.
+     */
+    void addTo(final LogBatch batch, final LogLevel level, final Throwable t, final String template, final Object[] args)
+    {
+        if (t == null) {
+            batch.append(level, safeFormat(level, template, args), null);
+        }
+        else if (trimExceptions && level.ordinal() >= LogLevel.INFO.ordinal() && !isDebugLogged()) {
+            batch.append(level, summarize(level, t, template, args), null);
+        }
+        else {
+            final String message = safeFormat(level, template, args);
+            final String duplicate = summarizeDuplicate(template, message, t);
+            if (duplicate != null) {
+                batch.append(level, duplicate, null);
+            }
+            else {
+                batch.append(level, message, t);
+            }
+        }
+    }
+
+    /**
+     * Writes the messages of a {@link LogBatch}, whose levels were checked when they were added.
+     */
+    void writeBatch(final LogLevel[] levels, final long[] timestamps, final String[] messages, final Throwable[] throwables, final int count)
     {
+        for (int i = 0; i < count; i++) {
+            if (levels[i] == LogLevel.ERROR) {
+                LogBuffer.errorLogged();
+                break;
+            }
+        }
+
+        if (Log4jDispatch.isLog4jLogger(logger())) {
+            Log4jDispatch.dispatch(LOG_NAME, category, levels, timestamps, messages, throwables, count);
+        }
+        else {
+            for (int i = 0; i < count; i++) {
+                write(levels[i], messages[i], throwables[i]);
+            }
+        }
+    }
+
+    private void logMarked(final LogLevel level, final Marker marker, final String message, final Throwable t)
+    {
+        if (isDeferred(level)) {
+            LogBuffer.capture(this, level, message, null, t);
+            return;
+        }
+        if (level == LogLevel.ERROR) {
+            LogBuffer.errorLogged();
+        }
+
+        final Logger logger = logger();
+        if (Log4jDispatch.isLog4jLogger(logger)) {
+            if (!AsyncDispatcher.enqueue(LOG_NAME, category, level, message, t)) {
+                Log4jDispatch.dispatch(LOG_NAME, category, level, message, t);
+            }
+            return;
+        }
+
         switch (level) {
             case TRACE:
-                trace(t, message, args);
+                logger.trace(marker, message, t);
                 break;
 
             case DEBUG:
-                debug(t, message, args);
+                logger.debug(marker, message, t);
                 break;
 
             case INFO:
-                info(t, message, args);
+                logger.info(marker, message, t);
                 break;
 
             case WARN:
-                warn(t, message, args);
+                logger.warn(marker, message, t);
                 break;
 
             case ERROR:
-                error(t, message, args);
+                logger.error(marker, message, t);
                 break;
         }
     }
 
-    // ========================================================================
+    /**
+     * Evaluates {@link Supplier} arguments. Only called after the level check passed.
+     */
+    private static Object[] resolve(final Object[] args)
+    {
+        if (args == null) {
+            return null;
+        }
+
+        Object[] values = args;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof Supplier) {
+                if (values == args) {
+                    values = args.clone();
+                }
+                values[i] = resolveArgument((Supplier<?>) args[i]);
+            }
+        }
+        return values;
+    }
+
+    private static Object resolveArgument(final Supplier<?> supplier)
+    {
+        try {
+            return supplier.get();
+        }
+        catch (Exception e) {
+            return "<" + e.getClass().getSimpleName() + ">";
+        }
+    }
+
+    private static String resolve(final Supplier<String> message)
+    {
+        final Object value = resolveArgument(message);
+        return (value == null) ? null : value.toString();
+    }
 
     private String summarize(final LogLevel level, final Throwable t, final String msg, final Object... args)
+    {
+        return summarizeFormatted(t, safeFormat(level, msg, args));
+    }
+
+    private static String summarizeFormatted(final Throwable t, final String formatted)
     {
         final String message = (t == null) ? null : t.getMessage();
 
         if (message == null) {
-            return safeFormat(level, msg, args);
+            return formatted;
         }
 
         final int index = message.indexOf('\n');
 
         if (index == -1) {
-            return safeFormat(level, msg, args) + ": " + message;
+            return formatted + ": " + message;
         }
 
         final String shortMsg = message.substring(0, index);
-        return safeFormat(level, msg, args) + " (Switch to DEBUG for full stack trace): " + shortMsg;
+        return formatted + " (Switch to DEBUG for full stack trace): " + shortMsg;
     }
 
-    private String safeFormat(final LogLevel level, final String msg, final Object... args)
+    private String safeFormat(final LogLevel level, final String msg, final Object... rawArgs)
     {
-        if (msg == null) {
+        return formatWith(level, null, msg, rawArgs);
+    }
+
+    /**
+     * Formats a message with an already compiled template (or <tt>null</tt> to look it up). Used by {@link LogSite}.
+     */
+    String formatWith(final LogLevel level, final FormatTemplate compiled, final String msg, final Object... rawArgs)
+    {
+        final Object[] args = resolve(rawArgs);
+
+        if (formatStyle == FormatStyle.PLACEHOLDER) {
+            return PlaceholderFormat.format(msg, args);
+        }
+        else if (msg == null) {
             return args.length == 0 ? "" : FormattingUtils.safeArgs(args);
         }
         else {
+            final FormatTemplate template = (compiled != null) ? compiled : FormatTemplate.forPattern(msg);
+            if (template.getFailure() == null) {
+                try {
+                    return template.format(args);
+                }
+                catch (IllegalFormatException ife) {
+                    // fall through to the error handling below.
+                }
+            }
+            logger().error("Invalid format string while logging: " + level + " '" + msg + "' " + FormattingUtils.safeArgs(args));
+            return "'" + msg + "' " + FormattingUtils.safeArgs(args);
+        }
+    }
+
+    private String safeFormat(final LogLevel level, final String msg, final long arg)
+    {
+        return formatWith(level, null, msg, arg);
+    }
+
+    private String safeFormat(final LogLevel level, final String msg, final int arg)
+    {
+        return formatWith(level, null, msg, arg);
+    }
+
+    private String safeFormat(final LogLevel level, final String msg, final double arg)
+    {
+        return formatWith(level, null, msg, arg);
+    }
+
+    private String safeFormat(final LogLevel level, final String msg, final float arg)
+    {
+        return formatWith(level, null, msg, arg);
+    }
+
+    private String safeFormat(final LogLevel level, final String msg, final boolean arg)
+    {
+        return formatWith(level, null, msg, arg);
+    }
+
+    private String safeFormat(final LogLevel level, final String msg, final char arg)
+    {
+        return formatWith(level, null, msg, arg);
+    }
+
+    /**
+     * Formats a message with a single primitive argument without boxing it, unless the argument is not rendered
+     * directly or the message turns out to be invalid; see {@link #primitiveTemplate(FormatTemplate, String)}.
+     */
+    private String formatWith(final LogLevel level, final FormatTemplate compiled, final String msg, final long arg)
+    {
+        if (formatStyle == FormatStyle.PLACEHOLDER) {
+            return PlaceholderFormat.format(msg, arg);
+        }
+        final FormatTemplate template = primitiveTemplate(compiled, msg);
+        if (template != null) {
+            try {
+                return template.format(arg);
+            }
+            catch (IllegalFormatException ife) {
+                // fall through to the error handling of the generic version.
+            }
+        }
+        return formatWith(level, template, msg, new Object[] { arg });
+    }
+
+    private String formatWith(final LogLevel level, final FormatTemplate compiled, final String msg, final int arg)
+    {
+        if (formatStyle == FormatStyle.PLACEHOLDER) {
+            return PlaceholderFormat.format(msg, arg);
+        }
+        final FormatTemplate template = primitiveTemplate(compiled, msg);
+        if (template != null) {
+            try {
+                return template.format(arg);
+            }
+            catch (IllegalFormatException ife) {
+                // fall through to the error handling of the generic version.
+            }
+        }
+        return formatWith(level, template, msg, new Object[] { arg });
+    }
+
+    private String formatWith(final LogLevel level, final FormatTemplate compiled, final String msg, final double arg)
+    {
+        if (formatStyle == FormatStyle.PLACEHOLDER) {
+            return PlaceholderFormat.format(msg, arg);
+        }
+        final FormatTemplate template = primitiveTemplate(compiled, msg);
+        if (template != null) {
+            try {
+                return template.format(arg);
+            }
+            catch (IllegalFormatException ife) {
+                // fall through to the error handling of the generic version.
+            }
+        }
+        return formatWith(level, template, msg, new Object[] { arg });
+    }
+
+    private String formatWith(final LogLevel level, final FormatTemplate compiled, final String msg, final float arg)
+    {
+        if (formatStyle == FormatStyle.PLACEHOLDER) {
+            return PlaceholderFormat.format(msg, arg);
+        }
+        final FormatTemplate template = primitiveTemplate(compiled, msg);
+        if (template != null) {
+            try {
+                return template.format(arg);
+            }
+            catch (IllegalFormatException ife) {
+                // fall through to the error handling of the generic version.
+            }
+        }
+        return formatWith(level, template, msg, new Object[] { arg });
+    }
+
+    private String formatWith(final LogLevel level, final FormatTemplate compiled, final String msg, final boolean arg)
+    {
+        if (formatStyle == FormatStyle.PLACEHOLDER) {
+            return PlaceholderFormat.format(msg, arg);
+        }
+        final FormatTemplate template = primitiveTemplate(compiled, msg);
+        if (template != null) {
             try {
-                return format(msg, args);
+                return template.format(arg);
             }
             catch (IllegalFormatException ife) {
-                wrappedLogger.error(format("Invalid format string while logging: %s '%s' %s", level, msg, FormattingUtils.safeArgs(args)));
+                // fall through to the error handling of the generic version.
             }
-            return format("'%s' %s", msg, FormattingUtils.safeArgs(args));
         }
+        return formatWith(level, template, msg, new Object[] { arg });
+    }
+
+    private String formatWith(final LogLevel level, final FormatTemplate compiled, final String msg, final char arg)
+    {
+        if (formatStyle == FormatStyle.PLACEHOLDER) {
+            return PlaceholderFormat.format(msg, arg);
+        }
+        final FormatTemplate template = primitiveTemplate(compiled, msg);
+        if (template != null) {
+            try {
+                return template.format(arg);
+            }
+            catch (IllegalFormatException ife) {
+                // fall through to the error handling of the generic version.
+            }
+        }
+        return formatWith(level, template, msg, new Object[] { arg });
+    }
+
+    /**
+     * Returns the template for a message with a single primitive argument, or <tt>null</tt> if the generic version
+     * has to format it.
+     */
+    private static FormatTemplate primitiveTemplate(final FormatTemplate compiled, final String msg)
+    {
+        if (msg == null) {
+            return null;
+        }
+        final FormatTemplate template = (compiled != null) ? compiled : FormatTemplate.forPattern(msg);
+        return (template.getFailure() == null) ? template : null;
     }
 }
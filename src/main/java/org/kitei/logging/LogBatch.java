@@ -0,0 +1,160 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+
+import org.kitei.logging.Log.LogLevel;
+
+/**
+ * Collects messages and writes them together when it is closed, created by {@link Log#batch()}.
+ *
+ * <pre>
+ * try (LogBatch batch = LOG.batch()) {
+ *     for (Partition partition : partitions) {
+ *         batch.info("partition %s: %d rows", partition.getName(), partition.getRows());
+ *     }
+ * }
+ * </pre>
+ *
+ * With log4j, each appender receives the whole batch under a single lock and flushes once, so the messages stay in
+ * order and are not interleaved with messages from other threads. Levels are checked and messages are formatted
+ * when they are added; exceptions are trimmed and deduplicated as when logging directly. A batch is not thread safe.
+ */
+public final class LogBatch implements AutoCloseable
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Log log;
+
+    private LogLevel[] levels = new LogLevel[INITIAL_CAPACITY];
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private String[] messages = new String[INITIAL_CAPACITY];
+    private Throwable[] throwables = new Throwable[INITIAL_CAPACITY];
+    private int count = 0;
+
+    LogBatch(final Log log)
+    {
+        this.log = log;
+    }
+
+    /**
+     * Returns the number of messages waiting to be written.
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    public LogBatch trace(final String message, final Object... args)
+    {
+        return add(LogLevel.TRACE, null, message, args);
+    }
+
+    public LogBatch trace(final Throwable t, final String message, final Object... args)
+    {
+        return add(LogLevel.TRACE, t, message, args);
+    }
+
+    public LogBatch debug(final String message, final Object... args)
+    {
+        return add(LogLevel.DEBUG, null, message, args);
+    }
+
+    public LogBatch debug(final Throwable t, final String message, final Object... args)
+    {
+        return add(LogLevel.DEBUG, t, message, args);
+    }
+
+    public LogBatch info(final String message, final Object... args)
+    {
+        return add(LogLevel.INFO, null, message, args);
+    }
+
+    public LogBatch info(final Throwable t, final String message, final Object... args)
+    {
+        return add(LogLevel.INFO, t, message, args);
+    }
+
+    public LogBatch warn(final String message, final Object... args)
+    {
+        return add(LogLevel.WARN, null, message, args);
+    }
+
+    public LogBatch warn(final Throwable t, final String message, final Object... args)
+    {
+        return add(LogLevel.WARN, t, message, args);
+    }
+
+    public LogBatch error(final String message, final Object... args)
+    {
+        return add(LogLevel.ERROR, null, message, args);
+    }
+
+    public LogBatch error(final Throwable t, final String message, final Object... args)
+    {
+        return add(LogLevel.ERROR, t, message, args);
+    }
+
+    /**
+     * Adds a message if the level is enabled.
+     */
+    public LogBatch add(final LogLevel level, final Throwable t, final String message, final Object... args)
+    {
+        checkNotNull(level, "level");
+
+        if (log.isLogged(1 << level.ordinal())) {
+            log.addTo(this, level, t, message, args);
+        }
+        return this;
+    }
+
+    void append(final LogLevel level, final String message, final Throwable t)
+    {
+        if (count == levels.length) {
+            final int capacity = count * 2;
+            levels = Arrays.copyOf(levels, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            messages = Arrays.copyOf(messages, capacity);
+            throwables = Arrays.copyOf(throwables, capacity);
+        }
+        levels[count] = level;
+        timestamps[count] = System.currentTimeMillis();
+        messages[count] = message;
+        throwables[count] = t;
+        count++;
+    }
+
+    /**
+     * Writes the collected messages. The batch can be used again afterwards.
+     */
+    public void flush()
+    {
+        if (count > 0) {
+            final int written = count;
+            count = 0;
+            log.writeBatch(levels, timestamps, messages, throwables, written);
+            Arrays.fill(messages, 0, written, null);
+            Arrays.fill(throwables, 0, written, null);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        flush();
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kitei.logging.Log.LogLevel;
+
+/**
+ * Keeps the disabled DEBUG and TRACE messages of a unit of work, e.g. a request, and writes them only if the unit
+ * fails.
+ *
+ * <pre>
+ * try (LogBuffer buffer = LogBuffer.start()) {
+ *     handle(request);
+ * }
+ * </pre>
+ *
+ * While the buffer is open, messages at its level and below that are disabled for their category are captured on
+ * this thread as pattern and arguments, without formatting them. Logging an ERROR message or calling
+ * {@link #flush()} writes the captured messages in order; after that, messages at these levels are written directly
+ * until the buffer is closed. Closing discards whatever was not written.
+ *
+ * Written messages keep the time they were logged at. With slf4j bindings other than log4j, they are written at the
+ * lowest enabled level and name their own level, as those can not bypass the level of a category.
+ *
+ * A buffer holds at most <tt>capacity</tt> messages and drops the oldest ones. Arguments are formatted when they are
+ * written, so they should not change while the buffer is open. Buffers nest; only the innermost one captures, and
+ * closing a buffer also closes the buffers opened after it. A buffer must be closed on the thread that opened it.
+ */
+public final class LogBuffer implements AutoCloseable
+{
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+
+    private static final ThreadLocal<LogBuffer> CURRENT = new ThreadLocal<LogBuffer>();
+
+    private final int levelMask;
+    private final LogBuffer previous;
+    private final Entry[] entries;
+    private int head = 0;
+    private int size = 0;
+    private long dropped = 0L;
+    private boolean flushed = false;
+    private boolean closed = false;
+
+    private LogBuffer(final LogLevel level, final int capacity, final LogBuffer previous)
+    {
+        this.levelMask = (1 << (level.ordinal() + 1)) - 1;
+        this.entries = new Entry[capacity];
+        this.previous = previous;
+    }
+
+    /**
+     * Captures DEBUG and TRACE messages.
+     */
+    public static LogBuffer start()
+    {
+        return start(LogLevel.DEBUG, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Captures messages at a level and below.
+     */
+    public static LogBuffer start(final LogLevel level, final int capacity)
+    {
+        checkNotNull(level, "level");
+        checkArgument(capacity > 0, "capacity must be positive");
+
+        final LogBuffer buffer = new LogBuffer(level, capacity, CURRENT.get());
+        CURRENT.set(buffer);
+        ACTIVE.incrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Returns whether a buffer on this thread captures a level.
+     */
+    static boolean captures(final int levelMask)
+    {
+        if (ACTIVE.get() == 0) {
+            return false;
+        }
+
+        final LogBuffer buffer = CURRENT.get();
+        return buffer != null && (buffer.levelMask & levelMask) != 0;
+    }
+
+    static void capture(final Log log, final LogLevel level, final String template, final Object[] args, final Throwable t)
+    {
+        final LogBuffer buffer = CURRENT.get();
+        if (buffer == null || buffer.flushed) {
+            log.replay(level, System.currentTimeMillis(), template, args, t);
+        }
+        else {
+            buffer.add(new Entry(log, level, System.currentTimeMillis(), template, args, t));
+        }
+    }
+
+    /**
+     * Called for every ERROR message, flushes the buffer of this thread.
+     */
+    static void errorLogged()
+    {
+        if (ACTIVE.get() != 0) {
+            final LogBuffer buffer = CURRENT.get();
+            if (buffer != null) {
+                buffer.flush();
+            }
+        }
+    }
+
+    /**
+     * Writes the captured messages. Messages logged after this are written directly.
+     */
+    public void flush()
+    {
+        if (flushed || closed) {
+            return;
+        }
+        flushed = true;
+
+        if (dropped > 0L) {
+            final Entry oldest = entries[head];
+            oldest.log.replay(oldest.level, oldest.timestamp, "(" + dropped + " earlier messages dropped from the log buffer)", null, null);
+        }
+        for (int i = 0; i < size; i++) {
+            final int index = (head + i) % entries.length;
+            final Entry entry = entries[index];
+            entries[index] = null;
+            entry.log.replay(entry.level, entry.timestamp, entry.template, entry.args, entry.t);
+        }
+        size = 0;
+    }
+
+    /**
+     * Discards all messages that were not written.
+     *
+     * @throws IllegalStateException if the buffer is not open on this thread.
+     */
+    @Override
+    public void close()
+    {
+        if (closed) {
+            return;
+        }
+
+        final LogBuffer current = CURRENT.get();
+        for (LogBuffer buffer = current; buffer != this; buffer = buffer.previous) {
+            if (buffer == null) {
+                throw new IllegalStateException("buffer is not open on this thread");
+            }
+        }
+        for (LogBuffer buffer = current; buffer != previous; buffer = buffer.previous) {
+            buffer.closed = true;
+            ACTIVE.decrementAndGet();
+        }
+
+        if (previous == null) {
+            CURRENT.remove();
+        }
+        else {
+            CURRENT.set(previous);
+        }
+    }
+
+    private void add(final Entry entry)
+    {
+        if (size == entries.length) {
+            entries[head] = entry;
+            head = (head + 1) % entries.length;
+            dropped++;
+        }
+        else {
+            entries[(head + size) % entries.length] = entry;
+            size++;
+        }
+    }
+
+    private static final class Entry
+    {
+        private final Log log;
+        private final LogLevel level;
+        private final long timestamp;
+        private final String template;
+        private final Object[] args;
+        private final Throwable t;
+
+        private Entry(final Log log, final LogLevel level, final long timestamp, final String template, final Object[] args, final Throwable t)
+        {
+            this.log = log;
+            this.level = level;
+            this.timestamp = timestamp;
+            this.template = template;
+            this.args = args;
+            this.t = t;
+        }
+    }
+}
@@ -13,14 +13,21 @@
  */
 package org.kitei.logging;
 
+import org.apache.log4j.Level;
+import org.kitei.logging.Log.LogLevel;
+import org.kitei.logging.internal.AsyncDispatcher;
+import org.kitei.logging.internal.ConfigurationGeneration;
 import org.kitei.logging.internal.Log4jConfigurator;
 import org.kitei.logging.internal.LoggingAssimilator;
+import org.kitei.system.SystemPropertyKeys;
 
 /**
  * Setup logging.
  */
 public final class LogConfigurator
 {
+    private static final int DEFAULT_ASYNC_CAPACITY = 8192;
+
     private LogConfigurator()
     {
     }
@@ -31,10 +38,79 @@ public final class LogConfigurator
 
         // Bring up JUL bridge.
         LoggingAssimilator.assimilateJavaUtilLogging();
+
+        if (Boolean.getBoolean(SystemPropertyKeys.LOGGING_ASYNC)) {
+            startAsync(Integer.getInteger(SystemPropertyKeys.LOGGING_ASYNC_CAPACITY, DEFAULT_ASYNC_CAPACITY),
+                Integer.getInteger(SystemPropertyKeys.LOGGING_ASYNC_STRIPES, 1),
+                AsyncOverflow.valueOf(System.getProperty(SystemPropertyKeys.LOGGING_ASYNC_OVERFLOW, AsyncOverflow.BLOCK.name())));
+        }
+    }
+
+    /**
+     * Writes log messages on a background thread from now on. The logging threads only queue their messages; the
+     * message text is still formatted on the logging thread. Does nothing unless slf4j is bound to log4j.
+     *
+     * @param capacity Number of messages the queue holds.
+     * @param overflow What happens to messages while the queue is full.
+     */
+    public static void startAsync(final int capacity, final AsyncOverflow overflow)
+    {
+        AsyncDispatcher.start(capacity, overflow);
+    }
+
+    /**
+     * Like {@link #startAsync(int, AsyncOverflow)}, but spreads the logging threads over several queues, so that
+     * they do not all contend on a single one. Meant for machines with many cores. The messages of one thread are
+     * written in order; messages of different threads are merged by the time they were logged, which is exact only
+     * as far as the background thread sees them queued.
+     *
+     * @param capacity Number of messages all queues together hold.
+     * @param stripes Number of queues, 0 for one per available processor (at most 64).
+     */
+    public static void startAsync(final int capacity, final int stripes, final AsyncOverflow overflow)
+    {
+        AsyncDispatcher.start(capacity, stripes, overflow);
+    }
+
+    /**
+     * Writes the queued messages, waiting a few seconds at most, and stops writing log messages on a background thread.
+     */
+    public static void stopAsync()
+    {
+        AsyncDispatcher.stop(AsyncDispatcher.DRAIN_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Changes the level of a category at runtime. A <tt>null</tt> level makes the category inherit its parent's level.
+     */
+    public static void setLevel(final String category, final LogLevel level)
+    {
+        Log4jConfigurator.setLevel(category, (level == null) ? null : Level.toLevel(level.name()));
+    }
+
+    /**
+     * Must be called after changing logging levels or additivity directly through the logging framework, as {@link Log}
+     * caches the effective level and the appenders of each category. Without it, such changes only show up after the
+     * next periodic refresh, if one is configured, see {@link org.kitei.system.SystemPropertyKeys#LOGGING_LEVEL_REFRESH_INTERVAL}.
+     */
+    public static void levelsChanged()
+    {
+        ConfigurationGeneration.bump();
+    }
+
+    /**
+     * Sets the filter for messages logged with a {@link org.slf4j.Marker}. Use {@link MarkerFilter#ALLOW_ALL} to turn
+     * filtering off.
+     */
+    public static void setMarkerFilter(final MarkerFilter filter)
+    {
+        MarkerFilter.setActive(filter);
     }
 
     public static void unconfigure()
     {
+        stopAsync();
+
         // Turn off JUL bridge.
         LoggingAssimilator.unassimilateJavaUtilLogging();
     }
@@ -0,0 +1,277 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Key value pairs that describe the current unit of work, e.g. a request id. A replacement for the log4j MDC.
+ *
+ * A context is immutable. {@link #with(String, Object)} returns a new context that shares all existing entries, so
+ * adding an entry is cheap no matter how many entries there are. The current context is kept in a thread local;
+ * capturing it for another thread is a single read and restoring it a single write.
+ *
+ * <pre>
+ * try (LogContext.Scope scope = LogContext.put("request", requestId)) {
+ *     executor.execute(LogContext.propagate(task));
+ * }
+ * </pre>
+ *
+ * The {@link org.kitei.logging.internal.ContextPatternLayout} renders the context of the logging thread.
+ */
+public final class LogContext
+{
+    public static final LogContext EMPTY = new LogContext(null, null, null);
+
+    /** The innermost open scope of each thread, which holds the current context. */
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<Scope>();
+
+    private final String key;
+    private final String value;
+    private final LogContext parent;
+
+    private volatile Map<String, String> entries = null;
+
+    private LogContext(final String key, final String value, final LogContext parent)
+    {
+        this.key = key;
+        this.value = value;
+        this.parent = parent;
+    }
+
+    /**
+     * Returns the context of the current thread.
+     */
+    public static LogContext current()
+    {
+        final Scope scope = CURRENT.get();
+        return (scope == null) ? EMPTY : scope.context;
+    }
+
+    /**
+     * Adds an entry to the current context until the returned scope is closed.
+     */
+    public static Scope put(final String key, final Object value)
+    {
+        return current().with(key, value).bind();
+    }
+
+    /**
+     * Returns a task that runs with the context of the calling thread.
+     */
+    public static Runnable propagate(final Runnable task)
+    {
+        return current().wrap(task);
+    }
+
+    /**
+     * Returns a task that runs with the context of the calling thread.
+     */
+    public static <T> Callable<T> propagate(final Callable<T> task)
+    {
+        return current().wrap(task);
+    }
+
+    /**
+     * Returns an executor that runs each task with the context of the thread that submitted it.
+     */
+    public static Executor propagating(final Executor executor)
+    {
+        checkNotNull(executor, "executor");
+        return new Executor() {
+            @Override
+            public void execute(final Runnable task)
+            {
+                executor.execute(propagate(task));
+            }
+        };
+    }
+
+    /**
+     * Returns an executor service that runs each task with the context of the thread that submitted it.
+     */
+    public static ExecutorService propagating(final ExecutorService executorService)
+    {
+        return new ContextExecutorService(checkNotNull(executorService, "executorService"));
+    }
+
+    /**
+     * Returns a context with an additional entry. An entry replaces an earlier entry with the same key.
+     */
+    public LogContext with(final String key, final Object value)
+    {
+        checkNotNull(key, "key");
+        return new LogContext(key, String.valueOf(value), this);
+    }
+
+    /**
+     * Returns the value of a key, or <tt>null</tt>.
+     */
+    public String get(final String key)
+    {
+        for (LogContext context = this; context.key != null; context = context.parent) {
+            if (context.key.equals(key)) {
+                return context.value;
+            }
+        }
+        return null;
+    }
+
+    public boolean isEmpty()
+    {
+        return key == null;
+    }
+
+    /**
+     * Returns the entries, oldest first. The map cannot be modified.
+     */
+    public Map<String, String> asMap()
+    {
+        if (isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> result = entries;
+        if (result == null) {
+            // Computed once per context from the parent's map; racing threads compute equal maps.
+            final Map<String, String> flattened = new LinkedHashMap<String, String>(parent.asMap());
+            flattened.remove(key);
+            flattened.put(key, value);
+            result = Collections.unmodifiableMap(flattened);
+            entries = result;
+        }
+        return result;
+    }
+
+    /**
+     * Appends the entries as <tt>key=value</tt> pairs, separated by blanks.
+     */
+    public void appendTo(final StringBuilder sb)
+    {
+        boolean first = true;
+        for (final Map.Entry<String, String> entry : asMap().entrySet()) {
+            if (!first) {
+                sb.append(' ');
+            }
+            sb.append(entry.getKey()).append('=').append(entry.getValue());
+            first = false;
+        }
+    }
+
+    /**
+     * Makes this the context of the current thread until the returned scope is closed.
+     */
+    public Scope bind()
+    {
+        final Scope scope = new Scope(this, CURRENT.get());
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    public Runnable wrap(final Runnable task)
+    {
+        checkNotNull(task, "task");
+        return new Runnable() {
+            @Override
+            public void run()
+            {
+                final Scope scope = bind();
+                try {
+                    task.run();
+                }
+                finally {
+                    scope.close();
+                }
+            }
+        };
+    }
+
+    public <T> Callable<T> wrap(final Callable<T> task)
+    {
+        checkNotNull(task, "task");
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception
+            {
+                final Scope scope = bind();
+                try {
+                    return task.call();
+                }
+                finally {
+                    scope.close();
+                }
+            }
+        };
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder();
+        appendTo(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Restores the previous context of a thread when closed. Closing a scope also closes the scopes opened after it
+     * that are still open.
+     */
+    public static final class Scope implements AutoCloseable
+    {
+        private final LogContext context;
+        private final Scope previous;
+        private boolean closed = false;
+
+        private Scope(final LogContext context, final Scope previous)
+        {
+            this.context = context;
+            this.previous = previous;
+        }
+
+        /**
+         * @throws IllegalStateException if the scope is not open on this thread.
+         */
+        @Override
+        public void close()
+        {
+            if (closed) {
+                return;
+            }
+
+            final Scope current = CURRENT.get();
+            for (Scope scope = current; scope != this; scope = scope.previous) {
+                if (scope == null) {
+                    throw new IllegalStateException("scope is not open on this thread");
+                }
+            }
+            for (Scope scope = current; scope != previous; scope = scope.previous) {
+                scope.closed = true;
+            }
+
+            if (previous == null) {
+                CURRENT.remove();
+            }
+            else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
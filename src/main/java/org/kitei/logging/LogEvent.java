@@ -0,0 +1,242 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import org.kitei.logging.Log.LogLevel;
+
+/**
+ * A structured log event, started by {@link Log#atInfo()} and friends.
+ *
+ * <pre>
+ * log.atInfo().kv("user", id).kv("ms", 12L).msg("done");
+ * </pre>
+ *
+ * Fields are rendered as <tt>key=value</tt> pairs after the message, values containing blanks, quotes or <tt>=</tt>
+ * are quoted. Object values are rendered like message arguments; a {@link LogRenderable} writes itself into the event.
+ * At a disabled level a shared instance that ignores everything is returned. An enabled event is a per thread
+ * instance that is reused once {@link #msg(String)} or {@link #log()} was called, or rendering a value failed, so an
+ * event must not be kept or used after that. An event that is started and never logged keeps the per thread instance,
+ * later events of the thread are then allocated.
+ */
+public final class LogEvent
+{
+    private static final int INITIAL_SIZE = 256;
+    private static final int MAX_SIZE = 16384;
+
+    static final LogEvent DISABLED = new LogEvent(false);
+
+    private static final ThreadLocal<LogEvent> EVENTS = new ThreadLocal<LogEvent>() {
+        @Override
+        protected LogEvent initialValue()
+        {
+            return new LogEvent(true);
+        }
+    };
+
+    private final boolean pooled;
+    private StringBuilder fields = new StringBuilder(INITIAL_SIZE);
+    private Log log = null;
+    private LogLevel level = null;
+    private Throwable cause = null;
+
+    private LogEvent(final boolean pooled)
+    {
+        this.pooled = pooled;
+    }
+
+    static LogEvent acquire(final Log log, final LogLevel level)
+    {
+        LogEvent event = EVENTS.get();
+        if (event.log != null) {
+            // Started while another event of this thread is still open, e.g. from a toString().
+            event = new LogEvent(false);
+        }
+        event.log = log;
+        event.level = level;
+        return event;
+    }
+
+    public LogEvent kv(final String key, final Object value)
+    {
+        if (log != null) {
+            boolean rendered = false;
+            try {
+                final int start = appendKey(key).length();
+                ArgumentRenderers.append(fields, value);
+                quote(start);
+                rendered = true;
+            }
+            finally {
+                if (!rendered) {
+                    // The event can not be logged any more, hand back the per thread instance.
+                    release();
+                }
+            }
+        }
+        return this;
+    }
+
+    public LogEvent kv(final String key, final String value)
+    {
+        if (log != null) {
+            appendValue(appendKey(key), value);
+        }
+        return this;
+    }
+
+    public LogEvent kv(final String key, final long value)
+    {
+        if (log != null) {
+            appendKey(key).append(value);
+        }
+        return this;
+    }
+
+    public LogEvent kv(final String key, final int value)
+    {
+        if (log != null) {
+            appendKey(key).append(value);
+        }
+        return this;
+    }
+
+    public LogEvent kv(final String key, final double value)
+    {
+        if (log != null) {
+            appendKey(key).append(value);
+        }
+        return this;
+    }
+
+    public LogEvent kv(final String key, final boolean value)
+    {
+        if (log != null) {
+            appendKey(key).append(value);
+        }
+        return this;
+    }
+
+    /**
+     * Adds an exception to the event. It is logged like the exception of <tt>Log.info(Throwable, String)</tt>.
+     */
+    public LogEvent withCause(final Throwable t)
+    {
+        if (log != null) {
+            cause = t;
+        }
+        return this;
+    }
+
+    /**
+     * Logs the event with a message in front of the fields.
+     */
+    public void msg(final String message)
+    {
+        if (log == null) {
+            return;
+        }
+
+        try {
+            if (message != null && !message.isEmpty()) {
+                fields.insert(0, message);
+            }
+            else if (fields.length() > 0) {
+                fields.deleteCharAt(0);
+            }
+
+            log.emitFormatted(level, message, fields.toString(), cause);
+        }
+        finally {
+            release();
+        }
+    }
+
+    /**
+     * Logs the event without a message.
+     */
+    public void log()
+    {
+        msg(null);
+    }
+
+    private StringBuilder appendKey(final String key)
+    {
+        return fields.append(' ').append(key).append('=');
+    }
+
+    /**
+     * Quotes a value rendered from <tt>start</tt> to the end of the fields, if needed.
+     */
+    private void quote(final int start)
+    {
+        if (!needsQuotes(fields, start, fields.length())) {
+            return;
+        }
+        for (int i = fields.length() - 1; i >= start; i--) {
+            final char c = fields.charAt(i);
+            if (c == '"' || c == '\\') {
+                fields.insert(i, '\\');
+            }
+        }
+        fields.insert(start, '"').append('"');
+    }
+
+    private static boolean needsQuotes(final CharSequence value, final int start, final int end)
+    {
+        boolean quote = start == end;
+        for (int i = start; !quote && i < end; i++) {
+            final char c = value.charAt(i);
+            quote = c <= ' ' || c == '"' || c == '=';
+        }
+        return quote;
+    }
+
+    private void appendValue(final StringBuilder sb, final String value)
+    {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+
+        if (!needsQuotes(value, 0, value.length())) {
+            sb.append(value);
+            return;
+        }
+
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    private void release()
+    {
+        log = null;
+        level = null;
+        cause = null;
+        if (pooled) {
+            if (fields.capacity() > MAX_SIZE) {
+                fields = new StringBuilder(INITIAL_SIZE);
+            }
+            else {
+                fields.setLength(0);
+            }
+        }
+    }
+}
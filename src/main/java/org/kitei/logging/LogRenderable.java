@@ -0,0 +1,28 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import java.io.IOException;
+
+/**
+ * An object that writes its log representation itself. Used instead of <tt>toString()</tt> when the object is an
+ * argument of a log message or a {@link LogEvent} field; the output goes straight into the message buffer.
+ *
+ * The appendable drops everything beyond the size limit of an argument, an implementation may stop early but does
+ * not need to check.
+ */
+public interface LogRenderable
+{
+    void renderTo(Appendable out) throws IOException;
+}
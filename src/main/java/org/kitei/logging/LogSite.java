@@ -0,0 +1,297 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kitei.internal.FormatTemplate;
+import org.kitei.logging.Log.FormatStyle;
+import org.kitei.logging.Log.LogLevel;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+
+/**
+ * A single log statement, created by {@link Log#site(LogLevel, String)}.
+ *
+ * The level and the pattern are fixed when the site is created. A call at a disabled level is one cached level check;
+ * the fixed arity methods do not allocate in that case. A {@link Throwable} first argument is logged as the exception,
+ * not formatted. Each site counts the messages it emitted.
+ *
+ * A site can be limited with {@link #every(int)} and {@link #atMost(int, long, TimeUnit)}. Limited calls are dropped
+ * before the message is formatted and the next emitted message ends with "(suppressed K similar messages)". The limits
+ * are kept per site in atomic counters, so a flood of calls never takes a lock before it reaches the appenders.
+ */
+public final class LogSite
+{
+    private final Log log;
+    private final LogLevel level;
+    private final int levelMask;
+    private final String pattern;
+    private final FormatTemplate template;
+    private final AtomicLong count = new AtomicLong();
+
+    private final boolean limited;
+    private final int everyN;
+    private final long permitNanos;
+    private final long burstNanos;
+    private final Ticker ticker;
+    private final AtomicLong occurrences = new AtomicLong();
+    private final AtomicLong nextPermit;
+    private final AtomicLong pendingSuppressed = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    LogSite(final Log log, final LogLevel level, final String pattern)
+    {
+        this.log = log;
+        this.level = level;
+        this.levelMask = 1 << level.ordinal();
+        this.pattern = pattern;
+        this.template = (pattern != null && log.getFormatStyle() == FormatStyle.PRINTF) ? FormatTemplate.forPattern(pattern) : null;
+        this.limited = false;
+        this.everyN = 1;
+        this.permitNanos = 0L;
+        this.burstNanos = 0L;
+        this.ticker = Ticker.systemTicker();
+        this.nextPermit = new AtomicLong(ticker.read());
+    }
+
+    private LogSite(final LogSite site, final int everyN, final long permitNanos, final long burstNanos, final Ticker ticker)
+    {
+        this.log = site.log;
+        this.level = site.level;
+        this.levelMask = site.levelMask;
+        this.pattern = site.pattern;
+        this.template = site.template;
+        this.limited = everyN > 1 || permitNanos > 0L;
+        this.everyN = everyN;
+        this.permitNanos = permitNanos;
+        this.burstNanos = burstNanos;
+        this.ticker = ticker;
+        this.nextPermit = new AtomicLong(ticker.read());
+    }
+
+    /**
+     * Returns a site that only emits the first of every <tt>n</tt> calls. The counters of the new site start at zero.
+     */
+    public LogSite every(final int n)
+    {
+        checkArgument(n > 0, "n must be positive");
+        return new LogSite(this, n, permitNanos, burstNanos, ticker);
+    }
+
+    /**
+     * Returns a site that emits at most <tt>permits</tt> messages per window. Permits are handed out as a token bucket:
+     * a full bucket allows a burst of <tt>permits</tt> messages, after that one message per <tt>window / permits</tt>.
+     * The counters of the new site start at zero.
+     */
+    public LogSite atMost(final int permits, final long window, final TimeUnit unit)
+    {
+        checkArgument(permits > 0, "permits must be positive");
+        checkArgument(window > 0, "window must be positive");
+        checkNotNull(unit, "unit");
+
+        final long interval = Math.max(1L, unit.toNanos(window) / permits);
+        return new LogSite(this, everyN, interval, interval * (permits - 1), ticker);
+    }
+
+    @VisibleForTesting
+    LogSite withTicker(final Ticker ticker)
+    {
+        return new LogSite(this, everyN, permitNanos, burstNanos, ticker);
+    }
+
+    public LogLevel getLevel()
+    {
+        return level;
+    }
+
+    public String getPattern()
+    {
+        return pattern;
+    }
+
+    /**
+     * Returns the number of messages this site emitted.
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * Returns the number of calls that passed the level check but were dropped by a limit.
+     */
+    public long getSuppressedCount()
+    {
+        return suppressed.get();
+    }
+
+    public boolean isEnabled()
+    {
+        return log.isEnabled(levelMask);
+    }
+
+    public void log()
+    {
+        if (log.isEnabled(levelMask) && admit()) {
+            emit(null, log.formatWith(level, template, pattern));
+        }
+    }
+
+    public void log(final Object arg1)
+    {
+        if (log.isEnabled(levelMask) && admit()) {
+            emit(null, log.formatWith(level, template, pattern, arg1));
+        }
+    }
+
+    public void log(final Object arg1, final Object arg2)
+    {
+        if (log.isEnabled(levelMask) && admit()) {
+            emit(null, log.formatWith(level, template, pattern, arg1, arg2));
+        }
+    }
+
+    public void log(final Object arg1, final Object arg2, final Object arg3)
+    {
+        if (log.isEnabled(levelMask) && admit()) {
+            emit(null, log.formatWith(level, template, pattern, arg1, arg2, arg3));
+        }
+    }
+
+    public void log(final Object arg1, final Object arg2, final Object arg3, final Object arg4)
+    {
+        if (log.isEnabled(levelMask) && admit()) {
+            emit(null, log.formatWith(level, template, pattern, arg1, arg2, arg3, arg4));
+        }
+    }
+
+    public void log(final Object... args)
+    {
+        if (log.isEnabled(levelMask) && admit()) {
+            emit(null, log.formatWith(level, template, pattern, args));
+        }
+    }
+
+    public void log(final long arg1)
+    {
+        if (log.isEnabled(levelMask) && admit()) {
+            emit(null, log.formatWith(level, template, pattern, arg1));
+        }
+    }
+
+    public void log(final Object arg1, final long arg2)
+    {
+        if (log.isEnabled(levelMask) && admit()) {
+            emit(null, log.formatWith(level, template, pattern, arg1, arg2));
+        }
+    }
+
+    public void log(final Throwable t)
+    {
+        if (log.isEnabled(levelMask) && admit()) {
+            emit(t, log.formatWith(level, template, pattern));
+        }
+    }
+
+    public void log(final Throwable t, final Object arg1)
+    {
+        if (log.isEnabled(levelMask) && admit()) {
+            emit(t, log.formatWith(level, template, pattern, arg1));
+        }
+    }
+
+    public void log(final Throwable t, final Object arg1, final Object arg2)
+    {
+        if (log.isEnabled(levelMask) && admit()) {
+            emit(t, log.formatWith(level, template, pattern, arg1, arg2));
+        }
+    }
+
+    public void log(final Throwable t, final Object arg1, final Object arg2, final Object arg3)
+    {
+        if (log.isEnabled(levelMask) && admit()) {
+            emit(t, log.formatWith(level, template, pattern, arg1, arg2, arg3));
+        }
+    }
+
+    public void log(final Throwable t, final long arg1)
+    {
+        if (log.isEnabled(levelMask) && admit()) {
+            emit(t, log.formatWith(level, template, pattern, arg1));
+        }
+    }
+
+    public void log(final Throwable t, final Object... args)
+    {
+        if (log.isEnabled(levelMask) && admit()) {
+            emit(t, log.formatWith(level, template, pattern, args));
+        }
+    }
+
+    private boolean admit()
+    {
+        if (!limited) {
+            return true;
+        }
+        if ((everyN == 1 || occurrences.getAndIncrement() % everyN == 0) && (permitNanos == 0L || acquirePermit())) {
+            return true;
+        }
+        pendingSuppressed.incrementAndGet();
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    private boolean acquirePermit()
+    {
+        final long now = ticker.read();
+        while (true) {
+            // nextPermit is the time at which the bucket is empty again; everything is compared
+            // by difference as nanoTime may wrap.
+            final long next = nextPermit.get();
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (nextPermit.compareAndSet(next, (next - now > 0 ? next : now) + permitNanos)) {
+                return true;
+            }
+        }
+    }
+
+    private void emit(final Throwable t, final String formatted)
+    {
+        count.incrementAndGet();
+
+        String message = formatted;
+        if (limited) {
+            final long skipped = pendingSuppressed.getAndSet(0L);
+            if (skipped > 0L) {
+                message = formatted + " (suppressed " + skipped + " similar messages)";
+            }
+        }
+
+        log.emitFormatted(level, pattern, message, t);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LogSite[" + level + " '" + pattern + "', " + count.get() + " emitted]";
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A running stopwatch, started by {@link Log#timer(String)}. Closing it adds the elapsed time to the histogram of the
+ * timer name; the Log logs one summary line per name and interval instead of one line per measurement.
+ *
+ * <pre>
+ * try (LogTimer timer = LOG.timer("db.query")) {
+ *     ...
+ * }
+ * </pre>
+ */
+public final class LogTimer implements AutoCloseable
+{
+    static final LogTimer DISABLED = new LogTimer(null);
+
+    private final TimerHistogram histogram;
+    private final long start;
+    private boolean closed = false;
+
+    LogTimer(final TimerHistogram histogram)
+    {
+        this.histogram = histogram;
+        this.start = (histogram == null) ? 0L : System.nanoTime();
+    }
+
+    /**
+     * Returns the time since the timer was started. A timer whose summary level is disabled does not measure and
+     * returns 0.
+     */
+    public long elapsed(final TimeUnit unit)
+    {
+        return (histogram == null) ? 0L : unit.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops the timer and records the elapsed time. Only the first call records.
+     */
+    @Override
+    public void close()
+    {
+        if (histogram != null && !closed) {
+            closed = true;
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import java.lang.ref.WeakReference;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.kitei.logging.Log.LogLevel;
+import org.kitei.system.SystemPropertyKeys;
+
+/**
+ * The timers of a Log. Summaries for all timers of all Logs are written by a single daemon thread.
+ *
+ * Timer names are meant to be constants. A Log keeps at most {@link #MAX_TIMERS} of them; measurements of further
+ * names are summarized under {@link #OTHER_TIMERS}.
+ */
+final class LogTimers implements Runnable
+{
+    private static final long DEFAULT_INTERVAL = 60L;
+
+    static final int MAX_TIMERS = 1000;
+    static final String OTHER_TIMERS = "<other>";
+
+    private static final ScheduledExecutorService REPORTER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+            final Thread thread = new Thread(runnable, "kitei-log-timers");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Log log;
+    private final LogLevel level;
+    private final ConcurrentMap<String, TimerHistogram> histograms = new ConcurrentHashMap<String, TimerHistogram>();
+
+    LogTimers(final Log log)
+    {
+        this.log = log;
+        this.level = timerLevel();
+
+        final long interval = Long.getLong(SystemPropertyKeys.LOGGING_TIMER_INTERVAL, DEFAULT_INTERVAL);
+        if (interval > 0L) {
+            final Reporter reporter = new Reporter(this);
+            reporter.future = REPORTER.scheduleAtFixedRate(reporter, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    LogTimer start(final String name)
+    {
+        if (!log.isEnabled(level)) {
+            return LogTimer.DISABLED;
+        }
+
+        TimerHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            // The bound is approximate, threads that race may add a few more.
+            histogram = histogram((histograms.size() < MAX_TIMERS) ? name : OTHER_TIMERS);
+        }
+        return new LogTimer(histogram);
+    }
+
+    private TimerHistogram histogram(final String name)
+    {
+        final TimerHistogram newHistogram = new TimerHistogram(name);
+        final TimerHistogram histogram = histograms.putIfAbsent(name, newHistogram);
+        return (histogram == null) ? newHistogram : histogram;
+    }
+
+    /**
+     * Logs one line per timer that recorded anything since the last report.
+     */
+    @Override
+    public void run()
+    {
+        for (final TimerHistogram histogram : histograms.values()) {
+            final TimerHistogram.Snapshot snapshot = histogram.drain();
+            if (snapshot.getCount() > 0L) {
+                // Locale.ROOT, so that the default locale does not change the number format.
+                log.log(level, String.format(Locale.ROOT, "timer %s: count=%d p50=%.3fms p99=%.3fms max=%.3fms",
+                        histogram.getName(),
+                        snapshot.getCount(),
+                        millis(snapshot.getPercentile(0.5)),
+                        millis(snapshot.getPercentile(0.99)),
+                        millis(snapshot.getMax())));
+            }
+        }
+    }
+
+    /**
+     * The scheduled task. It only holds the timers weakly, so that the reporter thread does not keep Logs (and their
+     * canonical cache entries) alive, and cancels itself once they are gone.
+     */
+    private static final class Reporter implements Runnable
+    {
+        private final WeakReference<LogTimers> timers;
+        private volatile ScheduledFuture<?> future = null;
+
+        private Reporter(final LogTimers timers)
+        {
+            this.timers = new WeakReference<LogTimers>(timers);
+        }
+
+        @Override
+        public void run()
+        {
+            final LogTimers logTimers = timers.get();
+            if (logTimers != null) {
+                logTimers.run();
+            }
+            else if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private static double millis(final long nanos)
+    {
+        return nanos / 1000000.0;
+    }
+
+    private static LogLevel timerLevel()
+    {
+        final String level = System.getProperty(SystemPropertyKeys.LOGGING_TIMER_LEVEL);
+        if (level != null) {
+            for (final LogLevel logLevel : LogLevel.values()) {
+                if (logLevel.name().equalsIgnoreCase(level.trim())) {
+                    return logLevel;
+                }
+            }
+        }
+        return LogLevel.INFO;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Set;
+
+import org.slf4j.Marker;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Decides which marked messages are logged, see {@link LogConfigurator#setMarkerFilter(MarkerFilter)}.
+ *
+ * A message is denied if its marker (or a marker it references) is denied, unless its marker (or a marker it
+ * references) is explicitly allowed. Messages without a marker are never filtered. The markers are compiled into
+ * bitsets, so checking a message is a mask test. Beyond the first 63 marker names, markers share a single bit and are
+ * checked by name.
+ */
+public final class MarkerFilter
+{
+    public static final MarkerFilter ALLOW_ALL = new MarkerFilter(0L, 0L, ImmutableSet.<String>of(),
+                                                                  ImmutableSet.<String>of());
+
+    private static volatile MarkerFilter active = ALLOW_ALL;
+
+    private final long denied;
+    private final long allowed;
+    private final Set<String> deniedOverflow;
+    private final Set<String> allowedOverflow;
+
+    private MarkerFilter(final long denied, final long allowed,
+                         final Set<String> deniedOverflow, final Set<String> allowedOverflow)
+    {
+        this.denied = denied;
+        this.allowed = allowed;
+        this.deniedOverflow = deniedOverflow;
+        this.allowedOverflow = allowedOverflow;
+    }
+
+    /**
+     * Returns a filter that denies the given markers.
+     */
+    public static MarkerFilter deny(final Marker... markers)
+    {
+        return ALLOW_ALL.denying(markers);
+    }
+
+    /**
+     * Returns a filter that also denies the given markers.
+     */
+    public MarkerFilter denying(final Marker... markers)
+    {
+        return new MarkerFilter(denied | bits(markers), allowed, overflow(deniedOverflow, markers), allowedOverflow);
+    }
+
+    /**
+     * Returns a filter that allows the given markers, even if they reference a denied marker.
+     */
+    public MarkerFilter allowing(final Marker... markers)
+    {
+        return new MarkerFilter(denied, allowed | bits(markers), deniedOverflow, overflow(allowedOverflow, markers));
+    }
+
+    public boolean isEnabled(final Marker marker)
+    {
+        return marker == null || accepts(marker, MarkerIds.mask(marker));
+    }
+
+    boolean accepts(final Marker marker, final long mask)
+    {
+        return !matches(marker, mask, denied, deniedOverflow) || matches(marker, mask, allowed, allowedOverflow);
+    }
+
+    private static boolean matches(final Marker marker, final long mask, final long bits, final Set<String> overflow)
+    {
+        final long common = mask & bits;
+        if ((common & ~MarkerIds.OVERFLOW) != 0L) {
+            return true;
+        }
+        if (common == 0L) {
+            return false;
+        }
+        for (final String name : overflow) {
+            if (marker.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static MarkerFilter active()
+    {
+        return active;
+    }
+
+    static void setActive(final MarkerFilter filter)
+    {
+        active = checkNotNull(filter, "filter");
+    }
+
+    private static long bits(final Marker... markers)
+    {
+        long mask = 0L;
+        for (final Marker marker : markers) {
+            mask |= MarkerIds.bit(checkNotNull(marker, "marker").getName());
+        }
+        return mask;
+    }
+
+    private static Set<String> overflow(final Set<String> names, final Marker... markers)
+    {
+        final ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+        builder.addAll(names);
+        for (final Marker marker : markers) {
+            if (MarkerIds.bit(marker.getName()) == MarkerIds.OVERFLOW) {
+                builder.add(marker.getName());
+            }
+        }
+        return builder.build();
+    }
+}
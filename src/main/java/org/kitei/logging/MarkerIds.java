@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Marker;
+
+/**
+ * Interns marker names into bits of a <tt>long</tt>. The mask of a marker has its own bit and the bits of all markers
+ * it references, so a marker filter is a mask test. The first 63 marker names get a bit each, all further names share
+ * the {@link #OVERFLOW} bit, which only tells that an exact check by name is needed. References are read when a marker
+ * is first used; references added later are not seen.
+ */
+final class MarkerIds
+{
+    private static final int MAX_BITS = 63;
+    static final long OVERFLOW = 1L << MAX_BITS;
+    private static final int MAX_DEPTH = 16;
+
+    private static final ConcurrentMap<String, Long> BITS = new ConcurrentHashMap<String, Long>();
+    private static final ConcurrentMap<String, Long> MASKS = new ConcurrentHashMap<String, Long>();
+
+    private MarkerIds()
+    {
+    }
+
+    static long mask(final Marker marker)
+    {
+        if (marker == null) {
+            return 0L;
+        }
+
+        final Long mask = MASKS.get(marker.getName());
+        if (mask != null) {
+            return mask;
+        }
+
+        final long newMask = computeMask(marker, 0);
+        final Long previous = MASKS.putIfAbsent(marker.getName(), newMask);
+        return (previous == null) ? newMask : previous;
+    }
+
+    private static long computeMask(final Marker marker, final int depth)
+    {
+        long mask = bit(marker.getName());
+        if (depth < MAX_DEPTH && marker.hasReferences()) {
+            for (final Iterator<?> it = marker.iterator(); it.hasNext(); ) {
+                mask |= computeMask((Marker) it.next(), depth + 1);
+            }
+        }
+        return mask;
+    }
+
+    static long bit(final String name)
+    {
+        final Long bit = BITS.get(name);
+        if (bit != null) {
+            return bit;
+        }
+
+        synchronized (BITS) {
+            final Long existing = BITS.get(name);
+            if (existing != null) {
+                return existing;
+            }
+            final long newBit = 1L << Math.min(BITS.size(), MAX_BITS);
+            BITS.put(name, newBit);
+            return newBit;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * State of rendering a single log message argument: the builder, the remaining budget and the containers that are
+ * currently rendered, so that cycles render as <tt>[...]</tt>.
+ */
+public final class RenderContext
+{
+    private final StringBuilder sb;
+    private final int end;
+    private Map<Object, Boolean> rendering = null;
+    private Appendable appendable = null;
+
+    RenderContext(final StringBuilder sb, final int end)
+    {
+        this.sb = sb;
+        this.end = end;
+    }
+
+    public StringBuilder builder()
+    {
+        return sb;
+    }
+
+    /**
+     * Returns true once the budget of the argument is used up. Everything appended after that is cut.
+     */
+    public boolean isFull()
+    {
+        return sb.length() >= end;
+    }
+
+    /**
+     * Returns an appendable that writes to the builder and drops everything beyond the budget.
+     */
+    public Appendable appendable()
+    {
+        if (appendable == null) {
+            appendable = new BoundedAppendable();
+        }
+        return appendable;
+    }
+
+    /**
+     * Renders a nested value with its registered renderer. Values without a renderer are not rendered at all once the
+     * budget is used up; otherwise their whole <tt>toString()</tt> is computed, but at most the budget is copied.
+     */
+    public void append(final Object value)
+    {
+        if (sb.length() > end) {
+            return;
+        }
+
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+
+        final ArgumentRenderer<Object> renderer = ArgumentRenderers.rendererFor(value.getClass());
+        if (renderer == null) {
+            if (isFull()) {
+                // One character more than the budget, so the caller notices the cut.
+                sb.append('.');
+            }
+            else {
+                final String text = value.toString();
+                sb.append(text, 0, Math.min(text.length(), end + 1 - sb.length()));
+            }
+            return;
+        }
+
+        if (rendering == null) {
+            rendering = new IdentityHashMap<Object, Boolean>();
+        }
+        else if (rendering.containsKey(value)) {
+            sb.append("[...]");
+            return;
+        }
+
+        rendering.put(value, Boolean.TRUE);
+        try {
+            renderer.render(this, value);
+        }
+        finally {
+            rendering.remove(value);
+        }
+    }
+
+    private final class BoundedAppendable implements Appendable
+    {
+        @Override
+        public Appendable append(final CharSequence csq)
+        {
+            return (csq == null) ? append("null", 0, 4) : append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(final CharSequence csq, final int start, final int stop)
+        {
+            // One character more than the budget, so the caller notices the cut.
+            final int room = end + 1 - sb.length();
+            if (room > 0) {
+                if (csq == null) {
+                    sb.append("null", start, Math.min(stop, start + room));
+                }
+                else {
+                    sb.append(csq, start, Math.min(stop, start + room));
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append(final char c)
+        {
+            if (sb.length() <= end) {
+                sb.append(c);
+            }
+            return this;
+        }
+    }
+}
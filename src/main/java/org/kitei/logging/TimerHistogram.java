@@ -0,0 +1,146 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds. Buckets are exact below 16ns and then split every power of two into eight
+ * buckets, so a percentile is off by less than 7%. Recording threads are spread over a few stripes of atomic counters
+ * and never lock.
+ */
+final class TimerHistogram
+{
+    private static final int SUB_BUCKETS = 8;
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = LINEAR + (63 - 4) * SUB_BUCKETS;
+    private static final int STRIPES = stripes();
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+    private final AtomicLongArray maxima = new AtomicLongArray(STRIPES);
+
+    TimerHistogram(final String name)
+    {
+        this.name = name;
+    }
+
+    String getName()
+    {
+        return name;
+    }
+
+    void record(final long nanos)
+    {
+        final long value = Math.max(0L, nanos);
+        final int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        counts.incrementAndGet(stripe * BUCKETS + bucket(value));
+
+        long max = maxima.get(stripe);
+        while (value > max && !maxima.compareAndSet(stripe, max, value)) {
+            max = maxima.get(stripe);
+        }
+    }
+
+    /**
+     * Returns the values recorded since the last call and starts a new interval.
+     */
+    Snapshot drain()
+    {
+        final long[] buckets = new long[BUCKETS];
+        long count = 0L;
+        for (int i = 0; i < counts.length(); i++) {
+            if (counts.get(i) != 0L) {
+                final long value = counts.getAndSet(i, 0L);
+                buckets[i % BUCKETS] += value;
+                count += value;
+            }
+        }
+        long max = 0L;
+        for (int i = 0; i < STRIPES; i++) {
+            max = Math.max(max, maxima.getAndSet(i, 0L));
+        }
+        return new Snapshot(buckets, count, max);
+    }
+
+    static int bucket(final long value)
+    {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the middle of a bucket.
+     */
+    static long bucketValue(final int bucket)
+    {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        final int exponent = (bucket - LINEAR) / SUB_BUCKETS + 4;
+        final long sub = (bucket - LINEAR) % SUB_BUCKETS;
+        final long width = 1L << (exponent - 3);
+        return ((SUB_BUCKETS + sub) * width) + width / 2;
+    }
+
+    private static int stripes()
+    {
+        final int processors = Math.min(8, Runtime.getRuntime().availableProcessors());
+        return Integer.highestOneBit(processors * 2 - 1);
+    }
+
+    static final class Snapshot
+    {
+        private final long[] buckets;
+        private final long count;
+        private final long max;
+
+        private Snapshot(final long[] buckets, final long count, final long max)
+        {
+            this.buckets = buckets;
+            this.count = count;
+            this.max = max;
+        }
+
+        long getCount()
+        {
+            return count;
+        }
+
+        long getMax()
+        {
+            return max;
+        }
+
+        /**
+         * Returns the value at a percentile between 0 and 1, never more than the maximum.
+         */
+        long getPercentile(final double percentile)
+        {
+            final long rank = Math.max(1L, (long) Math.ceil(percentile * count));
+            long seen = 0L;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(bucketValue(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,569 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.NDC;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
+import org.kitei.logging.AsyncOverflow;
+import org.kitei.logging.Log.LogLevel;
+import org.kitei.logging.LogContext;
+import org.kitei.logging.internal.EventRing.Slot;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Predicate;
+
+/**
+ * Writes log events on a background thread. Logging threads put their events into a ring of preallocated slots (see
+ * {@link EventRing}) and return; a single consumer thread takes them out in order and hands runs of events to the
+ * log4j appenders, so that every appender is locked and flushed once per run instead of once per event.
+ *
+ * With more than one stripe, every thread writes into the ring selected by its thread id, so threads on different
+ * stripes do not contend on a shared tail. The consumer merges the rings by the {@link System#nanoTime()} taken when
+ * each event was queued. Events of one thread are always written in the order they were logged. Events of
+ * different threads are written in time order as far as they were queued when the consumer looked at the rings; an
+ * event that is queued late may be written after a newer event of another stripe.
+ *
+ * Virtual threads always queue their events, even if asynchronous logging was not started: log4j appenders do
+ * blocking I/O inside <tt>synchronized</tt> methods, which would pin the carrier thread. A separate dispatcher with
+ * one stripe per processor is started for them on first use. The ring only uses CAS and parking, so a virtual thread
+ * that waits for room in a full ring unmounts from its carrier.
+ *
+ * Thread name, NDC, MDC and {@link LogContext} are captured on the logging thread, the location is not available.
+ */
+public final class AsyncDispatcher
+{
+    /** How long {@link #stop(long)} waits by default for the queued events to be written. */
+    public static final long DRAIN_TIMEOUT_MILLIS = 5000L;
+
+    /** Upper limit for the number of stripes. */
+    public static final int MAX_STRIPES = 64;
+
+    /** Every stripe holds at least this many events. */
+    private static final int MIN_STRIPE_CAPACITY = 64;
+
+    private static final String THREAD_NAME = "kitei-logging-async";
+
+    /** Maximum number of events the consumer takes out before it writes them. */
+    private static final int MAX_RUN = 256;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10L);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50L);
+
+    private static final Logger DISPATCHER_LOGGER = LogManager.getLogger(AsyncDispatcher.class);
+
+    /** Number of events the dispatcher for virtual threads holds. */
+    private static final int HANDOFF_CAPACITY = 16384;
+
+    private static volatile AsyncDispatcher active = null;
+
+    /** Dispatcher for virtual threads while no asynchronous logging is configured, started on first use. */
+    private static final AtomicReference<AsyncDispatcher> HANDOFF = new AtomicReference<AsyncDispatcher>();
+
+    private static final Predicate<Thread> VIRTUAL_THREADS = new Predicate<Thread>() {
+        @Override
+        public boolean apply(final Thread thread)
+        {
+            return VirtualThreads.isVirtual(thread);
+        }
+    };
+
+    /** Threads that use the {@link #HANDOFF} dispatcher. */
+    private static volatile Predicate<Thread> handoffThreads = VIRTUAL_THREADS;
+
+    private final EventRing[] rings;
+    private final int stripeMask;
+    private final AsyncOverflow overflow;
+    private final long debugLimit;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread consumer;
+    private final Thread shutdownHook;
+
+    private volatile boolean waiting = false;
+    private volatile boolean running = true;
+    private volatile boolean failed = false;
+    private volatile long deadline = Long.MAX_VALUE;
+
+    private final LoggingEvent[] run = new LoggingEvent[MAX_RUN];
+
+    private AsyncDispatcher(final int capacity, final int stripes, final AsyncOverflow overflow)
+    {
+        final int stripeCapacity = (stripes == 1) ? powerOfTwo(capacity) : Math.max(powerOfTwo(capacity / stripes), MIN_STRIPE_CAPACITY);
+        this.rings = new EventRing[stripes];
+        for (int i = 0; i < stripes; i++) {
+            rings[i] = new EventRing(stripeCapacity);
+        }
+        this.stripeMask = stripes - 1;
+        this.overflow = overflow;
+        this.debugLimit = rings[0].capacity() - rings[0].capacity() / 4;
+
+        this.consumer = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                try {
+                    consume();
+                }
+                finally {
+                    // An Error ended the consumer, producers write synchronously from now on.
+                    if (running) {
+                        failed = true;
+                        running = false;
+                    }
+                }
+            }
+        }, THREAD_NAME);
+        consumer.setDaemon(true);
+
+        this.shutdownHook = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                stop(AsyncDispatcher.this, DRAIN_TIMEOUT_MILLIS);
+            }
+        }, THREAD_NAME + "-shutdown");
+    }
+
+    /**
+     * Starts writing events on a background thread, see {@link #start(int, int, AsyncOverflow)}.
+     */
+    public static boolean start(final int capacity, final AsyncOverflow overflow)
+    {
+        return start(capacity, 1, overflow);
+    }
+
+    /**
+     * Starts writing events on a background thread. Does nothing and returns false if slf4j is not bound to log4j
+     * or the dispatcher is already running.
+     *
+     * @param capacity Number of events the queue holds, rounded up to a power of two. With more than one stripe, it
+     *            is split evenly between the stripes, but every stripe holds at least 64 events.
+     * @param stripes Number of rings, rounded up to a power of two and at most {@link #MAX_STRIPES}. 0 picks one
+     *            stripe per available processor.
+     */
+    public static synchronized boolean start(final int capacity, final int stripes, final AsyncOverflow overflow)
+    {
+        checkArgument(capacity > 1, "capacity must be greater than 1");
+        checkArgument(stripes >= 0, "stripes must not be negative");
+        checkNotNull(overflow, "overflow");
+
+        if (active != null || !Log4jDispatch.isLog4jBound()) {
+            return false;
+        }
+
+        final int stripeCount = Math.min(powerOfTwo((stripes == 0) ? Runtime.getRuntime().availableProcessors() : stripes), MAX_STRIPES);
+        final AsyncDispatcher dispatcher = new AsyncDispatcher(capacity, stripeCount, overflow);
+        dispatcher.startThreads();
+        active = dispatcher;
+        return true;
+    }
+
+    /**
+     * Stops the background threads after they wrote the queued events, waiting at most the given time for each.
+     * Events logged afterwards are written on the logging thread again, except for virtual threads.
+     */
+    public static synchronized void stop(final long timeoutMillis)
+    {
+        final AsyncDispatcher dispatcher = active;
+        if (dispatcher != null) {
+            dispatcher.shutdown(timeoutMillis);
+        }
+
+        final AsyncDispatcher handoff = HANDOFF.get();
+        if (handoff != null) {
+            handoff.shutdown(timeoutMillis);
+        }
+    }
+
+    private void startThreads()
+    {
+        consumer.start();
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    private void shutdown(final long timeoutMillis)
+    {
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        }
+        catch (IllegalStateException e) {
+            // Already shutting down, the hook is running or about to.
+        }
+        stop(this, timeoutMillis);
+    }
+
+    private static void stop(final AsyncDispatcher dispatcher, final long timeoutMillis)
+    {
+        if (active == dispatcher) {
+            active = null;
+        }
+        HANDOFF.compareAndSet(dispatcher, null);
+        dispatcher.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        dispatcher.running = false;
+        LockSupport.unpark(dispatcher.consumer);
+        try {
+            dispatcher.consumer.join(timeoutMillis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static boolean isRunning()
+    {
+        return active != null;
+    }
+
+    /**
+     * Queues an event. Returns false if the event must be written by the caller, because the dispatcher is not
+     * running or the caller is the consumer thread itself.
+     */
+    public static boolean enqueue(final String fqcn, final String category, final LogLevel level, final String message, final Throwable t)
+    {
+        final AsyncDispatcher dispatcher = dispatcher();
+        return dispatcher != null && dispatcher.publish(fqcn, category, level, message, t, null, null, null, null, 0);
+    }
+
+    /**
+     * Queues a batch of events, which are written together. The log4j logger is resolved on the consumer thread.
+     */
+    static boolean enqueue(final String fqcn, final String category, final LogLevel[] levels, final long[] timestamps,
+                           final String[] messages, final Throwable[] throwables, final int count)
+    {
+        final AsyncDispatcher dispatcher = dispatcher();
+        // The arrays are copied, the caller reuses them.
+        return dispatcher != null && dispatcher.publish(fqcn, category, null, null, null, Arrays.copyOf(levels, count),
+            Arrays.copyOf(timestamps, count), Arrays.copyOf(messages, count), Arrays.copyOf(throwables, count), count);
+    }
+
+    private static AsyncDispatcher dispatcher()
+    {
+        final AsyncDispatcher dispatcher = active;
+        if (dispatcher == null && handoffThreads.apply(Thread.currentThread())) {
+            return handoff();
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Returns the dispatcher for virtual threads, starting it if necessary. Does not enter a monitor unless it
+     * starts the dispatcher.
+     */
+    private static AsyncDispatcher handoff()
+    {
+        final AsyncDispatcher dispatcher = HANDOFF.get();
+        if (dispatcher != null || !Log4jDispatch.isLog4jBound()) {
+            return dispatcher;
+        }
+
+        final int stripes = Math.min(powerOfTwo(Runtime.getRuntime().availableProcessors()), MAX_STRIPES);
+        final AsyncDispatcher created = new AsyncDispatcher(HANDOFF_CAPACITY, stripes, AsyncOverflow.BLOCK);
+        if (HANDOFF.compareAndSet(null, created)) {
+            created.startThreads();
+            return created;
+        }
+        return HANDOFF.get();
+    }
+
+    /**
+     * Sets the threads that use the handoff dispatcher, <tt>null</tt> restores the default of virtual threads.
+     */
+    @VisibleForTesting
+    static void setHandoffThreads(final Predicate<Thread> threads)
+    {
+        handoffThreads = (threads == null) ? VIRTUAL_THREADS : threads;
+    }
+
+    @VisibleForTesting
+    static boolean isHandoffRunning()
+    {
+        return HANDOFF.get() != null;
+    }
+
+    @VisibleForTesting
+    static long getDropped()
+    {
+        final AsyncDispatcher dispatcher = active;
+        return (dispatcher == null) ? 0L : dispatcher.dropped.get();
+    }
+
+    @VisibleForTesting
+    static int getStripes()
+    {
+        final AsyncDispatcher dispatcher = active;
+        return (dispatcher == null) ? 0 : dispatcher.rings.length;
+    }
+
+    private static int powerOfTwo(final int value)
+    {
+        return (value <= 1) ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    private boolean publish(final String fqcn, final String category, final LogLevel level, final String message, final Throwable t,
+                            final LogLevel[] levels, final long[] timestamps, final String[] messages, final Throwable[] throwables,
+                            final int count)
+    {
+        final Thread thread = Thread.currentThread();
+        if (thread == consumer) {
+            return false;
+        }
+
+        final EventRing ring = rings[(int) thread.getId() & stripeMask];
+        final boolean droppable = overflow == AsyncOverflow.DROP
+            || (overflow == AsyncOverflow.DROP_DEBUG_FIRST && level != null && level.ordinal() <= LogLevel.DEBUG.ordinal());
+        final long limit = (overflow == AsyncOverflow.DROP) ? ring.capacity() : debugLimit;
+
+        long position;
+        while (true) {
+            if (!running) {
+                if ((failed || !consumer.isAlive()) && !isEmpty()) {
+                    // The consumer ended early, write what it left behind before this event.
+                    drainAfterConsumer();
+                }
+                return false;
+            }
+            if (droppable && ring.size() >= limit) {
+                dropped.incrementAndGet();
+                return true;
+            }
+
+            position = ring.claim();
+            if (position >= 0L) {
+                break;
+            }
+
+            if (!consumer.isAlive()) {
+                running = false;
+                continue;
+            }
+
+            // Full, wait for the consumer.
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        }
+
+        final Slot slot = ring.slot(position);
+        slot.fqcn = fqcn;
+        slot.category = category;
+        slot.level = level;
+        slot.message = message;
+        slot.t = t;
+        slot.levels = levels;
+        slot.timestamps = timestamps;
+        slot.messages = messages;
+        slot.throwables = throwables;
+        slot.count = count;
+        slot.context = LogContext.current();
+        if (levels == null) {
+            slot.timestamp = System.currentTimeMillis();
+        }
+        slot.threadName = thread.getName();
+        slot.ndc = NDC.get();
+        @SuppressWarnings("unchecked")
+        final Hashtable<String, Object> mdc = MDC.getContext();
+        slot.mdc = (mdc == null || mdc.isEmpty()) ? null : new Hashtable<String, Object>(mdc);
+        if (rings.length > 1) {
+            slot.nanos = System.nanoTime();
+        }
+        ring.publish(position);
+
+        if (!running) {
+            // Raced with stop(): the consumer may have seen empty rings and ended before this event was published.
+            drainAfterConsumer();
+        }
+        else if (waiting) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the consumer to end and writes the events it left in the rings on the calling thread.
+     */
+    private void drainAfterConsumer()
+    {
+        boolean interrupted = false;
+        while (consumer.isAlive()) {
+            try {
+                consumer.join();
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            while (drain() > 0) {
+                // Until the rings are empty or only hold events that are not published yet.
+            }
+        }
+    }
+
+    private void consume()
+    {
+        while (true) {
+            if (drain() == 0) {
+                if (!running) {
+                    // Events published by producers that passed the running check before stop().
+                    if (isEmpty() || System.nanoTime() - deadline >= 0L) {
+                        reportDropped();
+                        return;
+                    }
+                    Thread.yield();
+                    continue;
+                }
+
+                waiting = true;
+                if (isEmpty() && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                waiting = false;
+            }
+            else if (!running && System.nanoTime() - deadline >= 0L) {
+                reportDropped();
+                return;
+            }
+        }
+    }
+
+    private boolean isEmpty()
+    {
+        for (final EventRing ring : rings) {
+            if (ring.size() > 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the ring whose oldest published event is the oldest of all rings, or <tt>null</tt>.
+     */
+    private EventRing next()
+    {
+        if (rings.length == 1) {
+            return (rings[0].peek() == null) ? null : rings[0];
+        }
+
+        EventRing next = null;
+        long nanos = 0L;
+        for (final EventRing ring : rings) {
+            final Slot slot = ring.peek();
+            if (slot != null && (next == null || slot.nanos - nanos < 0L)) {
+                next = ring;
+                nanos = slot.nanos;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Takes out the published events and writes them, grouped into runs of the same category and context.
+     */
+    private int drain()
+    {
+        int drained = 0;
+        int runLength = 0;
+        Logger runLogger = null;
+        LogContext runContext = null;
+
+        EventRing ring;
+        while (drained < MAX_RUN && (ring = next()) != null) {
+            final Slot slot = ring.peek();
+            final Logger logger = (runLogger != null && runLogger.getName().equals(slot.category)) ? runLogger : Log4jDispatch.logger(slot.category);
+
+            if (runLength > 0 && (logger != runLogger || slot.context != runContext || slot.levels != null)) {
+                write(runLogger, runContext, run, runLength);
+                runLength = 0;
+            }
+
+            if (slot.levels != null) {
+                final LoggingEvent[] events = new LoggingEvent[slot.count];
+                for (int i = 0; i < slot.count; i++) {
+                    events[i] = event(slot, logger, slot.timestamps[i], slot.levels[i], slot.messages[i], slot.throwables[i]);
+                }
+                write(logger, slot.context, events, slot.count);
+            }
+            else {
+                run[runLength++] = event(slot, logger, slot.timestamp, slot.level, slot.message, slot.t);
+                runLogger = logger;
+                runContext = slot.context;
+            }
+
+            ring.take();
+            drained++;
+        }
+
+        if (runLength > 0) {
+            write(runLogger, runContext, run, runLength);
+            Arrays.fill(run, 0, runLength, null);
+        }
+        if (drained > 0) {
+            reportDropped();
+        }
+        return drained;
+    }
+
+    private static LoggingEvent event(final Slot slot, final Logger logger, final long timestamp, final LogLevel level,
+                                      final String message, final Throwable t)
+    {
+        return new LoggingEvent(slot.fqcn, logger, timestamp, Log4jDispatch.toLevel(level), message, slot.threadName,
+            (t == null) ? null : new ThrowableInformation(t, logger), slot.ndc, LocationInfo.NA_LOCATION_INFO, slot.mdc);
+    }
+
+    private void reportDropped()
+    {
+        final long count = dropped.getAndSet(0L);
+        if (count > 0L) {
+            final LoggingEvent event = new LoggingEvent(AsyncDispatcher.class.getName(), DISPATCHER_LOGGER, Level.WARN,
+                count + " log messages dropped, the asynchronous logging queue was full", null);
+            Log4jDispatch.append(DISPATCHER_LOGGER, new LoggingEvent[] { event }, 1);
+        }
+    }
+
+    private static void write(final Logger logger, final LogContext context, final LoggingEvent[] events, final int count)
+    {
+        final LogContext.Scope scope = context.bind();
+        try {
+            Log4jDispatch.append(logger, events, count);
+        }
+        catch (RuntimeException e) {
+            // An appender failed, the consumer must keep running.
+            LogLog.error("Could not write log events", e);
+        }
+        finally {
+            scope.close();
+        }
+    }
+}
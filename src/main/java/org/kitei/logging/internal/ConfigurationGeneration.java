@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging.internal;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.Category;
+import org.apache.log4j.Hierarchy;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.spi.HierarchyEventListener;
+import org.apache.log4j.spi.LoggerRepository;
+import org.kitei.system.SystemPropertyKeys;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts logging configuration changes. Anything that caches information derived from the logging configuration
+ * (such as the effective level of a category) remembers the generation it was computed in and recomputes it when the
+ * generation has moved on.
+ *
+ * The generation is bumped by {@link Log4jConfigurator#configure()}, by level changes through
+ * {@link org.kitei.logging.LogConfigurator} and whenever log4j adds or removes an appender, which every
+ * configurator does while loading a configuration. log4j has no event for level or threshold changes, so those need
+ * {@link org.kitei.logging.LogConfigurator#levelsChanged()} or the opt-in periodic refresh (see
+ * {@link SystemPropertyKeys#LOGGING_LEVEL_REFRESH_INTERVAL}).
+ */
+public final class ConfigurationGeneration
+{
+    /** Number of bits used by a generation. Generations are never 0. */
+    public static final int BITS = 26;
+
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final AtomicInteger GENERATION = new AtomicInteger(1);
+
+    private static final AtomicBoolean WATCHING = new AtomicBoolean(false);
+
+    private static final String LOG4J_FACTORY = "org.slf4j.impl.Log4jLoggerFactory";
+
+
+    private ConfigurationGeneration()
+    {
+    }
+
+    public static int current()
+    {
+        return GENERATION.get();
+    }
+
+    /**
+     * Invalidates everything computed from the current logging configuration.
+     */
+    public static void bump()
+    {
+        while (true) {
+            final int generation = GENERATION.get();
+            int next = (generation + 1) & MASK;
+            if (next == 0) {
+                next = 1;
+            }
+            if (GENERATION.compareAndSet(generation, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Registers for appender changes of the log4j hierarchy and starts the periodic refresh if one is configured, if
+     * slf4j is bound to log4j.
+     * Safe to call repeatedly.
+     */
+    public static void watch()
+    {
+        if (!WATCHING.get() && LOG4J_FACTORY.equals(LoggerFactory.getILoggerFactory().getClass().getName())) {
+            watchLog4j();
+        }
+    }
+
+    static void watchLog4j()
+    {
+        if (WATCHING.compareAndSet(false, true)) {
+            final LoggerRepository repository = LogManager.getLoggerRepository();
+            if (repository instanceof Hierarchy) {
+                ((Hierarchy) repository).addHierarchyEventListener(new HierarchyEventListener() {
+                    @Override
+                    public void addAppenderEvent(final Category cat, final Appender appender)
+                    {
+                        bump();
+                    }
+
+                    @Override
+                    public void removeAppenderEvent(final Category cat, final Appender appender)
+                    {
+                        bump();
+                    }
+                });
+            }
+            scheduleRefresh();
+        }
+    }
+
+    private static void scheduleRefresh()
+    {
+        final long interval = Long.getLong(SystemPropertyKeys.LOGGING_LEVEL_REFRESH_INTERVAL, 0L);
+        if (interval > 0L) {
+            final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable)
+                {
+                    final Thread thread = new Thread(runnable, "kitei-log-levels");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            refresher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run()
+                {
+                    bump();
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+}
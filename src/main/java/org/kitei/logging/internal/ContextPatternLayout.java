@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging.internal;
+
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.helpers.FormattingInfo;
+import org.apache.log4j.helpers.PatternConverter;
+import org.apache.log4j.helpers.PatternParser;
+import org.apache.log4j.spi.LoggingEvent;
+import org.kitei.logging.LogContext;
+
+/**
+ * A log4j <tt>PatternLayout</tt> that renders the {@link LogContext} of the logging thread. <tt>%K</tt> renders all
+ * entries as <tt>key=value</tt> pairs, <tt>%K{key}</tt> the value of a single key.
+ */
+public class ContextPatternLayout extends PatternLayout
+{
+    public ContextPatternLayout()
+    {
+        super();
+    }
+
+    public ContextPatternLayout(final String pattern)
+    {
+        super(pattern);
+    }
+
+    @Override
+    protected PatternParser createPatternParser(final String pattern)
+    {
+        return new ContextPatternParser(pattern);
+    }
+
+    private static final class ContextPatternParser extends PatternParser
+    {
+        private ContextPatternParser(final String pattern)
+        {
+            super(pattern);
+        }
+
+        @Override
+        protected void finalizeConverter(final char c)
+        {
+            if (c == 'K') {
+                addConverter(new ContextConverter(formattingInfo, extractOption()));
+            }
+            else {
+                super.finalizeConverter(c);
+            }
+        }
+    }
+
+    private static final class ContextConverter extends PatternConverter
+    {
+        private final String key;
+
+        private ContextConverter(final FormattingInfo formattingInfo, final String key)
+        {
+            super(formattingInfo);
+            this.key = key;
+        }
+
+        @Override
+        protected String convert(final LoggingEvent event)
+        {
+            final LogContext context = LogContext.current();
+            if (key == null) {
+                return context.toString();
+            }
+            final String value = context.get(key);
+            return (value == null) ? "" : value;
+        }
+    }
+}
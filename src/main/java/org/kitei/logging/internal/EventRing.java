@@ -0,0 +1,165 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging.internal;
+
+import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.kitei.logging.Log.LogLevel;
+import org.kitei.logging.LogContext;
+
+/**
+ * A bounded multi-producer, single-consumer queue of preallocated, reusable event slots. Producers claim a position
+ * with a CAS on the tail, fill the slot and publish it through its sequence number, which the consumer advances by
+ * the ring size once it has taken the event out.
+ */
+final class EventRing
+{
+    private final Slot[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new PaddedAtomicLong();
+
+    /** Next position to take out, only written by the consumer. */
+    private volatile long head = 0L;
+
+    /**
+     * @param capacity A power of two.
+     */
+    EventRing(final int capacity)
+    {
+        this.slots = new Slot[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+            sequences.set(i, i);
+        }
+        this.mask = capacity - 1;
+    }
+
+    int capacity()
+    {
+        return slots.length;
+    }
+
+    /**
+     * Returns the number of claimed positions, which may be more than the published events.
+     */
+    long size()
+    {
+        return tail.get() - head;
+    }
+
+    /**
+     * Claims a position for a producer. Returns -1 if the ring is full.
+     */
+    long claim()
+    {
+        while (true) {
+            final long position = tail.get();
+            final long available = sequences.get((int) position & mask) - position;
+
+            if (available == 0L) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+            }
+            else if (available < 0L) {
+                return -1L;
+            }
+        }
+    }
+
+    Slot slot(final long position)
+    {
+        return slots[(int) position & mask];
+    }
+
+    void publish(final long position)
+    {
+        sequences.lazySet((int) position & mask, position + 1);
+    }
+
+    /**
+     * Returns the oldest published event without taking it out, or <tt>null</tt>. Consumer only.
+     */
+    Slot peek()
+    {
+        final long position = head;
+        final int index = (int) position & mask;
+        return (sequences.get(index) == position + 1) ? slots[index] : null;
+    }
+
+    /**
+     * Clears the slot returned by {@link #peek()} and hands it back to the producers. Consumer only.
+     */
+    void take()
+    {
+        final long position = head;
+        final int index = (int) position & mask;
+        slots[index].clear();
+        sequences.lazySet(index, position + slots.length);
+        head = position + 1;
+    }
+
+    static final class Slot
+    {
+        /** From {@link System#nanoTime()}, orders the events of different rings. */
+        long nanos;
+        String fqcn;
+        String category;
+        LogLevel level;
+        String message;
+        Throwable t;
+        long timestamp;
+        String threadName;
+        String ndc;
+        Hashtable<String, Object> mdc;
+        LogContext context;
+        /** Set for a batch, which takes the place of level, message, t and timestamp. */
+        LogLevel[] levels;
+        long[] timestamps;
+        String[] messages;
+        Throwable[] throwables;
+        int count;
+
+        private void clear()
+        {
+            fqcn = null;
+            category = null;
+            level = null;
+            message = null;
+            t = null;
+            threadName = null;
+            ndc = null;
+            mdc = null;
+            context = null;
+            levels = null;
+            timestamps = null;
+            messages = null;
+            throwables = null;
+        }
+    }
+
+    /**
+     * Keeps the tails of rings that are allocated together off each other's cache lines.
+     */
+    @SuppressWarnings("serial")
+    private static final class PaddedAtomicLong extends AtomicLong
+    {
+        @SuppressWarnings("unused")
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
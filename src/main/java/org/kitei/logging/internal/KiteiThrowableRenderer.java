@@ -0,0 +1,271 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.spi.ThrowableRenderer;
+import org.kitei.system.SystemPropertyKeys;
+
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Renders stack traces for log4j, installed by {@link Log4jConfigurator#configure()} if
+ * {@link SystemPropertyKeys#LOGGING_COMPACT_STACK_TRACES} is set and the configuration names no other
+ * <tt>throwableRenderer</tt>. The output looks like <tt>printStackTrace()</tt>, with these differences:
+ * <ul>
+ * <li>runs of three or more frames from a folded package (reflection and Guice internals by default) are replaced by
+ * a single "... N frames in package" line.</li>
+ * <li>each throwable shows at most <tt>maxDepth</tt> frames.</li>
+ * <li>at most <tt>maxCauses</tt> causes and suppressed exceptions are shown.</li>
+ * </ul>
+ * The rendered frames of a stack trace are cached, so logging the same stack trace again only renders the messages.
+ * Messages, causes and suppressed exceptions are read every time, they may change after a throwable was logged.
+ *
+ * If {@link SystemPropertyKeys#LOGGING_TRIM_EXCEPTIONS} is set, stack traces only show up for categories at DEBUG level,
+ * and the default depth is shorter.
+ */
+public final class KiteiThrowableRenderer implements ThrowableRenderer
+{
+    private static final int DEFAULT_MAX_DEPTH = 256;
+    private static final int TRIMMED_MAX_DEPTH = 32;
+    private static final int DEFAULT_MAX_CAUSES = 16;
+    private static final int MIN_FOLD = 3;
+    private static final String DEFAULT_FOLD_PACKAGES = "sun.reflect,jdk.internal.reflect,java.lang.reflect,com.google.inject.internal";
+
+    private static final int CACHE_SIZE = 1024;
+
+    private final Cache<FrameBlock, String[]> renderedFrames = CacheBuilder.newBuilder()
+        .maximumSize(CACHE_SIZE)
+        .build();
+
+    private volatile int maxDepth = Boolean.getBoolean(SystemPropertyKeys.LOGGING_TRIM_EXCEPTIONS) ? TRIMMED_MAX_DEPTH : DEFAULT_MAX_DEPTH;
+    private volatile int maxCauses = DEFAULT_MAX_CAUSES;
+    private volatile String[] foldPackages = parsePackages(DEFAULT_FOLD_PACKAGES);
+
+    /**
+     * Maximum number of frames shown per throwable.
+     */
+    public void setMaxDepth(final int maxDepth)
+    {
+        this.maxDepth = Math.max(1, maxDepth);
+        clearCache();
+    }
+
+    /**
+     * Maximum number of causes and suppressed exceptions shown.
+     */
+    public void setMaxCauses(final int maxCauses)
+    {
+        this.maxCauses = Math.max(0, maxCauses);
+        clearCache();
+    }
+
+    /**
+     * Comma separated list of packages whose frames are folded. An empty list turns folding off.
+     */
+    public void setFoldPackages(final String foldPackages)
+    {
+        this.foldPackages = parsePackages(foldPackages);
+        clearCache();
+    }
+
+    @Override
+    public String[] doRender(final Throwable t)
+    {
+        final List<String> lines = new ArrayList<String>();
+        final Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+        final int[] enclosed = new int[1];
+
+        seen.add(t);
+        lines.add(String.valueOf(t));
+        final StackTraceElement[] frames = t.getStackTrace();
+        appendFrames(lines, "", frames, frames.length);
+        appendEnclosed(lines, t, frames, "", seen, enclosed);
+
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    private void appendEnclosed(final List<String> lines, final Throwable t, final StackTraceElement[] frames, final String prefix, final Set<Throwable> seen, final int[] enclosed)
+    {
+        for (final Throwable suppressed : t.getSuppressed()) {
+            appendEnclosing(lines, suppressed, frames, "Suppressed: ", prefix + "\t", seen, enclosed);
+        }
+        if (t.getCause() != null) {
+            appendEnclosing(lines, t.getCause(), frames, "Caused by: ", prefix, seen, enclosed);
+        }
+    }
+
+    private void appendEnclosing(final List<String> lines, final Throwable t, final StackTraceElement[] enclosingFrames, final String caption, final String prefix, final Set<Throwable> seen, final int[] enclosed)
+    {
+        if (!seen.add(t)) {
+            lines.add(prefix + caption + "[CIRCULAR REFERENCE:" + t + "]");
+            return;
+        }
+        if (enclosed[0]++ == maxCauses) {
+            lines.add(prefix + caption + "... more causes omitted");
+            return;
+        }
+        if (enclosed[0] > maxCauses) {
+            return;
+        }
+
+        final StackTraceElement[] frames = t.getStackTrace();
+        int m = frames.length - 1;
+        int n = enclosingFrames.length - 1;
+        while (m >= 0 && n >= 0 && frames[m].equals(enclosingFrames[n])) {
+            m--;
+            n--;
+        }
+        final int inCommon = frames.length - 1 - m;
+
+        lines.add(prefix + caption + t);
+        appendFrames(lines, prefix, frames, m + 1);
+        if (inCommon != 0) {
+            lines.add(prefix + "\t... " + inCommon + " more");
+        }
+        appendEnclosed(lines, t, frames, prefix, seen, enclosed);
+    }
+
+    private void appendFrames(final List<String> lines, final String prefix, final StackTraceElement[] frames, final int count)
+    {
+        final FrameBlock block = new FrameBlock(frames, count);
+        String[] rendered = renderedFrames.getIfPresent(block);
+        if (rendered == null) {
+            rendered = renderFrames(frames, count);
+            renderedFrames.put(block, rendered);
+        }
+
+        if (prefix.isEmpty()) {
+            lines.addAll(Arrays.asList(rendered));
+        }
+        else {
+            for (final String line : rendered) {
+                lines.add(prefix + line);
+            }
+        }
+    }
+
+    private String[] renderFrames(final StackTraceElement[] frames, final int count)
+    {
+        final List<String> lines = new ArrayList<String>();
+        final int shown = Math.min(count, maxDepth);
+        final String[] packages = foldPackages;
+
+        int i = 0;
+        while (i < shown) {
+            final String fold = foldPackage(packages, frames[i]);
+            if (fold != null) {
+                int j = i + 1;
+                while (j < shown && fold.equals(foldPackage(packages, frames[j]))) {
+                    j++;
+                }
+                if (j - i >= MIN_FOLD) {
+                    lines.add("\t... " + (j - i) + " frames in " + fold.substring(0, fold.length() - 1));
+                    i = j;
+                    continue;
+                }
+            }
+            lines.add("\tat " + frames[i]);
+            i++;
+        }
+        if (count > shown) {
+            lines.add("\t... " + (count - shown) + " more frames");
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    private static String foldPackage(final String[] packages, final StackTraceElement frame)
+    {
+        final String className = frame.getClassName();
+        for (final String foldPackage : packages) {
+            if (className.startsWith(foldPackage)) {
+                return foldPackage;
+            }
+        }
+        return null;
+    }
+
+    private static String[] parsePackages(final String packages)
+    {
+        final List<String> result = new ArrayList<String>();
+        if (packages != null) {
+            for (final String foldPackage : Splitter.on(',').trimResults().omitEmptyStrings().split(packages)) {
+                result.add(foldPackage.endsWith(".") ? foldPackage : foldPackage + ".");
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    private void clearCache()
+    {
+        renderedFrames.invalidateAll();
+    }
+
+    /**
+     * The first <tt>count</tt> frames of a stack trace, compared frame by frame.
+     */
+    private static final class FrameBlock
+    {
+        private final StackTraceElement[] frames;
+        private final int count;
+        private final int hashCode;
+
+        private FrameBlock(final StackTraceElement[] frames, final int count)
+        {
+            this.frames = frames;
+            this.count = count;
+
+            int hash = count;
+            for (int i = 0; i < count; i++) {
+                hash = 31 * hash + frames[i].hashCode();
+            }
+            this.hashCode = hash;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object other)
+        {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof FrameBlock)) {
+                return false;
+            }
+            final FrameBlock that = (FrameBlock) other;
+            if (hashCode != that.hashCode || count != that.count) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                if (!frames[i].equals(that.frames[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
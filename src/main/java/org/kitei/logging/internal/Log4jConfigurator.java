@@ -17,10 +17,14 @@ import java.net.MalformedURLException;
 import java.net.URL;
 
 import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.helpers.Loader;
+import org.apache.log4j.spi.LoggerRepository;
+import org.apache.log4j.spi.ThrowableRendererSupport;
 import org.apache.log4j.xml.DOMConfigurator;
 import org.kitei.logging.Log;
+import org.kitei.system.SystemPropertyKeys;
 
 import com.google.common.base.Preconditions;
 
@@ -49,6 +53,48 @@ public final class Log4jConfigurator
     }
 
     public static URL configure()
+    {
+        ConfigurationGeneration.watchLog4j();
+        try {
+            final URL configUrl = configureLog4j();
+            installThrowableRenderer();
+            return configUrl;
+        }
+        finally {
+            ConfigurationGeneration.bump();
+        }
+    }
+
+    /**
+     * Renders stack traces with the {@link KiteiThrowableRenderer} if {@link SystemPropertyKeys#LOGGING_COMPACT_STACK_TRACES}
+     * is set, unless the configuration chose a renderer.
+     */
+    private static void installThrowableRenderer()
+    {
+        if (!Boolean.getBoolean(SystemPropertyKeys.LOGGING_COMPACT_STACK_TRACES)) {
+            return;
+        }
+
+        final LoggerRepository repository = LogManager.getLoggerRepository();
+        if (repository instanceof ThrowableRendererSupport) {
+            final ThrowableRendererSupport support = (ThrowableRendererSupport) repository;
+            if (support.getThrowableRenderer() == null) {
+                support.setThrowableRenderer(new KiteiThrowableRenderer());
+            }
+        }
+    }
+
+    /**
+     * Sets the level of a category and invalidates all cached levels.
+     */
+    public static void setLevel(final String category, final Level level)
+    {
+        Preconditions.checkNotNull(category, "category");
+        LogManager.getLogger(category).setLevel(level);
+        ConfigurationGeneration.bump();
+    }
+
+    private static URL configureLog4j()
     {
         final String log4jConfig = System.getProperty("log4j.configuration");
 
@@ -0,0 +1,279 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging.internal;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.Category;
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.log4j.WriterAppender;
+import org.apache.log4j.helpers.QuietWriter;
+import org.apache.log4j.spi.LoggingEvent;
+import org.kitei.logging.Log.LogLevel;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands log events straight to the log4j appenders of a category, bypassing its level. Only works if slf4j is bound
+ * to log4j.
+ *
+ * Unlike <tt>Category#callAppenders</tt>, which locks every category from the logger up to the root for every event,
+ * the appenders of each category (following additivity) are resolved once per configuration generation into an
+ * immutable array and published in a concurrent map. Dispatching an event only locks the appenders themselves.
+ * Changing the additivity of a category directly through log4j must be followed by
+ * {@link org.kitei.logging.LogConfigurator#levelsChanged()}; adding and removing appenders is noticed.
+ */
+public final class Log4jDispatch
+{
+    private static final String LOG4J_FACTORY = "org.slf4j.impl.Log4jLoggerFactory";
+
+    private static final String LOG4J_ADAPTER = "org.slf4j.impl.Log4jLoggerAdapter";
+
+    private static volatile Boolean log4jBound = null;
+
+    private static volatile Class<?> log4jAdapter = null;
+
+    private static final ConcurrentMap<String, Target> TARGETS = new ConcurrentHashMap<String, Target>();
+
+    private static final Field QUIET_WRITER = findQuietWriter();
+
+    private Log4jDispatch()
+    {
+    }
+
+    /**
+     * Returns false if slf4j is not bound to log4j; the event was not logged in that case.
+     *
+     * @param fqcn The class name that callers used to log, for the location information.
+     */
+    public static boolean dispatch(final String fqcn, final String category, final LogLevel level, final String message, final Throwable t)
+    {
+        if (!isLog4jBound()) {
+            return false;
+        }
+
+        final Target target = target(category);
+        final LoggingEvent event = new LoggingEvent(fqcn, target.logger, toLevel(level), message, t);
+        for (final Appender appender : target.appenders) {
+            appender.doAppend(event);
+        }
+        return true;
+    }
+
+    /**
+     * Hands a batch of events to the appenders of a category. Every appender receives all events while holding its
+     * own lock, so the events stay together, and a {@link WriterAppender} flushes only after the last one.
+     *
+     * Returns false if slf4j is not bound to log4j; the events were not logged in that case.
+     */
+    public static boolean dispatch(final String fqcn, final String category, final LogLevel[] levels, final long[] timestamps,
+                                   final String[] messages, final Throwable[] throwables, final int count)
+    {
+        if (!isLog4jBound()) {
+            return false;
+        }
+        if (count == 0) {
+            return true;
+        }
+
+        if (AsyncDispatcher.enqueue(fqcn, category, levels, timestamps, messages, throwables, count)) {
+            return true;
+        }
+
+        final Logger logger = logger(category);
+        final LoggingEvent[] events = new LoggingEvent[count];
+        for (int i = 0; i < count; i++) {
+            events[i] = new LoggingEvent(fqcn, logger, timestamps[i], toLevel(levels[i]), messages[i], throwables[i]);
+        }
+        append(logger, events, count);
+        return true;
+    }
+
+    /**
+     * Hands events to the appenders of a logger, see {@link #dispatch(String, String, LogLevel[], long[], String[], Throwable[], int)}.
+     */
+    public static void append(final Logger logger, final LoggingEvent[] events, final int count)
+    {
+        for (final Appender appender : target(logger.getName()).appenders) {
+            appendAll(appender, events, count);
+        }
+    }
+
+    /**
+     * Returns the log4j logger of a category without going through the synchronized logger repository.
+     */
+    public static Logger logger(final String category)
+    {
+        return target(category).logger;
+    }
+
+    private static Target target(final String category)
+    {
+        final int generation = ConfigurationGeneration.current();
+        Target target = TARGETS.get(category);
+        if (target == null || target.generation != generation) {
+            ConfigurationGeneration.watch();
+            final Logger logger = LogManager.getLogger(category);
+            target = new Target(generation, logger, appenders(logger));
+            TARGETS.put(category, target);
+        }
+        return target;
+    }
+
+    /**
+     * The appenders that {@link Category#callAppenders(LoggingEvent)} would call, in the same order.
+     */
+    private static Appender[] appenders(final Logger logger)
+    {
+        final List<Appender> appenders = new ArrayList<Appender>();
+        for (Category category = logger; category != null; category = category.getParent()) {
+            final Enumeration<?> e = category.getAllAppenders();
+            while (e.hasMoreElements()) {
+                appenders.add((Appender) e.nextElement());
+            }
+            if (!category.getAdditivity()) {
+                break;
+            }
+        }
+        return appenders.toArray(new Appender[appenders.size()]);
+    }
+
+    private static void appendAll(final Appender appender, final LoggingEvent[] events, final int count)
+    {
+        // AppenderSkeleton#doAppend synchronizes on the appender, holding the lock keeps other threads out.
+        synchronized (appender) {
+            final WriterAppender writer = (QUIET_WRITER != null && appender instanceof WriterAppender)
+                ? (WriterAppender) appender : null;
+            final boolean immediateFlush = writer != null && writer.getImmediateFlush();
+            if (immediateFlush) {
+                writer.setImmediateFlush(false);
+            }
+            try {
+                for (int i = 0; i < count; i++) {
+                    appender.doAppend(events[i]);
+                }
+            }
+            finally {
+                if (immediateFlush) {
+                    writer.setImmediateFlush(true);
+                    // Flush here rather than with the last event, which the threshold or a filter may reject.
+                    flush(writer);
+                }
+            }
+        }
+    }
+
+    private static void flush(final WriterAppender writer)
+    {
+        try {
+            final QuietWriter quietWriter = (QuietWriter) QUIET_WRITER.get(writer);
+            if (quietWriter != null) {
+                quietWriter.flush();
+            }
+        }
+        catch (IllegalAccessException e) {
+            // The field was made accessible when it was looked up.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the protected writer field of {@link WriterAppender}, or <tt>null</tt> if it is not accessible. Without
+     * it, every event of a batch is flushed.
+     */
+    private static Field findQuietWriter()
+    {
+        try {
+            final Field field = WriterAppender.class.getDeclaredField("qw");
+            field.setAccessible(true);
+            return field;
+        }
+        catch (NoSuchFieldException e) {
+            return null;
+        }
+        catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether an slf4j logger writes to log4j, so that its events can be dispatched here instead.
+     */
+    public static boolean isLog4jLogger(final org.slf4j.Logger logger)
+    {
+        final Class<?> type = logger.getClass();
+        if (type == log4jAdapter) {
+            return true;
+        }
+        if (LOG4J_ADAPTER.equals(type.getName())) {
+            log4jAdapter = type;
+            return true;
+        }
+        return false;
+    }
+
+    static boolean isLog4jBound()
+    {
+        Boolean bound = log4jBound;
+        if (bound == null) {
+            bound = LOG4J_FACTORY.equals(LoggerFactory.getILoggerFactory().getClass().getName());
+            log4jBound = bound;
+        }
+        return bound;
+    }
+
+    static Level toLevel(final LogLevel level)
+    {
+        switch (level) {
+            case TRACE:
+                return Level.TRACE;
+
+            case DEBUG:
+                return Level.DEBUG;
+
+            case INFO:
+                return Level.INFO;
+
+            case WARN:
+                return Level.WARN;
+
+            default:
+                return Level.ERROR;
+        }
+    }
+
+    /**
+     * The logger and appenders of a category, as of a configuration generation.
+     */
+    private static final class Target
+    {
+        private final int generation;
+        private final Logger logger;
+        private final Appender[] appenders;
+
+        private Target(final int generation, final Logger logger, final Appender[] appenders)
+        {
+            this.generation = generation;
+            this.logger = logger;
+            this.appenders = appenders;
+        }
+    }
+}
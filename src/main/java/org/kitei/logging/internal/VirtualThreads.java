@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging.internal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Detects virtual threads on JVMs that have them, without requiring such a JVM.
+ */
+public final class VirtualThreads
+{
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    private VirtualThreads()
+    {
+    }
+
+    /**
+     * Returns whether the JVM supports virtual threads.
+     */
+    public static boolean isSupported()
+    {
+        return IS_VIRTUAL != null;
+    }
+
+    public static boolean isVirtual(final Thread thread)
+    {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        }
+        catch (Throwable t) {
+            return false;
+        }
+    }
+
+    private static MethodHandle findIsVirtual()
+    {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+        catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+}
@@ -32,6 +32,62 @@ public final class SystemPropertyKeys
      * level will not log their stacktrace, unless the category they log to is actually at DEBUG level.
      */
     public static final String LOGGING_TRIM_EXCEPTIONS = "kitei.logging.trim-exceptions";
-}
 
+    /**
+     * If set to <tt>true</tt>, {@link org.kitei.logging.LogConfigurator#configure()} renders stack traces with the
+     * {@link org.kitei.logging.internal.KiteiThrowableRenderer}, unless the configuration names another
+     * <tt>throwableRenderer</tt>.
+     */
+    public static final String LOGGING_COMPACT_STACK_TRACES = "kitei.logging.compact-stack-traces";
+
+    /**
+     * Interval in seconds after which cached levels are read again from log4j, so that level changes made directly
+     * through the log4j API show up without {@link org.kitei.logging.LogConfigurator#levelsChanged()}. Every refresh
+     * makes all Logs look up their levels again. Default is 0, no refresh.
+     */
+    public static final String LOGGING_LEVEL_REFRESH_INTERVAL = "kitei.logging.level-refresh-interval";
+
+    /**
+     * Interval in seconds between the summary lines of a {@link org.kitei.logging.Log#timer(String)}. Default is 60.
+     */
+    public static final String LOGGING_TIMER_INTERVAL = "kitei.logging.timer-interval";
+
+    /**
+     * Level at which the summary lines of a {@link org.kitei.logging.Log#timer(String)} are logged. Default is <tt>INFO</tt>.
+     */
+    public static final String LOGGING_TIMER_LEVEL = "kitei.logging.timer-level";
+
+    /**
+     * Maximum number of characters a single log message argument renders to. Longer output is cut and ends with
+     * <tt>...</tt>. Default is 8192.
+     */
+    public static final String LOGGING_ARGUMENT_LIMIT = "kitei.logging.argument-limit";
+
+    /**
+     * Maximum number of characters a log message renders to before its remaining arguments are cut. Default is 65536.
+     */
+    public static final String LOGGING_MESSAGE_LIMIT = "kitei.logging.message-limit";
+
+    /**
+     * If set to <tt>true</tt>, {@link org.kitei.logging.LogConfigurator#configure()} writes log messages on a
+     * background thread.
+     */
+    public static final String LOGGING_ASYNC = "kitei.logging.async";
 
+    /**
+     * Number of messages the queue of asynchronous logging holds. Default is 8192.
+     */
+    public static final String LOGGING_ASYNC_CAPACITY = "kitei.logging.async-capacity";
+
+    /**
+     * Number of queues asynchronous logging spreads the logging threads over. Default is 1, 0 picks one per
+     * available processor.
+     */
+    public static final String LOGGING_ASYNC_STRIPES = "kitei.logging.async-stripes";
+
+    /**
+     * What asynchronous logging does while its queue is full: <tt>BLOCK</tt> (default), <tt>DROP_DEBUG_FIRST</tt> or
+     * <tt>DROP</tt>, see {@link org.kitei.logging.AsyncOverflow}.
+     */
+    public static final String LOGGING_ASYNC_OVERFLOW = "kitei.logging.async-overflow";
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.internal;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+import java.util.Formattable;
+import java.util.Formatter;
+import java.util.IllegalFormatConversionException;
+import java.util.Locale;
+import java.util.MissingFormatArgumentException;
+import java.util.Random;
+import java.util.UnknownFormatConversionException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kitei.logging.ArgumentRenderers;
+
+public class TestFormatTemplate
+{
+    @Test
+    public void testSimpleConversions()
+    {
+        assertSame("plain text");
+        assertSame("%s and %s", "a", null);
+        assertSame("%d|%d|%d|%d", 1, -2L, (short) -3, (byte) 4);
+        assertSame("%x|%x|%x|%x", -1, -1L, (short) -1, (byte) -1);
+        assertSame("%f|%f|%f", 1.5d, -0.0d, 0.1f);
+        assertSame("100%% done%n");
+        assertSame("%s", new int[0].getClass());
+        assertSame("%s %s", "extra", "args", "are", "ignored");
+    }
+
+    @Test
+    public void testDelegatedConversions()
+    {
+        assertSame("%-10s|%05d|%.2f|%2$s", "a", 12, 1.234d);
+        assertSame("%S %X", "up", 255);
+        assertSame("%s", new Fancy());
+        assertSame("%d", java.math.BigInteger.TEN);
+    }
+
+    @Test
+    public void testDelegatedConversionsRenderArguments()
+    {
+        final Object key = new Object();
+        assertSame("%-6s|%6s|%.2s|%S|%h", "ab", "cd", "efgh", "ijk", key);
+        Assert.assertThat(FormatTemplate.forPattern("%-8s|%2$S").format(new int[] { 1, 2 }, new String[] { "a" }), is("[1, 2]  |[A]"));
+
+        final String large = new String(new char[ArgumentRenderers.ARGUMENT_LIMIT * 2]).replace('\0', 'x');
+        Assert.assertThat(FormatTemplate.forPattern("%1$s%1$s").format(large).length(), is(2 * (ArgumentRenderers.ARGUMENT_LIMIT + 3)));
+    }
+
+    @Test
+    public void testFixedPoint()
+    {
+        final double[] values = new double[] {
+            0.0, 1.0, 0.5, 0.0000005, 0.00000049, 0.0000004999999, 9.9999995, 9.99999949, 1.0000005,
+            123456789.123456789, 1e-5, 1e-7, 1e7, 1e20, 1e300, 4.9e-324, Double.MAX_VALUE,
+            Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0.3, 2.675, 1.0005, 0.1 + 0.2,
+        };
+
+        for (final double value : values) {
+            assertSame("%f", value);
+            assertSame("%f", -value);
+            Assert.assertThat(FormatTemplate.forPattern("%f").format(value), is(String.format("%f", value)));
+        }
+
+        final Random random = new Random(4711);
+        for (int i = 0; i < 100000; i++) {
+            final double value;
+            switch (i % 4) {
+                case 0:
+                    value = Double.longBitsToDouble(random.nextLong());
+                    break;
+                case 1:
+                    value = random.nextDouble() * Math.pow(10, random.nextInt(20) - 10);
+                    break;
+                case 2:
+                    value = Math.round(random.nextDouble() * 1e7) / 1e7;
+                    break;
+                default:
+                    value = random.nextFloat();
+                    break;
+            }
+            assertSame("%f", value);
+        }
+    }
+
+    @Test
+    public void testPrimitives()
+    {
+        Assert.assertThat(FormatTemplate.forPattern("<%d>").format(-42L), is("<-42>"));
+        Assert.assertThat(FormatTemplate.forPattern("<%x>").format(-42), is(String.format("<%x>", -42)));
+        Assert.assertThat(FormatTemplate.forPattern("<%x>").format(-42L), is(String.format("<%x>", -42L)));
+        Assert.assertThat(FormatTemplate.forPattern("<%s>").format(0.1f), is("<0.1>"));
+        Assert.assertThat(FormatTemplate.forPattern("<%f>").format(0.1f), is(String.format("<%f>", 0.1f)));
+        Assert.assertThat(FormatTemplate.forPattern("<%s>").format(true), is("<true>"));
+        Assert.assertThat(FormatTemplate.forPattern("<%s>").format('c'), is("<c>"));
+        Assert.assertThat(FormatTemplate.forPattern("none").format(12L), is("none"));
+    }
+
+    @Test(expected = IllegalFormatConversionException.class)
+    public void testPrimitiveMismatch()
+    {
+        FormatTemplate.forPattern("%d").format(1.5d);
+    }
+
+    @Test(expected = IllegalFormatConversionException.class)
+    public void testObjectMismatch()
+    {
+        FormatTemplate.forPattern("%d").format("100");
+    }
+
+    @Test(expected = MissingFormatArgumentException.class)
+    public void testMissingArgument()
+    {
+        FormatTemplate.forPattern("%s %s").format("one");
+    }
+
+    @Test
+    public void testLocalized()
+    {
+        final Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        try {
+            Locale.setDefault(Locale.Category.FORMAT, Locale.GERMANY);
+            assertSame("%f and %d", 1.5d, 12345);
+            Assert.assertThat(FormatTemplate.forPattern("%f").format(1.5d), is("1,500000"));
+
+            Locale.setDefault(Locale.Category.FORMAT, new Locale("ar", "EG"));
+            assertSame("%d", 12345);
+            Assert.assertThat(FormatTemplate.forPattern("%d").format(12345L), is(String.format("%d", 12345L)));
+        }
+        finally {
+            Locale.setDefault(Locale.Category.FORMAT, locale);
+        }
+    }
+
+    @Test
+    public void testFailureIsRemembered()
+    {
+        final FormatTemplate template = FormatTemplate.forPattern("Broken %q");
+        Assert.assertThat(template.getFailure(), is(nullValue()));
+
+        try {
+            template.format("x");
+            Assert.fail();
+        }
+        catch (UnknownFormatConversionException e) {
+            // expected.
+        }
+
+        Assert.assertThat(FormatTemplate.forPattern("Broken %q").getFailure() == UnknownFormatConversionException.class, is(true));
+        Assert.assertThat(FormattingUtils.safeFormat("Broken %q", "x"), is("'Broken %q', args: [x]\n(Caught UnknownFormatConversionException from String.format)"));
+    }
+
+    @Test
+    public void testNestedFormat()
+    {
+        final Object nested = new Object() {
+            @Override
+            public String toString()
+            {
+                return FormatTemplate.forPattern("<%s>").format("inner");
+            }
+        };
+
+        Assert.assertThat(FormatTemplate.forPattern("%s-%s-%s").format("a", nested, "b"), is("a-<inner>-b"));
+    }
+
+    private static void assertSame(final String pattern, final Object... args)
+    {
+        Assert.assertThat(FormatTemplate.forPattern(pattern).format(args), is(String.format(pattern, args)));
+    }
+
+    private static class Fancy implements Formattable
+    {
+        @Override
+        public void formatTo(final Formatter formatter, final int flags, final int width, final int precision)
+        {
+            formatter.format("fancy");
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.internal;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestPlaceholderFormat
+{
+    @Test
+    public void testSimple()
+    {
+        Assert.assertThat(PlaceholderFormat.format("no placeholders"), is("no placeholders"));
+        Assert.assertThat(PlaceholderFormat.format("{} took {} ms", "query", 12), is("query took 12 ms"));
+        Assert.assertThat(PlaceholderFormat.format("{} and {}", "one"), is("one and {}"));
+        Assert.assertThat(PlaceholderFormat.format("{}", "one", "two"), is("one"));
+        Assert.assertThat(PlaceholderFormat.format("{}", (Object) null), is("null"));
+        Assert.assertThat(PlaceholderFormat.format(null, "a", "b"), is("[a,b]"));
+        Assert.assertThat(PlaceholderFormat.format("x {}", (Object[]) null), is("x null"));
+    }
+
+    @Test
+    public void testEscapes()
+    {
+        Assert.assertThat(PlaceholderFormat.format("set \\{} is {}", "empty"), is("set {} is empty"));
+        Assert.assertThat(PlaceholderFormat.format("path C:\\\\{}", "dir"), is("path C:\\dir"));
+    }
+
+    @Test
+    public void testPrimitives()
+    {
+        Assert.assertThat(PlaceholderFormat.format("<{}>", 12L), is("<12>"));
+        Assert.assertThat(PlaceholderFormat.format("<{}>", -3), is("<-3>"));
+        Assert.assertThat(PlaceholderFormat.format("<{}>", 0.1f), is("<0.1>"));
+        Assert.assertThat(PlaceholderFormat.format("<{}>", 1.5d), is("<1.5>"));
+        Assert.assertThat(PlaceholderFormat.format("<{}>", true), is("<true>"));
+        Assert.assertThat(PlaceholderFormat.format("<{}>", 'c'), is("<c>"));
+        Assert.assertThat(PlaceholderFormat.format("none", 12L), is("none"));
+    }
+
+    @Test
+    public void testArrays()
+    {
+        final Object[] cyclic = new Object[2];
+        cyclic[0] = "a";
+        cyclic[1] = cyclic;
+
+        Assert.assertThat(PlaceholderFormat.format("{} {}", new int[] { 1, 2 }, new Object[] { "x", new long[] { 3L } }), is("[1, 2] [x, [3]]"));
+        Assert.assertThat(PlaceholderFormat.format("{}", new Object[] { cyclic }), is("[a, [...]]"));
+    }
+
+    @Test
+    public void testBadArgument()
+    {
+        final Object exploder = new Object() {
+            @Override
+            public String toString()
+            {
+                throw new IllegalStateException();
+            }
+        };
+
+        Assert.assertThat(PlaceholderFormat.format("{} / {}", "fine", exploder), is("fine / <IllegalStateException>"));
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kitei.internal.FormattingUtils;
+
+public class TestArgumentRenderers
+{
+    @Test
+    public void testArrays()
+    {
+        Assert.assertThat(render(new int[] { 1, 2 }), is("[1, 2]"));
+        Assert.assertThat(render(new double[] { 0.5 }), is("[0.5]"));
+        Assert.assertThat(render(new Object[] { "a", new char[] { 'b' } }), is("[a, [b]]"));
+        Assert.assertThat(FormattingUtils.safeFormat("%s", new long[] { 3L }), is("[3]"));
+    }
+
+    @Test
+    public void testCycles()
+    {
+        final Object[] array = new Object[2];
+        array[0] = "a";
+        array[1] = array;
+        Assert.assertThat(render(array), is("[a, [...]]"));
+
+        final List<Object> list = new ArrayList<Object>();
+        list.add(list);
+        list.add(Arrays.asList(list));
+        Assert.assertThat(render(list), is("[(this Collection), [[...]]]"));
+    }
+
+    @Test
+    public void testCollections()
+    {
+        final Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("a", 1);
+        map.put("b", Arrays.asList(2, 3));
+        Assert.assertThat(render(map), is(map.toString()));
+        Assert.assertThat(render(Collections.unmodifiableList(Arrays.asList(1, 2))), is("[1, 2]"));
+    }
+
+    @Test
+    public void testElementCap()
+    {
+        final List<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < 150; i++) {
+            list.add(i);
+        }
+        final String rendered = render(list);
+        Assert.assertThat(rendered.endsWith(", 99, ... 50 more]"), is(true));
+        Assert.assertThat(render(new byte[1000]).endsWith("0, ... 900 more]"), is(true));
+    }
+
+    @Test
+    public void testByteBuffer()
+    {
+        final ByteBuffer buffer = ByteBuffer.wrap(new byte[] { 1, 2, (byte) 0xab, 4 });
+        buffer.get();
+        Assert.assertThat(render(buffer), is("HeapByteBuffer[pos=1 lim=4 cap=4 02ab04]"));
+        Assert.assertThat(buffer.position(), is(1));
+        Assert.assertThat(render(ByteBuffer.allocate(1000)).endsWith("00...]"), is(true));
+    }
+
+    @Test
+    public void testArgumentLimit()
+    {
+        final char[] chars = new char[ArgumentRenderers.ARGUMENT_LIMIT * 2];
+        Arrays.fill(chars, 'x');
+        final String rendered = render(new String(chars));
+        Assert.assertThat(rendered.length(), is(ArgumentRenderers.ARGUMENT_LIMIT + 3));
+        Assert.assertThat(rendered.endsWith("x..."), is(true));
+    }
+
+    @Test
+    public void testNoToStringBeyondLimit()
+    {
+        final char[] chars = new char[ArgumentRenderers.ARGUMENT_LIMIT];
+        Arrays.fill(chars, 'x');
+        final AtomicInteger calls = new AtomicInteger();
+        final Object value = new Object() {
+            @Override
+            public String toString()
+            {
+                calls.incrementAndGet();
+                return "value";
+            }
+        };
+        final String rendered = render(Collections.singletonMap(new String(chars), value));
+        Assert.assertThat(rendered.endsWith("x..."), is(true));
+        Assert.assertThat(calls.get(), is(0));
+    }
+
+    @Test
+    public void testMessageLimit()
+    {
+        final StringBuilder sb = new StringBuilder();
+        final char[] chars = new char[ArgumentRenderers.ARGUMENT_LIMIT];
+        Arrays.fill(chars, 'x');
+        final String argument = new String(chars);
+        for (int i = 0; i < ArgumentRenderers.MESSAGE_LIMIT / ArgumentRenderers.ARGUMENT_LIMIT + 2; i++) {
+            ArgumentRenderers.append(sb, argument);
+        }
+        Assert.assertThat(sb.length() <= ArgumentRenderers.MESSAGE_LIMIT + 6, is(true));
+    }
+
+    @Test
+    public void testFailingToString()
+    {
+        final Object failing = new Object() {
+            @Override
+            public String toString()
+            {
+                throw new IllegalStateException();
+            }
+        };
+        Assert.assertThat(render(Arrays.asList(1, failing)), is("<IllegalStateException>"));
+    }
+
+    @Test
+    public void testRegistration()
+    {
+        ArgumentRenderers.register(Secret.class, new ArgumentRenderer<Secret>() {
+            @Override
+            public void render(final RenderContext context, final Secret value)
+            {
+                context.builder().append("****");
+            }
+        });
+        Assert.assertThat(render(new Secret()), is("****"));
+        Assert.assertThat(render(Arrays.asList(new Secret())), is("[****]"));
+    }
+
+    private static String render(final Object value)
+    {
+        final StringBuilder sb = new StringBuilder();
+        ArgumentRenderers.append(sb, value);
+        return sb.toString();
+    }
+
+    private static final class Secret
+    {
+        @Override
+        public String toString()
+        {
+            return "password";
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitei.logging.util.LoggingTestUtils;
+import org.kitei.logging.util.RecordingAppender;
+
+import com.google.common.base.Ticker;
+
+public class TestExceptionDeduplication
+{
+    private RecordingAppender recordingAppender = null;
+    private final AtomicLong now = new AtomicLong();
+    private Log log = null;
+
+    @Before
+    public void setUp()
+    {
+        recordingAppender = LoggingTestUtils.setupTestLogging("/log4j-logging-test.xml");
+        log = Log.forCategory("tc-info").withDeduplication(1, TimeUnit.MINUTES, new Ticker() {
+            @Override
+            public long read()
+            {
+                return now.get();
+            }
+        });
+    }
+
+    @After
+    public void tearDown()
+    {
+        recordingAppender = null;
+        log = null;
+    }
+
+    @Test
+    public void testRepeatedException()
+    {
+        for (int i = 0; i < 3; i++) {
+            log.error(failure("down"), "call %d failed", i);
+            if (i == 0) {
+                Assert.assertThat(recordingAppender.getContents(), is("call 0 failed\n"));
+                Assert.assertThat(recordingAppender.getThrowable(), is(not(nullValue())));
+                recordingAppender.clear();
+            }
+        }
+        Assert.assertThat(recordingAppender.getContents(), is("call 1 failed: java.io.IOException: down (seen 1 more times)\n"
+            + "call 2 failed: java.io.IOException: down (seen 2 more times)\n"));
+        Assert.assertThat(recordingAppender.getThrowable(), is(nullValue()));
+    }
+
+    @Test
+    public void testWindowExpires()
+    {
+        log.warn(failure("down"), "failed");
+        log.warn(failure("down"), "failed");
+        recordingAppender.clear();
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        log.warn(failure("down"), "failed");
+        Assert.assertThat(recordingAppender.getContents(), is("failed\n"));
+        Assert.assertThat(recordingAppender.getThrowable(), is(not(nullValue())));
+    }
+
+    @Test
+    public void testDifferentTemplates()
+    {
+        log.error(failure("down"), "first");
+        log.error(failure("down"), "second");
+        Assert.assertThat(recordingAppender.getContents(), is("first\nsecond\n"));
+    }
+
+    @Test
+    public void testFingerprint()
+    {
+        final Exception[] failures = new Exception[2];
+        for (int i = 0; i < failures.length; i++) {
+            failures[i] = failure("failure " + i);
+        }
+        final Exception a = failures[0];
+        final Exception b = failures[1];
+        Assert.assertThat(ExceptionDeduplicator.fingerprint("x", a), is(ExceptionDeduplicator.fingerprint("x", b)));
+        Assert.assertThat(ExceptionDeduplicator.fingerprint("x", a) == ExceptionDeduplicator.fingerprint("y", a), is(false));
+        Assert.assertThat(ExceptionDeduplicator.fingerprint("x", a) == ExceptionDeduplicator.fingerprint("x", new RuntimeException(a)), is(false));
+    }
+
+    private static Exception failure(final String message)
+    {
+        return new IOException(message);
+    }
+}
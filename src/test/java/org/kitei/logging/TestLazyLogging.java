@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Level;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitei.logging.Log.LogLevel;
+import org.kitei.logging.util.LoggingTestUtils;
+import org.kitei.logging.util.RecordingAppender;
+import org.kitei.system.SystemPropertyKeys;
+
+import com.google.common.base.Supplier;
+
+public class TestLazyLogging
+{
+    private RecordingAppender recordingAppender = null;
+    private Log log = null;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Before
+    public void setUp()
+    {
+        recordingAppender = LoggingTestUtils.setupTestLogging("/log4j-logging-test.xml");
+        System.setProperty(SystemPropertyKeys.LOGGING_TRIM_EXCEPTIONS, "true");
+        log = Log.forCategory("tc-info");
+        calls.set(0);
+    }
+
+    @After
+    public void tearDown()
+    {
+        recordingAppender = null;
+        log = null;
+    }
+
+    @Test
+    public void testLazyArguments()
+    {
+        log.debug("state: %s", counting("expensive"));
+        log.trace("state: %s %s %s %s %s", counting("a"), counting("b"), counting("c"), counting("d"), counting("e"));
+        Assert.assertThat(calls.get(), is(0));
+        Assert.assertThat(recordingAppender.getContents(), is(""));
+
+        log.info("state: %s, %d", counting("expensive"), 3);
+        Assert.assertThat(calls.get(), is(1));
+        Assert.assertThat(recordingAppender.getContents(), is("state: expensive, 3\n"));
+    }
+
+    @Test
+    public void testLazyMessage()
+    {
+        log.debug(counting("hidden"));
+        log.log(LogLevel.TRACE, new IllegalStateException(), counting("hidden"));
+        Assert.assertThat(calls.get(), is(0));
+
+        log.warn(counting("shown"));
+        Assert.assertThat(calls.get(), is(1));
+        Assert.assertThat(recordingAppender.getContents(), is("shown\n"));
+        Assert.assertThat(recordingAppender.getLevel(), is(Level.WARN));
+    }
+
+    @Test
+    public void testSummarizedException()
+    {
+        final Exception e = new IllegalArgumentException("wrong! do it again!");
+
+        log.error(e, "failed: %s", counting("request"));
+        Assert.assertThat(calls.get(), is(1));
+        Assert.assertThat(recordingAppender.getContents(), is("failed: request: wrong! do it again!\n"));
+        Assert.assertThat(recordingAppender.getThrowable(), is(nullValue()));
+
+        recordingAppender.clear();
+
+        log.error(e, counting("message"));
+        Assert.assertThat(recordingAppender.getContents(), is("message: wrong! do it again!\n"));
+    }
+
+    @Test
+    public void testFailingSupplier()
+    {
+        final Supplier<String> broken = new Supplier<String>() {
+            @Override
+            public String get()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        log.info("value: %s", broken);
+        Assert.assertThat(recordingAppender.getContents(), is("value: <UnsupportedOperationException>\n"));
+    }
+
+    private Supplier<String> counting(final String value)
+    {
+        return new Supplier<String>() {
+            @Override
+            public String get()
+            {
+                calls.incrementAndGet();
+                return value;
+            }
+        };
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitei.logging.Log.LogLevel;
+import org.kitei.logging.internal.Log4jConfigurator;
+import org.kitei.logging.util.LoggingTestUtils;
+import org.kitei.logging.util.RecordingAppender;
+import org.kitei.system.SystemPropertyKeys;
+
+public class TestLevelCache
+{
+    static {
+        System.setProperty(SystemPropertyKeys.LOGGING_LEVEL_REFRESH_INTERVAL, "1");
+    }
+
+    private RecordingAppender recordingAppender = null;
+
+    @Before
+    public void setUp()
+    {
+        recordingAppender = LoggingTestUtils.setupTestLogging("/log4j-logging-test.xml");
+    }
+
+    @Test
+    public void testSetLevel()
+    {
+        final Log log = Log.forCategory("tc-info");
+        Assert.assertThat(log.isDebugEnabled(), is(false));
+
+        LogConfigurator.setLevel("tc-info", LogLevel.DEBUG);
+        Assert.assertThat(log.isDebugEnabled(), is(true));
+        Assert.assertThat(log.isEnabled(LogLevel.DEBUG), is(true));
+        Assert.assertThat(log.isTraceEnabled(), is(false));
+
+        log.debug("now visible");
+        Assert.assertThat(recordingAppender.getContents(), is("now visible\n"));
+
+        LogConfigurator.setLevel("tc-info", LogLevel.INFO);
+        Assert.assertThat(log.isDebugEnabled(), is(false));
+    }
+
+    @Test
+    public void testLevelsChanged()
+    {
+        final Log log = Log.forCategory("tc-warn");
+        Assert.assertThat(log.isInfoEnabled(), is(false));
+
+        LogManager.getLogger("tc-warn").setLevel(Level.INFO);
+        LogConfigurator.levelsChanged();
+        Assert.assertThat(log.isInfoEnabled(), is(true));
+    }
+
+    @Test
+    public void testDirectChangeIsRefreshed() throws Exception
+    {
+        final Log log = Log.forCategory("tc-warn.refresh");
+        Assert.assertThat(log.isInfoEnabled(), is(false));
+
+        LogManager.getLogger("tc-warn.refresh").setLevel(Level.INFO);
+        for (int i = 0; i < 100 && !log.isInfoEnabled(); i++) {
+            Thread.sleep(50L);
+        }
+        Assert.assertThat(log.isInfoEnabled(), is(true));
+    }
+
+    @Test
+    public void testReconfiguration()
+    {
+        final Log log = Log.forCategory("tc-error");
+        Assert.assertThat(log.isWarnEnabled(), is(false));
+
+        LogManager.getLogger("tc-error").setLevel(Level.WARN);
+        Log4jConfigurator.configure();
+        Assert.assertThat(log.isWarnEnabled(), is(true));
+    }
+
+    @Test
+    public void testAppenderChange()
+    {
+        final Log log = Log.forCategory("tc-debug");
+        Assert.assertThat(log.isTraceEnabled(), is(false));
+
+        LogManager.getLogger("tc-debug").setLevel(Level.TRACE);
+        LoggingTestUtils.addAppender("tc-debug");
+        Assert.assertThat(log.isTraceEnabled(), is(true));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitei.logging.Log.LogLevel;
+import org.kitei.logging.util.LoggingTestUtils;
+import org.kitei.logging.util.RecordingAppender;
+
+public class TestLevelOverride
+{
+    private RecordingAppender recordingAppender = null;
+    private Log log = null;
+
+    @Before
+    public void setUp()
+    {
+        recordingAppender = LoggingTestUtils.setupTestLogging("/log4j-logging-test.xml");
+        log = Log.forCategory("tc-info");
+    }
+
+    @After
+    public void tearDown()
+    {
+        recordingAppender = null;
+        log = null;
+    }
+
+    @Test
+    public void testForce()
+    {
+        log.debug("before");
+        try (LevelOverride override = LevelOverride.force(LogLevel.DEBUG)) {
+            Assert.assertThat(log.isDebugEnabled(), is(true));
+            Assert.assertThat(log.isTraceEnabled(), is(false));
+            log.debug("debug %d", 1);
+            log.trace("trace");
+            log.info("info");
+        }
+        log.debug("after");
+        Assert.assertThat(log.isDebugEnabled(), is(false));
+        Assert.assertThat(recordingAppender.getContents(), is("debug 1\ninfo\n"));
+    }
+
+    @Test
+    public void testNested()
+    {
+        try (LevelOverride outer = LevelOverride.force(LogLevel.DEBUG)) {
+            try (LevelOverride inner = LevelOverride.force(LogLevel.TRACE)) {
+                Assert.assertThat(log.isTraceEnabled(), is(true));
+            }
+            Assert.assertThat(log.isTraceEnabled(), is(false));
+            Assert.assertThat(log.isDebugEnabled(), is(true));
+        }
+    }
+
+    @Test
+    public void testOutOfOrderClose()
+    {
+        try (LevelOverride base = LevelOverride.force(LogLevel.ERROR)) {
+            final LevelOverride outer = LevelOverride.force(LogLevel.DEBUG);
+            final LevelOverride inner = LevelOverride.force(LogLevel.TRACE);
+            outer.close();
+            Assert.assertThat(log.isDebugEnabled(), is(false));
+
+            inner.close();
+            Assert.assertThat(log.isDebugEnabled(), is(false));
+            Assert.assertThat(log.isTraceEnabled(), is(false));
+        }
+    }
+
+    @Test
+    public void testCloseOnOtherThread() throws Exception
+    {
+        final LevelOverride override = LevelOverride.force(LogLevel.DEBUG);
+        final AtomicBoolean failed = new AtomicBoolean();
+        final Thread thread = new Thread() {
+            @Override
+            public void run()
+            {
+                try {
+                    override.close();
+                }
+                catch (IllegalStateException e) {
+                    failed.set(true);
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        Assert.assertThat(failed.get(), is(true));
+        Assert.assertThat(log.isDebugEnabled(), is(true));
+
+        override.close();
+        Assert.assertThat(log.isDebugEnabled(), is(false));
+    }
+
+    @Test
+    public void testCategoryPrefix()
+    {
+        try (LevelOverride override = LevelOverride.force(LogLevel.DEBUG, "tc-warn")) {
+            Assert.assertThat(log.isDebugEnabled(), is(false));
+            Assert.assertThat(Log.forCategory("tc-warn").isDebugEnabled(), is(true));
+        }
+    }
+
+    @Test
+    public void testOtherThread() throws Exception
+    {
+        final AtomicBoolean enabled = new AtomicBoolean(true);
+        try (LevelOverride override = LevelOverride.force(LogLevel.DEBUG)) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    enabled.set(log.isDebugEnabled());
+                }
+            });
+            thread.start();
+            thread.join();
+        }
+        Assert.assertThat(enabled.get(), is(false));
+    }
+
+    @Test
+    public void testThrowableAndStructured()
+    {
+        try (LevelOverride override = LevelOverride.force(LogLevel.DEBUG)) {
+            log.debug(new IllegalStateException("boom"), "failed");
+            log.atDebug().kv("id", 1).msg("event");
+        }
+        Assert.assertThat(recordingAppender.getContents(), is("failed\nevent id=1\n"));
+    }
+}
@@ -52,6 +52,54 @@ public class TestLog
         Assert.assertThat(log, is(log2));
     }
 
+    @Test
+    public void findLoggerIsCached()
+    {
+        Assert.assertThat(Log.findLog() == Log.findLog(), is(true));
+    }
+
+    @Test
+    public void findCallerLogger()
+    {
+        final Log callerLog = Helper.callerLog();
+        Assert.assertThat(callerLog.getWrappedLogger(), is(log));
+        Assert.assertThat(callerLog == Helper.callerLog(), is(true));
+        Assert.assertThat(Helper.ownLog().getWrappedLogger().getName(), is(Helper.class.getName()));
+    }
+
+    @Test
+    public void canonicalLogs()
+    {
+        final long hits = Log.getCacheStats().hitCount();
+        final long misses = Log.getCacheStats().missCount();
+        final Logger logger = LoggerFactory.getLogger("tc-cached-logger");
+
+        Assert.assertThat(Log.forCategory("tc-cached") == Log.forCategory("tc-cached"), is(true));
+        Assert.assertThat(Log.forLogger(logger) == Log.forLogger(logger), is(true));
+        Assert.assertThat(Log.getCacheStats().hitCount() - hits, is(2L));
+        Assert.assertThat(Log.getCacheStats().missCount() - misses, is(2L));
+
+        Assert.assertThat(Log.forClass(TestLog.class) == Log.forCategory(TestLog.class.getName()), is(true));
+    }
+
+    @Test
+    public void lazyLog()
+    {
+        final Log lazyLog = Log.lazyForCategory("tc-lazy");
+        Assert.assertThat(lazyLog.isBound(), is(false));
+        Assert.assertThat(Log.lazyForCategory("tc-lazy") == lazyLog, is(true));
+
+        Assert.assertThat(lazyLog.isInfoEnabled(), is(true));
+        Assert.assertThat(lazyLog.isBound(), is(true));
+        Assert.assertThat(lazyLog.getWrappedLogger(), is(LoggerFactory.getLogger("tc-lazy")));
+        Assert.assertThat(Log.forCategory("tc-lazy") == lazyLog, is(true));
+
+        final Log boundLog = Log.forClass(TestLog.class);
+        Assert.assertThat(Log.lazyForClass(TestLog.class) == boundLog, is(true));
+        Assert.assertThat(boundLog.isBound(), is(true));
+        Assert.assertThat(boundLog.getWrappedLogger(), is(log));
+    }
+
     @Test
     public void findLoggerByName()
     {
@@ -113,4 +161,17 @@ public class TestLog
 
         Assert.assertThat(recordingAppender.getContents(), is("Invalid format string while logging: WARN 'Not a number: %d' [100]\n'Not a number: %d' [100]\n"));
     }
+
+    private static final class Helper
+    {
+        static Log callerLog()
+        {
+            return Log.findCallerLog();
+        }
+
+        static Log ownLog()
+        {
+            return Log.findLog();
+        }
+    }
 }
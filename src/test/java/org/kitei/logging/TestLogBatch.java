@@ -0,0 +1,212 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+import java.io.BufferedWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.WriterAppender;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitei.logging.util.LoggingTestUtils;
+import org.kitei.logging.util.RecordingAppender;
+
+public class TestLogBatch
+{
+    private RecordingAppender recordingAppender = null;
+    private Log log = null;
+
+    @Before
+    public void setUp()
+    {
+        recordingAppender = LoggingTestUtils.setupTestLogging("/log4j-logging-test.xml");
+        log = Log.forCategory("tc-info");
+    }
+
+    @After
+    public void tearDown()
+    {
+        recordingAppender = null;
+        log = null;
+    }
+
+    @Test
+    public void testWrittenOnClose()
+    {
+        try (LogBatch batch = log.batch()) {
+            batch.info("first %d", 1);
+            batch.debug("disabled");
+            batch.warn("second");
+            Assert.assertThat(batch.size(), is(2));
+            Assert.assertThat(recordingAppender.getContents(), is(""));
+        }
+        Assert.assertThat(recordingAppender.getContents(), is("first 1\nsecond\n"));
+    }
+
+    @Test
+    public void testThrowable()
+    {
+        final Exception e = new IllegalStateException("boom");
+        try (LogBatch batch = log.batch()) {
+            batch.error(e, "failed %s", "job");
+        }
+        Assert.assertThat(recordingAppender.getContents(), is("failed job\n"));
+        Assert.assertThat(recordingAppender.getThrowable(), is(e.toString()));
+    }
+
+    @Test
+    public void testTrimmedExceptions()
+    {
+        final Log trimLog = LoggingTestUtils.trimmingLog("tc-info.batch-trim");
+        final Exception e = new IllegalStateException("boom");
+        try (LogBatch batch = trimLog.batch()) {
+            batch.error(e, "failed %s", "job");
+        }
+        Assert.assertThat(recordingAppender.getContents(), is("failed job: boom\n"));
+        Assert.assertThat(recordingAppender.getThrowable(), is(nullValue()));
+    }
+
+    @Test
+    public void testDeduplicatedExceptions()
+    {
+        final Log dedupLog = log.withDeduplication(1, TimeUnit.MINUTES);
+        try (LogBatch batch = dedupLog.batch()) {
+            for (int i = 0; i < 2; i++) {
+                batch.warn(new IllegalStateException("boom"), "failed");
+            }
+        }
+        Assert.assertThat(recordingAppender.getContents(), is("failed\nfailed: java.lang.IllegalStateException: boom (seen 1 more times)\n"));
+    }
+
+    @Test
+    public void testReuse()
+    {
+        final LogBatch batch = log.batch();
+        batch.info("one");
+        batch.flush();
+        batch.info("two");
+        batch.close();
+        Assert.assertThat(batch.size(), is(0));
+        Assert.assertThat(recordingAppender.getContents(), is("one\ntwo\n"));
+    }
+
+    @Test
+    public void testSingleFlush()
+    {
+        final AtomicInteger flushes = new AtomicInteger();
+        final StringWriter out = new StringWriter();
+        final WriterAppender appender = new WriterAppender(new PatternLayout("%m%n"), new FilterWriter(out) {
+            @Override
+            public void flush() throws IOException
+            {
+                flushes.incrementAndGet();
+                super.flush();
+            }
+        });
+        final Logger logger = LogManager.getLogger("tc-info");
+        logger.addAppender(appender);
+        try {
+            try (LogBatch batch = log.batch()) {
+                for (int i = 0; i < 100; i++) {
+                    batch.info("line %d", i);
+                }
+            }
+            Assert.assertThat(flushes.get(), is(1));
+            Assert.assertThat(appender.getImmediateFlush(), is(true));
+            Assert.assertThat(out.toString().startsWith("line 0" + System.getProperty("line.separator") + "line 1"), is(true));
+
+            log.info("single");
+            Assert.assertThat(flushes.get(), is(2));
+        }
+        finally {
+            logger.removeAppender(appender);
+        }
+    }
+
+    @Test
+    public void testFlushedWhenLastEventFiltered()
+    {
+        final StringWriter out = new StringWriter();
+        final WriterAppender appender = new WriterAppender(new PatternLayout("%m%n"), new BufferedWriter(out));
+        appender.setThreshold(Level.INFO);
+        final Logger logger = LogManager.getLogger("tc-debug");
+        logger.addAppender(appender);
+        try {
+            try (LogBatch batch = Log.forCategory("tc-debug").batch()) {
+                batch.info("first");
+                batch.debug("second");
+            }
+            Assert.assertThat(out.toString(), is("first" + System.getProperty("line.separator")));
+        }
+        finally {
+            logger.removeAppender(appender);
+        }
+    }
+
+    @Test
+    public void testContiguous() throws Exception
+    {
+        final int threads = 4;
+        final int lines = 50;
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int id = i;
+            workers[i] = new Thread() {
+                @Override
+                public void run()
+                {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    try (LogBatch batch = log.batch()) {
+                        for (int j = 0; j < lines; j++) {
+                            batch.info("%d", id);
+                        }
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        final String[] output = recordingAppender.getContents().split("\n");
+        Assert.assertThat(output.length, is(threads * lines));
+        for (int i = 0; i < output.length; i += lines) {
+            for (int j = 1; j < lines; j++) {
+                Assert.assertThat(output[i + j], is(output[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitei.logging.Log.FormatStyle;
+import org.kitei.logging.Log.LogLevel;
+import org.kitei.logging.util.LoggingTestUtils;
+import org.kitei.logging.util.RecordingAppender;
+
+public class TestLogBuffer
+{
+    private RecordingAppender recordingAppender = null;
+    private Log log = null;
+
+    @Before
+    public void setUp()
+    {
+        recordingAppender = LoggingTestUtils.setupTestLogging("/log4j-logging-test.xml");
+        log = Log.forCategory("tc-info");
+    }
+
+    @After
+    public void tearDown()
+    {
+        recordingAppender = null;
+        log = null;
+    }
+
+    @Test
+    public void testDiscardedOnClose()
+    {
+        try (LogBuffer buffer = LogBuffer.start()) {
+            Assert.assertThat(log.isDebugEnabled(), is(true));
+            log.debug("debug %d", 1);
+            log.trace("trace");
+            log.info("info");
+        }
+        log.debug("after");
+        Assert.assertThat(log.isDebugEnabled(), is(false));
+        Assert.assertThat(recordingAppender.getContents(), is("info\n"));
+    }
+
+    @Test
+    public void testReplayKeepsTimestamps() throws Exception
+    {
+        final RecordingAppender timeAppender = new RecordingAppender("%r %m%n");
+        final Logger logger = LogManager.getLogger("tc-info");
+        logger.addAppender(timeAppender);
+        try {
+            try (LogBuffer buffer = LogBuffer.start()) {
+                log.debug("early");
+                Thread.sleep(200L);
+                log.error("failed");
+            }
+        }
+        finally {
+            logger.removeAppender(timeAppender);
+        }
+        final String[] lines = timeAppender.getContents().split(System.getProperty("line.separator"));
+        Assert.assertThat(lines[0].endsWith(" early"), is(true));
+        Assert.assertThat(lines[1].endsWith(" failed"), is(true));
+        final long early = Long.parseLong(lines[0].split(" ")[0]);
+        final long failed = Long.parseLong(lines[1].split(" ")[0]);
+        Assert.assertThat(failed - early >= 150L, is(true));
+    }
+
+    @Test
+    public void testReplayWithoutLog4j()
+    {
+        final List<String> lines = new ArrayList<String>();
+        final org.slf4j.Logger infoLogger = (org.slf4j.Logger) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { org.slf4j.Logger.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args)
+                {
+                    final String name = method.getName();
+                    if (method.getDeclaringClass() == Object.class) {
+                        return name.equals("equals") ? proxy == args[0] : name.equals("hashCode") ? System.identityHashCode(proxy) : "infoLogger";
+                    }
+                    else if (name.equals("getName")) {
+                        return "tc-slf4j";
+                    }
+                    else if (name.startsWith("is")) {
+                        return !name.equals("isTraceEnabled") && !name.equals("isDebugEnabled");
+                    }
+                    lines.add(name + " " + args[0]);
+                    return null;
+                }
+            });
+
+        final Log slf4jLog = Log.forLogger(infoLogger);
+        try (LogBuffer buffer = LogBuffer.start()) {
+            slf4jLog.debug("early");
+            slf4jLog.error("failed");
+        }
+        Assert.assertThat(lines, is(Arrays.asList("info [DEBUG] early", "error failed")));
+    }
+
+    @Test
+    public void testOutOfOrderClose()
+    {
+        try (LogBuffer base = LogBuffer.start(LogLevel.DEBUG, 10)) {
+            final LogBuffer outer = LogBuffer.start();
+            final LogBuffer inner = LogBuffer.start();
+            outer.close();
+            inner.close();
+            log.debug("base");
+            base.flush();
+        }
+        log.debug("after");
+        Assert.assertThat(recordingAppender.getContents(), is("base\n"));
+    }
+
+    @Test
+    public void testFlushedOnError()
+    {
+        try (LogBuffer buffer = LogBuffer.start()) {
+            log.debug("first %s", "a");
+            log.info("info");
+            log.trace("second");
+            log.error("failed");
+            log.debug("third");
+        }
+        Assert.assertThat(recordingAppender.getContents(), is("info\nfirst a\nsecond\nfailed\nthird\n"));
+    }
+
+    @Test
+    public void testExplicitFlush()
+    {
+        try (LogBuffer buffer = LogBuffer.start(LogLevel.DEBUG, 10)) {
+            final Exception e = new IllegalStateException("boom");
+            log.debug(e, "with %s", "cause");
+            buffer.flush();
+            Assert.assertThat(recordingAppender.getContents(), is("with cause\n"));
+            Assert.assertThat(recordingAppender.getThrowable(), is(e.toString()));
+        }
+    }
+
+    @Test
+    public void testArgumentsFormattedOnFlush()
+    {
+        final AtomicInteger calls = new AtomicInteger();
+        final Object arg = new Object() {
+            @Override
+            public String toString()
+            {
+                return "call " + calls.incrementAndGet();
+            }
+        };
+
+        try (LogBuffer buffer = LogBuffer.start()) {
+            log.debug("%s", arg);
+            Assert.assertThat(calls.get(), is(0));
+            buffer.flush();
+        }
+        Assert.assertThat(recordingAppender.getContents(), is("call 1\n"));
+    }
+
+    @Test
+    public void testBounded()
+    {
+        try (LogBuffer buffer = LogBuffer.start(LogLevel.DEBUG, 2)) {
+            for (int i = 0; i < 5; i++) {
+                log.debug("message %d", i);
+            }
+            buffer.flush();
+        }
+        Assert.assertThat(recordingAppender.getContents(), is("(3 earlier messages dropped from the log buffer)\nmessage 3\nmessage 4\n"));
+    }
+
+    @Test
+    public void testBoundedPlaceholder()
+    {
+        final Log placeholderLog = log.withFormatStyle(FormatStyle.PLACEHOLDER);
+        try (LogBuffer buffer = LogBuffer.start(LogLevel.DEBUG, 1)) {
+            placeholderLog.debug("message {}", 1);
+            placeholderLog.debug("message {}", 2);
+            buffer.flush();
+        }
+        Assert.assertThat(recordingAppender.getContents(), is("(1 earlier messages dropped from the log buffer)\nmessage 2\n"));
+    }
+
+    @Test
+    public void testLevel()
+    {
+        try (LogBuffer buffer = LogBuffer.start(LogLevel.TRACE, 10)) {
+            Assert.assertThat(log.isTraceEnabled(), is(true));
+            Assert.assertThat(log.isDebugEnabled(), is(false));
+            log.debug("debug");
+            log.trace("trace");
+            buffer.flush();
+        }
+        Assert.assertThat(recordingAppender.getContents(), is("trace\n"));
+    }
+
+    @Test
+    public void testNested()
+    {
+        try (LogBuffer outer = LogBuffer.start()) {
+            log.debug("outer");
+            try (LogBuffer inner = LogBuffer.start()) {
+                log.debug("inner");
+                inner.flush();
+            }
+            Assert.assertThat(recordingAppender.getContents(), is("inner\n"));
+            log.error("failed");
+        }
+        Assert.assertThat(recordingAppender.getContents(), is("inner\nouter\nfailed\n"));
+    }
+
+    @Test
+    public void testTrimmedExceptionsUnchanged()
+    {
+        final Log trimLog = LoggingTestUtils.trimmingLog("tc-info.buffer-trim");
+        final Exception e = new IllegalStateException("boom");
+        try (LogBuffer buffer = LogBuffer.start()) {
+            trimLog.info(e, "buffered %s", "x");
+            trimLog.warn(e);
+        }
+        Assert.assertThat(recordingAppender.getContents(), is("buffered x: boom\n: boom\n"));
+        Assert.assertThat(recordingAppender.getThrowable(), is(nullValue()));
+    }
+
+    @Test
+    public void testEnabledLevelNotCaptured()
+    {
+        final Log debugLog = Log.forCategory("tc-debug");
+        try (LogBuffer buffer = LogBuffer.start()) {
+            debugLog.debug("debug");
+            Assert.assertThat(recordingAppender.getContents(), is("debug\n"));
+        }
+    }
+}
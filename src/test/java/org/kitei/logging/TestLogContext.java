@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitei.logging.internal.ContextPatternLayout;
+
+public class TestLogContext
+{
+    private ExecutorService executor = null;
+
+    @Before
+    public void setUp()
+    {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+        executor = null;
+    }
+
+    @Test
+    public void testScopes()
+    {
+        Assert.assertThat(LogContext.current().isEmpty(), is(true));
+        try (LogContext.Scope outer = LogContext.put("request", "r1")) {
+            try (LogContext.Scope inner = LogContext.put("user", 42)) {
+                Assert.assertThat(LogContext.current().toString(), is("request=r1 user=42"));
+            }
+            Assert.assertThat(LogContext.current().get("user"), is(nullValue()));
+            Assert.assertThat(LogContext.current().get("request"), is("r1"));
+        }
+        Assert.assertThat(LogContext.current(), is(LogContext.EMPTY));
+    }
+
+    @Test
+    public void testOutOfOrderClose()
+    {
+        final LogContext.Scope outer = LogContext.put("request", "r1");
+        final LogContext.Scope inner = LogContext.put("user", 42);
+        outer.close();
+        Assert.assertThat(LogContext.current(), is(LogContext.EMPTY));
+
+        inner.close();
+        Assert.assertThat(LogContext.current(), is(LogContext.EMPTY));
+    }
+
+    @Test
+    public void testSharing()
+    {
+        final LogContext base = LogContext.EMPTY.with("a", 1).with("b", 2);
+        final LogContext replaced = base.with("a", 3);
+        Assert.assertThat(base.toString(), is("a=1 b=2"));
+        Assert.assertThat(replaced.toString(), is("b=2 a=3"));
+        Assert.assertThat(replaced.get("a"), is("3"));
+    }
+
+    @Test
+    public void testMapIsCached()
+    {
+        final LogContext context = LogContext.EMPTY.with("a", "1").with("b", "2");
+        Assert.assertThat(context.asMap(), is(sameInstance(context.asMap())));
+        Assert.assertThat(context.with("a", "3").asMap().keySet().toString(), is("[b, a]"));
+    }
+
+    @Test
+    public void testExecutorPropagation() throws Exception
+    {
+        final ExecutorService propagating = LogContext.propagating(executor);
+        final Callable<String> task = new Callable<String>() {
+            @Override
+            public String call()
+            {
+                return LogContext.current().get("request");
+            }
+        };
+
+        try (LogContext.Scope scope = LogContext.put("request", "r2")) {
+            Assert.assertThat(propagating.submit(task).get(), is("r2"));
+            Assert.assertThat(propagating.invokeAll(Arrays.asList(task)).get(0).get(), is("r2"));
+            Assert.assertThat(executor.submit(task).get(), is(nullValue()));
+        }
+        Assert.assertThat(propagating.submit(task).get(), is(nullValue()));
+    }
+
+    @Test
+    public void testLayout()
+    {
+        final ContextPatternLayout layout = new ContextPatternLayout("%m %K{request} [%K]%n");
+        final Logger logger = Logger.getLogger("tc-info");
+        try (LogContext.Scope scope = LogContext.EMPTY.with("request", "r3").with("user", "u").bind()) {
+            Assert.assertThat(layout.format(new LoggingEvent(Logger.class.getName(), logger, Level.INFO, "hello", null)), is("hello r3 [request=r3 user=u]\n"));
+        }
+        Assert.assertThat(layout.format(new LoggingEvent(Logger.class.getName(), logger, Level.INFO, "hello", null)), is("hello  []\n"));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitei.logging.util.LoggingTestUtils;
+import org.kitei.logging.util.RecordingAppender;
+
+public class TestLogEvent
+{
+    private RecordingAppender recordingAppender = null;
+    private Log log = null;
+
+    @Before
+    public void setUp()
+    {
+        recordingAppender = LoggingTestUtils.setupTestLogging("/log4j-logging-test.xml");
+        log = Log.forCategory("tc-info");
+    }
+
+    @After
+    public void tearDown()
+    {
+        recordingAppender = null;
+        log = null;
+    }
+
+    @Test
+    public void testFields()
+    {
+        log.atInfo().kv("user", "alice").kv("ms", 12L).kv("count", 3).kv("ratio", 0.5).kv("ok", true).msg("done");
+        Assert.assertThat(recordingAppender.getContents(), is("done user=alice ms=12 count=3 ratio=0.5 ok=true\n"));
+    }
+
+    @Test
+    public void testQuoting()
+    {
+        log.atWarn().kv("query", "select \"a\" from b").kv("empty", "").kv("none", (Object) null).log();
+        Assert.assertThat(recordingAppender.getContents(), is("query=\"select \\\"a\\\" from b\" empty=\"\" none=null\n"));
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        final LogEvent event = log.atDebug();
+        Assert.assertThat(event, is(sameInstance(log.atTrace())));
+        event.kv("a", 1L).kv("b", "c").msg("hidden");
+        Assert.assertThat(recordingAppender.getContents(), is(""));
+    }
+
+    @Test
+    public void testReuse()
+    {
+        final LogEvent first = log.atInfo();
+        first.kv("n", 1).msg("first");
+        final LogEvent second = log.atInfo();
+        Assert.assertThat(second, is(sameInstance(first)));
+        second.kv("n", 2).msg("second");
+        Assert.assertThat(recordingAppender.getContents(), is("first n=1\nsecond n=2\n"));
+    }
+
+    @Test
+    public void testReuseAfterFailedRendering()
+    {
+        final Object failing = new Object() {
+            @Override
+            public String toString()
+            {
+                throw new Error("render failed");
+            }
+        };
+        final LogEvent first = log.atInfo();
+        try {
+            first.kv("value", failing);
+            Assert.fail();
+        }
+        catch (Error e) {
+            Assert.assertThat(e.getMessage(), is("render failed"));
+        }
+
+        final LogEvent second = log.atInfo();
+        Assert.assertThat(second, is(sameInstance(first)));
+        second.kv("n", 2).msg("second");
+        Assert.assertThat(recordingAppender.getContents(), is("second n=2\n"));
+    }
+
+    @Test
+    public void testNested()
+    {
+        final Object nested = new Object() {
+            @Override
+            public String toString()
+            {
+                log.atInfo().kv("inner", 1).msg("nested");
+                return "outer";
+            }
+        };
+        log.atInfo().kv("value", nested).msg("top");
+        Assert.assertThat(recordingAppender.getContents(), is("nested inner=1\ntop value=outer\n"));
+    }
+
+    @Test
+    public void testCause()
+    {
+        log.atError().kv("id", 7L).withCause(new IllegalStateException("boom")).msg("failed");
+        Assert.assertThat(recordingAppender.getContents(), is("failed id=7\n"));
+        Assert.assertThat(recordingAppender.getThrowable(), is(not(nullValue())));
+    }
+
+    @Test
+    public void testFormattedOnce()
+    {
+        final Log trimLog = LoggingTestUtils.trimmingLog("tc-info.event-trim");
+        final Exception e = new IllegalStateException("boom");
+
+        trimLog.atInfo().kv("pct", "50%d").withCause(e).msg("done");
+        log.atInfo().kv("pct", "{}%s").msg("done");
+        Assert.assertThat(recordingAppender.getContents(), is("done pct=50%d: boom\ndone pct={}%s\n"));
+    }
+}
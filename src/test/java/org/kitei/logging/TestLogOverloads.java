@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+import org.apache.log4j.Level;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitei.logging.Log.LogLevel;
+import org.kitei.logging.util.LoggingTestUtils;
+import org.kitei.logging.util.RecordingAppender;
+import org.kitei.system.SystemPropertyKeys;
+
+public class TestLogOverloads
+{
+    private RecordingAppender recordingAppender = null;
+    private Log log = null;
+
+    @Before
+    public void setUp()
+    {
+        recordingAppender = LoggingTestUtils.setupTestLogging("/log4j-logging-test.xml");
+        System.setProperty(SystemPropertyKeys.LOGGING_TRIM_EXCEPTIONS, "false");
+        log = Log.forCategory("tc-info");
+    }
+
+    @After
+    public void tearDown()
+    {
+        recordingAppender = null;
+        log = null;
+    }
+
+    @Test
+    public void testFixedArity()
+    {
+        log.info("%s", "a");
+        Assert.assertThat(recordingAppender.getContents(), is("a\n"));
+        recordingAppender.clear();
+
+        log.info("%s %s", "a", "b");
+        Assert.assertThat(recordingAppender.getContents(), is("a b\n"));
+        recordingAppender.clear();
+
+        log.warn("%s %s %s", "a", "b", "c");
+        Assert.assertThat(recordingAppender.getContents(), is("a b c\n"));
+        recordingAppender.clear();
+
+        log.error("%s %s %s %s", "a", "b", "c", "d");
+        Assert.assertThat(recordingAppender.getContents(), is("a b c d\n"));
+        recordingAppender.clear();
+
+        log.log(LogLevel.INFO, "%s-%s", "a", "b");
+        Assert.assertThat(recordingAppender.getContents(), is("a-b\n"));
+        recordingAppender.clear();
+
+        log.debug("%s %s", "a", "b");
+        Assert.assertThat(recordingAppender.getContents(), is(""));
+        Assert.assertThat(recordingAppender.getLevel(), is(nullValue()));
+    }
+
+    @Test
+    public void testFixedArityThrowable()
+    {
+        final Exception e = new IllegalArgumentException("wrong! do it again!");
+
+        log.debug(e, "%s %s", "a", "b");
+        Assert.assertThat(recordingAppender.getContents(), is(""));
+        Assert.assertThat(recordingAppender.getThrowable(), is(nullValue()));
+
+        log.warn(e, "%s %s", "a", "b");
+        Assert.assertThat(recordingAppender.getContents(), is("a b\n"));
+        Assert.assertThat(recordingAppender.getLevel(), is(Level.WARN));
+        Assert.assertThat(recordingAppender.getThrowable(), is(e.toString()));
+        recordingAppender.clear();
+
+        log.log(LogLevel.ERROR, e, "%s", "a");
+        Assert.assertThat(recordingAppender.getContents(), is("a\n"));
+        Assert.assertThat(recordingAppender.getLevel(), is(Level.ERROR));
+        Assert.assertThat(recordingAppender.getThrowable(), is(e.toString()));
+    }
+
+    @Test
+    public void testPrimitives()
+    {
+        log.info("%d", 42L);
+        log.info("%x", -1);
+        log.info("%.2f", 1.5d);
+        log.info("%s", true);
+        log.info("%s", 'c');
+        log.info("%s", 0.1f);
+        log.debug("%d", 42L);
+
+        Assert.assertThat(recordingAppender.getContents(), is("42\nffffffff\n1.50\ntrue\nc\n0.1\n"));
+    }
+
+    @Test
+    public void testArrayArgumentStillExpands()
+    {
+        final Object[] args = new Object[] { "a", "b" };
+        log.info("%s %s", args);
+        Assert.assertThat(recordingAppender.getContents(), is("a b\n"));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitei.internal.FormattingUtils;
+import org.kitei.logging.Log.FormatStyle;
+import org.kitei.logging.util.LoggingTestUtils;
+import org.kitei.logging.util.RecordingAppender;
+
+public class TestLogRenderable
+{
+    private RecordingAppender recordingAppender = null;
+    private Log log = null;
+
+    @Before
+    public void setUp()
+    {
+        recordingAppender = LoggingTestUtils.setupTestLogging("/log4j-logging-test.xml");
+        log = Log.forCategory("tc-info");
+    }
+
+    @After
+    public void tearDown()
+    {
+        recordingAppender = null;
+        log = null;
+    }
+
+    @Test
+    public void testMessageArguments()
+    {
+        final Point point = new Point(3, 4);
+        log.info("at %s", point);
+        log.withFormatStyle(FormatStyle.PLACEHOLDER).info("at {}", point);
+        log.info("at %s and %s", point, new Point(5, 6));
+        Assert.assertThat(recordingAppender.getContents(), is("at (3,4)\nat (3,4)\nat (3,4) and (5,6)\n"));
+        Assert.assertThat(point.toStringCalls, is(0));
+        Assert.assertThat(FormattingUtils.safeArgs(point), is("[(3,4)]"));
+    }
+
+    @Test
+    public void testEventFields()
+    {
+        log.atInfo().kv("point", new Point(1, 2)).kv("label", new Label("a b")).msg("moved");
+        Assert.assertThat(recordingAppender.getContents(), is("moved point=(1,2) label=\"a b\"\n"));
+    }
+
+    @Test
+    public void testLimit()
+    {
+        final LogRenderable endless = new LogRenderable() {
+            @Override
+            public void renderTo(final Appendable out) throws IOException
+            {
+                for (int i = 0; i < ArgumentRenderers.ARGUMENT_LIMIT * 2; i++) {
+                    out.append('x');
+                }
+            }
+        };
+        final StringBuilder sb = new StringBuilder();
+        ArgumentRenderers.append(sb, endless);
+        Assert.assertThat(sb.length(), is(ArgumentRenderers.ARGUMENT_LIMIT + 3));
+    }
+
+    private static final class Point implements LogRenderable
+    {
+        private final int x;
+        private final int y;
+        private int toStringCalls = 0;
+
+        private Point(final int x, final int y)
+        {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public void renderTo(final Appendable out) throws IOException
+        {
+            out.append('(').append(Integer.toString(x)).append(',').append(Integer.toString(y)).append(')');
+        }
+
+        @Override
+        public String toString()
+        {
+            toStringCalls++;
+            return "Point";
+        }
+    }
+
+    private static final class Label implements LogRenderable
+    {
+        private final String text;
+
+        private Label(final String text)
+        {
+            this.text = text;
+        }
+
+        @Override
+        public void renderTo(final Appendable out) throws IOException
+        {
+            out.append(text);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitei.logging.Log.FormatStyle;
+import org.kitei.logging.Log.LogLevel;
+import org.kitei.logging.util.LoggingTestUtils;
+import org.kitei.logging.util.RecordingAppender;
+
+import com.google.common.base.Ticker;
+
+public class TestLogSite
+{
+    private RecordingAppender recordingAppender = null;
+    private Log log = null;
+
+    @Before
+    public void setUp()
+    {
+        recordingAppender = LoggingTestUtils.setupTestLogging("/log4j-logging-test.xml");
+        log = Log.forCategory("tc-info");
+    }
+
+    @After
+    public void tearDown()
+    {
+        recordingAppender = null;
+        log = null;
+    }
+
+    @Test
+    public void testEnabledSite()
+    {
+        final LogSite site = log.site(LogLevel.INFO, "slow query %s took %d ms");
+        Assert.assertThat(site.isEnabled(), is(true));
+
+        site.log("select 1", 25L);
+        site.log("select 2", 30);
+        Assert.assertThat(recordingAppender.getContents(), is("slow query select 1 took 25 ms\nslow query select 2 took 30 ms\n"));
+        Assert.assertThat(site.getCount(), is(2L));
+    }
+
+    @Test
+    public void testDisabledSite()
+    {
+        final LogSite site = log.site(LogLevel.DEBUG, "slow query %s took %d ms");
+        Assert.assertThat(site.isEnabled(), is(false));
+
+        site.log("select 1", 25L);
+        Assert.assertThat(recordingAppender.getContents(), is(""));
+        Assert.assertThat(site.getCount(), is(0L));
+
+        LogConfigurator.setLevel("tc-info", LogLevel.DEBUG);
+        site.log("select 1", 25L);
+        Assert.assertThat(recordingAppender.getContents(), is("slow query select 1 took 25 ms\n"));
+        Assert.assertThat(site.getCount(), is(1L));
+        LogConfigurator.setLevel("tc-info", LogLevel.INFO);
+    }
+
+    @Test
+    public void testPrimitivesAndArities()
+    {
+        log.site(LogLevel.WARN, "%d").log(42L);
+        log.site(LogLevel.WARN, "no args").log();
+        log.site(LogLevel.WARN, "%s %s %s %s %s").log("a", "b", "c", "d", "e");
+        Assert.assertThat(recordingAppender.getContents(), is("42\nno args\na b c d e\n"));
+    }
+
+    @Test
+    public void testThrowable()
+    {
+        final LogSite site = log.site(LogLevel.ERROR, "failed %s");
+        final IllegalStateException e = new IllegalStateException("boom");
+        site.log(e, "job");
+        Assert.assertThat(recordingAppender.getContents(), is("failed job\n"));
+        Assert.assertThat(recordingAppender.getThrowable(), is(e.toString()));
+    }
+
+    @Test
+    public void testBadPattern()
+    {
+        log.site(LogLevel.INFO, "%d").log("text");
+        Assert.assertThat(recordingAppender.getContents(), is("Invalid format string while logging: INFO '%d' [text]\n'%d' [text]\n"));
+    }
+
+    @Test
+    public void testPlaceholderSite()
+    {
+        final LogSite site = log.withFormatStyle(FormatStyle.PLACEHOLDER).site(LogLevel.INFO, "{} took {} ms");
+        site.log("select 1", 25L);
+        Assert.assertThat(recordingAppender.getContents(), is("select 1 took 25 ms\n"));
+    }
+
+    @Test
+    public void testEveryN()
+    {
+        final LogSite site = log.site(LogLevel.INFO, "tick %d").every(3);
+        for (int i = 0; i < 7; i++) {
+            site.log(i);
+        }
+        Assert.assertThat(recordingAppender.getContents(), is("tick 0\ntick 3 (suppressed 2 similar messages)\ntick 6 (suppressed 2 similar messages)\n"));
+        Assert.assertThat(site.getCount(), is(3L));
+        Assert.assertThat(site.getSuppressedCount(), is(4L));
+    }
+
+    @Test
+    public void testAtMost()
+    {
+        final AtomicLong now = new AtomicLong(1000L);
+        final LogSite site = log.site(LogLevel.WARN, "failure %d").atMost(2, 1, TimeUnit.SECONDS).withTicker(new Ticker() {
+            @Override
+            public long read()
+            {
+                return now.get();
+            }
+        });
+
+        for (int i = 0; i < 5; i++) {
+            site.log(i);
+        }
+        Assert.assertThat(recordingAppender.getContents(), is("failure 0\nfailure 1\n"));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        site.log(5);
+        site.log(6);
+        Assert.assertThat(recordingAppender.getContents(), is("failure 0\nfailure 1\nfailure 5 (suppressed 3 similar messages)\n"));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        site.log(7);
+        site.log(8);
+        site.log(9);
+        Assert.assertThat(site.getCount(), is(5L));
+        Assert.assertThat(site.getSuppressedCount(), is(5L));
+    }
+
+    @Test
+    public void testFormattedOnce()
+    {
+        final Log trimLog = LoggingTestUtils.trimmingLog("tc-info.site-trim");
+        final Exception e = new IllegalStateException("boom");
+
+        trimLog.site(LogLevel.INFO, "disk %d%% full").log(e, 100);
+        log.site(LogLevel.INFO, "disk %s full").log(e, "100%");
+        Assert.assertThat(recordingAppender.getContents(), is("disk 100% full: boom\ndisk 100% full\n"));
+    }
+
+    @Test
+    public void testAtMostFormattedOnce()
+    {
+        final Log trimLog = LoggingTestUtils.trimmingLog("tc-info.site-limited");
+        final Exception e = new IllegalStateException("boom");
+        final AtomicLong now = new AtomicLong(1000L);
+        final LogSite site = trimLog.site(LogLevel.WARN, "disk %s full").atMost(1, 1, TimeUnit.SECONDS).withTicker(new Ticker() {
+            @Override
+            public long read()
+            {
+                return now.get();
+            }
+        });
+
+        site.log(e, "90%");
+        site.log(e, "95%");
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        site.log(e, "100%");
+        Assert.assertThat(recordingAppender.getContents(), is("disk 90% full: boom\ndisk 100% full (suppressed 1 similar messages): boom\n"));
+    }
+
+    @Test
+    public void testDisabledCallsAreNotSuppressed()
+    {
+        final LogSite site = log.site(LogLevel.DEBUG, "hidden").every(2);
+        site.log();
+        site.log();
+        Assert.assertThat(site.getSuppressedCount(), is(0L));
+    }
+}
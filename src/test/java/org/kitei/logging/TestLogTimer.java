@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import java.lang.ref.WeakReference;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitei.logging.util.LoggingTestUtils;
+import org.kitei.logging.util.RecordingAppender;
+
+public class TestLogTimer
+{
+    private RecordingAppender recordingAppender = null;
+
+    @Before
+    public void setUp()
+    {
+        recordingAppender = LoggingTestUtils.setupTestLogging("/log4j-logging-test.xml");
+    }
+
+    @After
+    public void tearDown()
+    {
+        recordingAppender = null;
+    }
+
+    @Test
+    public void testSummary()
+    {
+        final Log log = Log.forCategory("tc-info");
+        for (int i = 0; i < 10; i++) {
+            try (LogTimer timer = log.timer("work")) {
+                Assert.assertThat(timer.elapsed(TimeUnit.NANOSECONDS) >= 0L, is(true));
+            }
+        }
+        Assert.assertThat(recordingAppender.getContents(), is(""));
+
+        log.reportTimers();
+        Assert.assertThat(recordingAppender.getContents().startsWith("timer work: count=10 p50="), is(true));
+
+        recordingAppender.clear();
+        log.reportTimers();
+        Assert.assertThat(recordingAppender.getContents(), is(""));
+    }
+
+    @Test
+    public void testSummaryIgnoresLocale()
+    {
+        final Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        try {
+            Locale.setDefault(Locale.Category.FORMAT, Locale.GERMANY);
+            final Log log = Log.forCategory("tc-info");
+            log.timer("localized").close();
+            log.reportTimers();
+            Assert.assertThat(recordingAppender.getContents().matches("timer localized: count=1 p50=[0-9]+\\.[0-9]{3}ms .*\n"), is(true));
+        }
+        finally {
+            Locale.setDefault(Locale.Category.FORMAT, locale);
+        }
+    }
+
+    @Test
+    public void testTimerNamesBounded()
+    {
+        final LogTimers timers = new LogTimers(Log.forCategory("tc-info"));
+        for (int i = 0; i < LogTimers.MAX_TIMERS + 10; i++) {
+            timers.start("timer-" + i).close();
+        }
+        timers.run();
+
+        final String contents = recordingAppender.getContents();
+        Assert.assertThat(contents.split("\n").length, is(LogTimers.MAX_TIMERS + 1));
+        Assert.assertThat(contents.contains("timer <other>: count=10 "), is(true));
+    }
+
+    @Test
+    public void testDisabledLevel()
+    {
+        final Log log = Log.forCategory("tc-warn");
+        try (LogTimer timer = log.timer("work")) {
+            Assert.assertThat(timer.elapsed(TimeUnit.NANOSECONDS), is(0L));
+        }
+        log.reportTimers();
+        Assert.assertThat(recordingAppender.getContents(), is(""));
+    }
+
+    @Test
+    public void testScheduledTimersCollectable() throws Exception
+    {
+        final WeakReference<LogTimers> timers = new WeakReference<LogTimers>(new LogTimers(Log.forCategory("tc-info")));
+        for (int i = 0; i < 50 && timers.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10L);
+        }
+        Assert.assertThat(timers.get() == null, is(true));
+    }
+
+    @Test
+    public void testBuckets()
+    {
+        for (long value = 0L; value < 100000000L; value = value * 3 / 2 + 1) {
+            final long bucketValue = TimerHistogram.bucketValue(TimerHistogram.bucket(value));
+            Assert.assertThat(Math.abs(bucketValue - value) <= value / 14 + 1, is(true));
+        }
+        Assert.assertThat(TimerHistogram.bucket(Long.MAX_VALUE) >= 0, is(true));
+    }
+
+    @Test
+    public void testPercentiles()
+    {
+        final TimerHistogram histogram = new TimerHistogram("test");
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        final TimerHistogram.Snapshot snapshot = histogram.drain();
+        Assert.assertThat(snapshot.getCount(), is(1000L));
+        Assert.assertThat(snapshot.getMax(), is(TimeUnit.MICROSECONDS.toNanos(1000)));
+        Assert.assertThat(Math.abs(snapshot.getPercentile(0.5) - 500000L) < 35000L, is(true));
+        Assert.assertThat(Math.abs(snapshot.getPercentile(0.99) - 990000L) < 70000L, is(true));
+        Assert.assertThat(histogram.drain().getCount(), is(0L));
+    }
+}
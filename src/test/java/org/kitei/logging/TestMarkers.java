@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitei.logging.Log.LogLevel;
+import org.kitei.logging.util.LoggingTestUtils;
+import org.kitei.logging.util.RecordingAppender;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+public class TestMarkers
+{
+    private static final Marker AUDIT = MarkerFactory.getMarker("audit");
+    private static final Marker SECURITY = MarkerFactory.getMarker("security");
+    private static final Marker LOGIN = MarkerFactory.getDetachedMarker("login");
+
+    static {
+        LOGIN.add(SECURITY);
+    }
+
+    private RecordingAppender recordingAppender = null;
+    private Log log = null;
+
+    @Before
+    public void setUp()
+    {
+        recordingAppender = LoggingTestUtils.setupTestLogging("/log4j-logging-test.xml");
+        log = Log.forCategory("tc-info");
+    }
+
+    @After
+    public void tearDown()
+    {
+        LogConfigurator.setMarkerFilter(MarkerFilter.ALLOW_ALL);
+        recordingAppender = null;
+        log = null;
+    }
+
+    @Test
+    public void testMarkedMessages()
+    {
+        log.info(AUDIT, "plain");
+        log.warn(AUDIT, "user %s", "alice");
+        log.log(LogLevel.ERROR, SECURITY, "level %d", 3);
+        log.debug(AUDIT, "hidden");
+        Assert.assertThat(recordingAppender.getContents(), is("plain\nuser alice\nlevel 3\n"));
+    }
+
+    @Test
+    public void testDeny()
+    {
+        LogConfigurator.setMarkerFilter(MarkerFilter.deny(SECURITY));
+        Assert.assertThat(log.isEnabled(LogLevel.INFO, AUDIT), is(true));
+        Assert.assertThat(log.isEnabled(LogLevel.INFO, SECURITY), is(false));
+        Assert.assertThat(log.isEnabled(LogLevel.INFO, LOGIN), is(false));
+        Assert.assertThat(log.isEnabled(LogLevel.INFO, null), is(true));
+
+        log.info(SECURITY, "denied");
+        log.info(LOGIN, "denied by reference");
+        log.info(AUDIT, "allowed");
+        log.info("unmarked");
+        Assert.assertThat(recordingAppender.getContents(), is("allowed\nunmarked\n"));
+    }
+
+    @Test
+    public void testAllow()
+    {
+        final MarkerFilter filter = MarkerFilter.deny(SECURITY).allowing(LOGIN);
+        Assert.assertThat(filter.isEnabled(SECURITY), is(false));
+        Assert.assertThat(filter.isEnabled(LOGIN), is(true));
+        Assert.assertThat(filter.isEnabled(AUDIT), is(true));
+    }
+
+    @Test
+    public void testOverflow()
+    {
+        final Marker[] markers = new Marker[80];
+        for (int i = 0; i < markers.length; i++) {
+            markers[i] = MarkerFactory.getMarker("overflow-" + i);
+            Assert.assertThat(log.isEnabled(LogLevel.INFO, markers[i]), is(true));
+        }
+        final Marker reference = MarkerFactory.getDetachedMarker("overflow-reference");
+        reference.add(markers[75]);
+
+        LogConfigurator.setMarkerFilter(MarkerFilter.deny(markers[75]).allowing(markers[78]));
+        Assert.assertThat(log.isEnabled(LogLevel.INFO, markers[75]), is(false));
+        Assert.assertThat(log.isEnabled(LogLevel.INFO, reference), is(false));
+        Assert.assertThat(log.isEnabled(LogLevel.INFO, markers[76]), is(true));
+        Assert.assertThat(log.isEnabled(LogLevel.INFO, markers[0]), is(true));
+
+        markers[78].add(markers[75]);
+        Assert.assertThat(MarkerFilter.active().isEnabled(markers[78]), is(true));
+    }
+
+    @Test
+    public void testThrowable()
+    {
+        final IllegalStateException e = new IllegalStateException("boom");
+        log.error(AUDIT, e, "failed %s", "job");
+        Assert.assertThat(recordingAppender.getContents(), is("failed job\n"));
+        Assert.assertThat(recordingAppender.getThrowable(), is(e.toString()));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import org.apache.log4j.Level;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitei.logging.Log.FormatStyle;
+import org.kitei.logging.util.LoggingTestUtils;
+import org.kitei.logging.util.RecordingAppender;
+import org.kitei.system.SystemPropertyKeys;
+
+public class TestPlaceholderLogging
+{
+    private RecordingAppender recordingAppender = null;
+    private Log log = null;
+
+    @Before
+    public void setUp()
+    {
+        recordingAppender = LoggingTestUtils.setupTestLogging("/log4j-logging-test.xml");
+        System.setProperty(SystemPropertyKeys.LOGGING_TRIM_EXCEPTIONS, "true");
+        log = Log.forCategory("tc-info").withFormatStyle(FormatStyle.PLACEHOLDER);
+    }
+
+    @After
+    public void tearDown()
+    {
+        recordingAppender = null;
+        log = null;
+    }
+
+    @Test
+    public void testStyle()
+    {
+        Assert.assertThat(log.getFormatStyle(), is(FormatStyle.PLACEHOLDER));
+        Assert.assertThat(Log.forCategory("tc-info").getFormatStyle(), is(FormatStyle.PRINTF));
+        Assert.assertThat(log.withFormatStyle(FormatStyle.PLACEHOLDER), is(log));
+    }
+
+    @Test
+    public void testPlaceholders()
+    {
+        log.debug("{} took {} ms", "query", 12);
+        Assert.assertThat(recordingAppender.getContents(), is(""));
+
+        log.info("{} took {} ms", "query", 12);
+        log.warn("{} of {} {} done with {}", 1, 2, "parts", "%s");
+        log.error("{}", 42L);
+        log.info("{} {} {} {} {}", new Object[] { 1, 2, 3, 4, 5 });
+        Assert.assertThat(recordingAppender.getContents(), is("query took 12 ms\n1 of 2 parts done with %s\n42\n1 2 3 4 5\n"));
+        Assert.assertThat(recordingAppender.getLevel(), is(Level.INFO));
+    }
+
+    @Test
+    public void testNullArguments()
+    {
+        log.info("x {}", (Object[]) null);
+        Assert.assertThat(recordingAppender.getContents(), is("x null\n"));
+    }
+
+    @Test
+    public void testSummarizedException()
+    {
+        final Exception e = new IllegalArgumentException("wrong! do it again!");
+
+        log.warn(e, "failed {}", "request");
+        Assert.assertThat(recordingAppender.getContents(), is("failed request: wrong! do it again!\n"));
+    }
+}
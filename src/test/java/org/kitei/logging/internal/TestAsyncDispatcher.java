@@ -0,0 +1,424 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging.internal;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import java.io.BufferedWriter;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.WriterAppender;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitei.logging.AsyncOverflow;
+import org.kitei.logging.Log;
+import org.kitei.logging.LogBatch;
+import org.kitei.logging.LogConfigurator;
+import org.kitei.logging.LogContext;
+import org.kitei.logging.util.LoggingTestUtils;
+import org.kitei.logging.util.RecordingAppender;
+
+public class TestAsyncDispatcher
+{
+    private static final String DROPPED = " log messages dropped, the asynchronous logging queue was full\n";
+
+    private RecordingAppender recordingAppender = null;
+    private Log log = null;
+    private BlockingAppender blockingAppender = null;
+
+    @Before
+    public void setUp()
+    {
+        recordingAppender = LoggingTestUtils.setupTestLogging("/log4j-logging-test.xml");
+        log = Log.forCategory("tc-debug");
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (blockingAppender != null) {
+            blockingAppender.release.countDown();
+            LogManager.getLogger("tc-debug").removeAppender(blockingAppender);
+            blockingAppender = null;
+        }
+        LogConfigurator.stopAsync();
+        recordingAppender = null;
+        log = null;
+    }
+
+    @Test
+    public void testWrittenInOrder()
+    {
+        LogConfigurator.startAsync(16, AsyncOverflow.BLOCK);
+        Assert.assertThat(AsyncDispatcher.isRunning(), is(true));
+        for (int i = 0; i < 100; i++) {
+            log.info("message %d", i);
+        }
+        LogConfigurator.stopAsync();
+        Assert.assertThat(AsyncDispatcher.isRunning(), is(false));
+
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            expected.append("message ").append(i).append('\n');
+        }
+        Assert.assertThat(recordingAppender.getContents(), is(expected.toString()));
+    }
+
+    @Test
+    public void testSynchronousAfterStop()
+    {
+        LogConfigurator.startAsync(16, AsyncOverflow.BLOCK);
+        LogConfigurator.stopAsync();
+        log.info("sync");
+        Assert.assertThat(recordingAppender.getContents(), is("sync\n"));
+    }
+
+    @Test
+    public void testCapturesLoggingThread()
+    {
+        final RecordingAppender layoutAppender = new RecordingAppender();
+        layoutAppender.setLayout(new ContextPatternLayout("%t %K %m%n"));
+        final Logger logger = LogManager.getLogger("tc-debug");
+        logger.addAppender(layoutAppender);
+        try {
+            LogConfigurator.startAsync(16, AsyncOverflow.BLOCK);
+            try (LogContext.Scope scope = LogContext.put("user", "1")) {
+                log.info("hello");
+            }
+            LogConfigurator.stopAsync();
+            Assert.assertThat(layoutAppender.getContents(), is(Thread.currentThread().getName() + " user=1 hello" + System.getProperty("line.separator")));
+        }
+        finally {
+            logger.removeAppender(layoutAppender);
+        }
+    }
+
+    @Test
+    public void testThrowable()
+    {
+        final Exception e = new IllegalStateException("boom");
+        LogConfigurator.startAsync(16, AsyncOverflow.BLOCK);
+        log.warn(e, "failed");
+        LogConfigurator.stopAsync();
+        Assert.assertThat(recordingAppender.getContents(), is("failed\n"));
+        Assert.assertThat(recordingAppender.getThrowable(), is(e.toString()));
+    }
+
+    @Test
+    public void testBatch()
+    {
+        LogConfigurator.startAsync(16, AsyncOverflow.BLOCK);
+        log.info("before");
+        try (LogBatch batch = log.batch()) {
+            batch.info("one");
+            batch.info("two");
+        }
+        log.info("after");
+        LogConfigurator.stopAsync();
+        Assert.assertThat(recordingAppender.getContents(), is("before\none\ntwo\nafter\n"));
+    }
+
+    @Test
+    public void testDrop() throws Exception
+    {
+        LogConfigurator.startAsync(4, AsyncOverflow.DROP);
+        blockConsumer();
+        for (int i = 0; i < 10; i++) {
+            log.info("message %d", i);
+        }
+        Assert.assertThat(AsyncDispatcher.getDropped(), is(6L));
+        blockingAppender.release.countDown();
+        LogConfigurator.stopAsync();
+        Assert.assertThat(recordingAppender.getContents(), is("first\n6" + DROPPED + "message 0\nmessage 1\nmessage 2\nmessage 3\n"));
+    }
+
+    @Test
+    public void testDropDebugFirst() throws Exception
+    {
+        LogConfigurator.startAsync(8, AsyncOverflow.DROP_DEBUG_FIRST);
+        blockConsumer();
+        for (int i = 0; i < 10; i++) {
+            log.debug("debug %d", i);
+        }
+        log.info("info 0");
+        log.info("info 1");
+        blockingAppender.release.countDown();
+        LogConfigurator.stopAsync();
+        Assert.assertThat(recordingAppender.getContents(),
+            is("first\n4" + DROPPED + "debug 0\ndebug 1\ndebug 2\ndebug 3\ndebug 4\ndebug 5\ninfo 0\ninfo 1\n"));
+    }
+
+    @Test
+    public void testBlock() throws Exception
+    {
+        LogConfigurator.startAsync(2, AsyncOverflow.BLOCK);
+        blockConsumer();
+        final Thread producer = new Thread() {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < 5; i++) {
+                    log.info("message %d", i);
+                }
+            }
+        };
+        producer.start();
+        producer.join(200L);
+        Assert.assertThat(producer.isAlive(), is(true));
+
+        blockingAppender.release.countDown();
+        producer.join();
+        LogConfigurator.stopAsync();
+        Assert.assertThat(recordingAppender.getContents(), is("first\nmessage 0\nmessage 1\nmessage 2\nmessage 3\nmessage 4\n"));
+    }
+
+    @Test
+    public void testFlushedWhenLastEventFiltered()
+    {
+        final StringWriter out = new StringWriter();
+        final WriterAppender appender = new WriterAppender(new PatternLayout("%m%n"), new BufferedWriter(out));
+        appender.setThreshold(Level.INFO);
+        final Logger logger = LogManager.getLogger("tc-debug");
+        logger.addAppender(appender);
+        try {
+            LogConfigurator.startAsync(16, AsyncOverflow.BLOCK);
+            log.info("first");
+            log.debug("second");
+            LogConfigurator.stopAsync();
+            Assert.assertThat(out.toString(), is("first" + System.getProperty("line.separator")));
+        }
+        finally {
+            logger.removeAppender(appender);
+        }
+    }
+
+    @Test
+    public void testConsumerError() throws Exception
+    {
+        LogConfigurator.startAsync(2, AsyncOverflow.BLOCK);
+        blockConsumer();
+        blockingAppender.fail = true;
+        final Thread producer = new Thread() {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < 5; i++) {
+                    log.info("message %d", i);
+                }
+            }
+        };
+        producer.start();
+        producer.join(200L);
+        Assert.assertThat(producer.isAlive(), is(true));
+
+        blockingAppender.release.countDown();
+        producer.join(5000L);
+        Assert.assertThat(producer.isAlive(), is(false));
+        Assert.assertThat(recordingAppender.getContents(), is("message 0\nmessage 1\nmessage 2\nmessage 3\nmessage 4\n"));
+    }
+
+    @Test
+    public void testNoLossOnStop() throws Exception
+    {
+        final int threads = 4;
+        final int messages = 5000;
+        final AtomicInteger appended = new AtomicInteger();
+        final AppenderSkeleton countingAppender = new AppenderSkeleton() {
+            @Override
+            protected void append(final LoggingEvent event)
+            {
+                appended.incrementAndGet();
+            }
+
+            @Override
+            public void close()
+            {
+            }
+
+            @Override
+            public boolean requiresLayout()
+            {
+                return false;
+            }
+        };
+        final Logger logger = LogManager.getLogger("tc-debug.count");
+        logger.setAdditivity(false);
+        logger.addAppender(countingAppender);
+        LogConfigurator.startAsync(1024, AsyncOverflow.BLOCK);
+
+        final Log countLog = Log.forCategory("tc-debug.count");
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] producers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            producers[i] = new Thread() {
+                @Override
+                public void run()
+                {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < messages; j++) {
+                        countLog.info("message");
+                    }
+                }
+            };
+            producers[i].start();
+        }
+        start.countDown();
+        Thread.sleep(1L);
+        LogConfigurator.stopAsync();
+        for (final Thread producer : producers) {
+            producer.join();
+        }
+        Assert.assertThat(appended.get(), is(threads * messages));
+    }
+
+    @Test
+    public void testStripeCount()
+    {
+        LogConfigurator.startAsync(1024, 3, AsyncOverflow.BLOCK);
+        Assert.assertThat(AsyncDispatcher.getStripes(), is(4));
+        LogConfigurator.stopAsync();
+
+        LogConfigurator.startAsync(1024, 1000, AsyncOverflow.BLOCK);
+        Assert.assertThat(AsyncDispatcher.getStripes(), is(AsyncDispatcher.MAX_STRIPES));
+    }
+
+    @Test
+    public void testStripedThreadOrder() throws Exception
+    {
+        final int threads = 8;
+        final int messages = 200;
+        LogConfigurator.startAsync(1024, threads, AsyncOverflow.BLOCK);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] producers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int id = i;
+            producers[i] = new Thread() {
+                @Override
+                public void run()
+                {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < messages; j++) {
+                        log.info("%d %d", id, j);
+                    }
+                }
+            };
+            producers[i].start();
+        }
+        start.countDown();
+        for (final Thread producer : producers) {
+            producer.join();
+        }
+        LogConfigurator.stopAsync();
+
+        final int[] next = new int[threads];
+        for (final String line : recordingAppender.getContents().split("\n")) {
+            final String[] fields = line.split(" ");
+            final int id = Integer.parseInt(fields[0]);
+            Assert.assertThat(Integer.parseInt(fields[1]), is(next[id]));
+            next[id]++;
+        }
+        for (int i = 0; i < threads; i++) {
+            Assert.assertThat(next[i], is(messages));
+        }
+    }
+
+    @Test
+    public void testStripedTimeOrder() throws Exception
+    {
+        LogConfigurator.startAsync(1024, 4, AsyncOverflow.BLOCK);
+        blockConsumer();
+        for (int i = 0; i < 4; i++) {
+            final int id = i;
+            final Thread producer = new Thread() {
+                @Override
+                public void run()
+                {
+                    log.info("message %d", id);
+                }
+            };
+            producer.start();
+            producer.join();
+        }
+        blockingAppender.release.countDown();
+        LogConfigurator.stopAsync();
+        Assert.assertThat(recordingAppender.getContents(), is("first\nmessage 0\nmessage 1\nmessage 2\nmessage 3\n"));
+    }
+
+    /**
+     * Logs a message and waits until the consumer thread hangs in an appender.
+     */
+    private void blockConsumer() throws InterruptedException
+    {
+        blockingAppender = new BlockingAppender();
+        LogManager.getLogger("tc-debug").addAppender(blockingAppender);
+        log.info("first");
+        Assert.assertThat(blockingAppender.entered.await(5, TimeUnit.SECONDS), is(true));
+    }
+
+    private static final class BlockingAppender extends AppenderSkeleton
+    {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile boolean fail = false;
+
+        @Override
+        protected void append(final LoggingEvent event)
+        {
+            entered.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (fail) {
+                fail = false;
+                throw new Error("appender failed");
+            }
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public boolean requiresLayout()
+        {
+            return false;
+        }
+    }
+}
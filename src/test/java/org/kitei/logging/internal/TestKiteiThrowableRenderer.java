@@ -0,0 +1,141 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging.internal;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestKiteiThrowableRenderer
+{
+    @Test
+    public void testPlainTrace()
+    {
+        final Exception e = failure("boom", frame("a.A", "run"), frame("b.B", "call"));
+        Assert.assertThat(Arrays.asList(new KiteiThrowableRenderer().doRender(e)), is(Arrays.asList(
+            "java.lang.IllegalStateException: boom",
+            "\tat a.A.run(A.java:1)",
+            "\tat b.B.call(B.java:1)")));
+    }
+
+    @Test
+    public void testFolding()
+    {
+        final Exception e = failure("boom",
+                                    frame("a.A", "run"),
+                                    frame("sun.reflect.NativeMethodAccessorImpl", "invoke0"),
+                                    frame("sun.reflect.NativeMethodAccessorImpl", "invoke"),
+                                    frame("java.lang.reflect.Method", "invoke"),
+                                    frame("sun.reflect.DelegatingMethodAccessorImpl", "invoke"),
+                                    frame("sun.reflect.DelegatingMethodAccessorImpl", "invoke"),
+                                    frame("sun.reflect.DelegatingMethodAccessorImpl", "invoke"),
+                                    frame("b.B", "call"));
+        Assert.assertThat(Arrays.asList(new KiteiThrowableRenderer().doRender(e)), is(Arrays.asList(
+            "java.lang.IllegalStateException: boom",
+            "\tat a.A.run(A.java:1)",
+            "\tat sun.reflect.NativeMethodAccessorImpl.invoke0(NativeMethodAccessorImpl.java:1)",
+            "\tat sun.reflect.NativeMethodAccessorImpl.invoke(NativeMethodAccessorImpl.java:1)",
+            "\tat java.lang.reflect.Method.invoke(Method.java:1)",
+            "\t... 3 frames in sun.reflect",
+            "\tat b.B.call(B.java:1)")));
+    }
+
+    @Test
+    public void testDepthAndCommonFrames()
+    {
+        final KiteiThrowableRenderer renderer = new KiteiThrowableRenderer();
+        renderer.setMaxDepth(2);
+
+        final StackTraceElement common = frame("main.Main", "main");
+        final Exception cause = failure("cause", frame("c.C", "fail"), common);
+        final Exception e = failure("boom", frame("a.A", "run"), frame("b.B", "call"), frame("x.X", "go"), common);
+        e.initCause(cause);
+
+        Assert.assertThat(Arrays.asList(renderer.doRender(e)), is(Arrays.asList(
+            "java.lang.IllegalStateException: boom",
+            "\tat a.A.run(A.java:1)",
+            "\tat b.B.call(B.java:1)",
+            "\t... 2 more frames",
+            "Caused by: java.lang.IllegalStateException: cause",
+            "\tat c.C.fail(C.java:1)",
+            "\t... 1 more")));
+    }
+
+    @Test
+    public void testCauseLimitAndCycles()
+    {
+        final KiteiThrowableRenderer renderer = new KiteiThrowableRenderer();
+        renderer.setMaxCauses(1);
+
+        final Exception e = failure("one");
+        final Exception two = failure("two");
+        e.initCause(two);
+        two.initCause(failure("three"));
+        Assert.assertThat(Arrays.asList(renderer.doRender(e)), is(Arrays.asList(
+            "java.lang.IllegalStateException: one",
+            "Caused by: java.lang.IllegalStateException: two",
+            "Caused by: ... more causes omitted")));
+
+        final Exception first = failure("first");
+        final Exception second = failure("second");
+        first.initCause(second);
+        second.addSuppressed(first);
+        Assert.assertThat(Arrays.asList(new KiteiThrowableRenderer().doRender(first)), is(Arrays.asList(
+            "java.lang.IllegalStateException: first",
+            "Caused by: java.lang.IllegalStateException: second",
+            "\tSuppressed: [CIRCULAR REFERENCE:java.lang.IllegalStateException: first]")));
+    }
+
+    @Test
+    public void testCache()
+    {
+        final KiteiThrowableRenderer renderer = new KiteiThrowableRenderer();
+        final Exception e = failure("boom", frame("a.A", "run"));
+        Assert.assertThat(renderer.doRender(e)[1], is(sameInstance(renderer.doRender(e)[1])));
+    }
+
+    @Test
+    public void testChangesAfterRendering()
+    {
+        final KiteiThrowableRenderer renderer = new KiteiThrowableRenderer();
+        final Exception e = failure("boom", frame("a.A", "run"));
+        Assert.assertThat(renderer.doRender(e).length, is(2));
+
+        e.addSuppressed(failure("suppressed", frame("c.C", "close")));
+        e.initCause(failure("cause", frame("b.B", "call")));
+        Assert.assertThat(Arrays.asList(renderer.doRender(e)), is(Arrays.asList(
+            "java.lang.IllegalStateException: boom",
+            "\tat a.A.run(A.java:1)",
+            "\tSuppressed: java.lang.IllegalStateException: suppressed",
+            "\t\tat c.C.close(C.java:1)",
+            "Caused by: java.lang.IllegalStateException: cause",
+            "\tat b.B.call(B.java:1)")));
+    }
+
+    private static Exception failure(final String message, final StackTraceElement... frames)
+    {
+        final Exception e = new IllegalStateException(message);
+        e.setStackTrace(frames);
+        return e;
+    }
+
+    private static StackTraceElement frame(final String className, final String method)
+    {
+        return new StackTraceElement(className, method, className.substring(className.lastIndexOf('.') + 1) + ".java", 1);
+    }
+}
@@ -15,9 +15,12 @@ package org.kitei.logging.internal;
 
 import java.net.URL;
 
+import org.apache.log4j.LogManager;
+import org.apache.log4j.spi.ThrowableRendererSupport;
 import org.junit.Assert;
 import org.junit.Test;
 import org.kitei.logging.internal.Log4jConfigurator;
+import org.kitei.system.SystemPropertyKeys;
 
 public class TestLog4jConfigurator
 {
@@ -37,4 +40,23 @@ public class TestLog4jConfigurator
         Assert.assertTrue(url.toString().startsWith("file:/"));
         Assert.assertTrue(url.toString().endsWith("/log4j-logging-test.xml"));
     }
+
+    @Test
+    public void throwableRendererIsOptIn()
+    {
+        final ThrowableRendererSupport support = (ThrowableRendererSupport) LogManager.getLoggerRepository();
+        support.setThrowableRenderer(null);
+        Log4jConfigurator.configure();
+        Assert.assertNull(support.getThrowableRenderer());
+
+        System.setProperty(SystemPropertyKeys.LOGGING_COMPACT_STACK_TRACES, "true");
+        try {
+            Log4jConfigurator.configure();
+            Assert.assertTrue(support.getThrowableRenderer() instanceof KiteiThrowableRenderer);
+        }
+        finally {
+            System.clearProperty(SystemPropertyKeys.LOGGING_COMPACT_STACK_TRACES);
+            support.setThrowableRenderer(null);
+        }
+    }
 }
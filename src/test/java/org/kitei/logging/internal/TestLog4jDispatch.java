@@ -0,0 +1,128 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging.internal;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitei.logging.Log;
+import org.kitei.logging.LogConfigurator;
+import org.kitei.logging.util.LoggingTestUtils;
+import org.kitei.logging.util.RecordingAppender;
+
+public class TestLog4jDispatch
+{
+    private RecordingAppender recordingAppender = null;
+    private Log log = null;
+
+    @Before
+    public void setUp()
+    {
+        recordingAppender = LoggingTestUtils.setupTestLogging("/log4j-logging-test.xml");
+        log = Log.forCategory("tc-info");
+    }
+
+    @After
+    public void tearDown()
+    {
+        final Logger logger = LogManager.getLogger("tc-info");
+        logger.removeAllAppenders();
+        logger.setAdditivity(true);
+        LogConfigurator.levelsChanged();
+        recordingAppender = null;
+        log = null;
+    }
+
+    @Test
+    public void testAppenderChanges()
+    {
+        log.info("one");
+
+        final RecordingAppender categoryAppender = LoggingTestUtils.addAppender("tc-info");
+        log.info("two");
+        Assert.assertThat(categoryAppender.getContents(), is("two\n"));
+
+        LogManager.getLogger("tc-info").removeAppender(categoryAppender);
+        log.info("three");
+        Assert.assertThat(categoryAppender.getContents(), is("two\n"));
+        Assert.assertThat(recordingAppender.getContents(), is("one\ntwo\nthree\n"));
+    }
+
+    @Test
+    public void testAdditivity()
+    {
+        final RecordingAppender categoryAppender = LoggingTestUtils.addAppender("tc-info");
+        log.info("one");
+
+        LogManager.getLogger("tc-info").setAdditivity(false);
+        LogConfigurator.levelsChanged();
+        log.info("two");
+
+        Assert.assertThat(categoryAppender.getContents(), is("one\ntwo\n"));
+        Assert.assertThat(recordingAppender.getContents(), is("one\n"));
+    }
+
+    @Test
+    public void testDoesNotLockCategories() throws Exception
+    {
+        log.info("warm up");
+
+        final Logger root = LogManager.getRootLogger();
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread holder = new Thread() {
+            @Override
+            public void run()
+            {
+                synchronized (root) {
+                    locked.countDown();
+                    try {
+                        release.await();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        holder.start();
+        try {
+            Assert.assertThat(locked.await(5, TimeUnit.SECONDS), is(true));
+
+            final Thread writer = new Thread() {
+                @Override
+                public void run()
+                {
+                    log.info("while locked");
+                }
+            };
+            writer.start();
+            writer.join(5000L);
+            Assert.assertThat(writer.isAlive(), is(false));
+            Assert.assertThat(recordingAppender.getContents(), is("warm up\nwhile locked\n"));
+        }
+        finally {
+            release.countDown();
+            holder.join();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitei.logging.internal;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Hierarchy;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitei.logging.Log;
+import org.kitei.logging.LogBatch;
+import org.kitei.logging.LogConfigurator;
+import org.kitei.logging.util.LoggingTestUtils;
+import org.kitei.logging.util.RecordingAppender;
+
+import com.google.common.base.Predicate;
+
+public class TestVirtualThreadDispatch
+{
+    private static final int THREADS = 100000;
+
+    private static final Predicate<Thread> VIRTUAL_THREADS = new Predicate<Thread>() {
+        @Override
+        public boolean apply(final Thread thread)
+        {
+            return VirtualThreads.isVirtual(thread);
+        }
+    };
+
+    private RecordingAppender recordingAppender = null;
+    private Log log = null;
+
+    @Before
+    public void setUp()
+    {
+        recordingAppender = LoggingTestUtils.setupTestLogging("/log4j-logging-test.xml");
+        log = Log.forCategory("tc-info");
+    }
+
+    @After
+    public void tearDown()
+    {
+        LogConfigurator.stopAsync();
+        recordingAppender = null;
+        log = null;
+    }
+
+    @Test
+    public void testPlatformThreadWritesDirectly()
+    {
+        Assert.assertThat(VirtualThreads.isVirtual(Thread.currentThread()), is(false));
+        log.info("direct");
+        Assert.assertThat(recordingAppender.getContents(), is("direct\n"));
+        Assert.assertThat(AsyncDispatcher.isHandoffRunning(), is(false));
+    }
+
+    @Test
+    public void testVirtualThreadsHandOff() throws Exception
+    {
+        Assume.assumeTrue(VirtualThreads.isSupported());
+
+        final CountingAppender appender = new CountingAppender(VIRTUAL_THREADS);
+        final Logger logger = LogManager.getLogger("tc-info");
+        logger.addAppender(appender);
+        try {
+            final ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            for (int i = 0; i < THREADS; i++) {
+                final int id = i;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        log.info("message %d", id);
+                    }
+                });
+            }
+            executor.shutdown();
+            Assert.assertThat(executor.awaitTermination(60, TimeUnit.SECONDS), is(true));
+            Assert.assertThat(AsyncDispatcher.isHandoffRunning(), is(true));
+
+            LogConfigurator.stopAsync();
+            Assert.assertThat(appender.appended.get(), is(THREADS));
+            Assert.assertThat(appender.appendedOnHandoffThread.get(), is(0));
+        }
+        finally {
+            logger.removeAppender(appender);
+        }
+    }
+
+    @Test
+    public void testInjectedThreadsHandOff() throws Exception
+    {
+        final Predicate<Thread> handoffThreads = new Predicate<Thread>() {
+            @Override
+            public boolean apply(final Thread thread)
+            {
+                return thread.getName().startsWith("handoff-test-");
+            }
+        };
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(8, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable)
+            {
+                return new Thread(runnable, "handoff-test-" + threadCount.incrementAndGet());
+            }
+        });
+
+        final CountingAppender appender = new CountingAppender(handoffThreads);
+        final Logger logger = LogManager.getLogger("tc-info");
+        logger.addAppender(appender);
+        AsyncDispatcher.setHandoffThreads(handoffThreads);
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                final int id = i;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        log.info("message %d", id);
+                    }
+                });
+            }
+            executor.shutdown();
+            Assert.assertThat(executor.awaitTermination(60, TimeUnit.SECONDS), is(true));
+            Assert.assertThat(AsyncDispatcher.isHandoffRunning(), is(true));
+
+            LogConfigurator.stopAsync();
+            Assert.assertThat(AsyncDispatcher.isHandoffRunning(), is(false));
+            Assert.assertThat(appender.appended.get(), is(THREADS));
+            Assert.assertThat(appender.appendedOnHandoffThread.get(), is(0));
+        }
+        finally {
+            AsyncDispatcher.setHandoffThreads(null);
+            logger.removeAppender(appender);
+        }
+    }
+
+    @Test
+    public void testHandoffTakesNoLog4jLocks() throws Exception
+    {
+        final Predicate<Thread> handoffThreads = new Predicate<Thread>() {
+            @Override
+            public boolean apply(final Thread thread)
+            {
+                return thread.getName().startsWith("handoff-test-");
+            }
+        };
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(8, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable)
+            {
+                return new Thread(runnable, "handoff-test-" + threadCount.incrementAndGet());
+            }
+        });
+
+        final CountingAppender appender = new CountingAppender(handoffThreads);
+        final Logger logger = LogManager.getLogger("tc-info");
+        logger.addAppender(appender);
+        AsyncDispatcher.setHandoffThreads(handoffThreads);
+        try {
+            // Starts the handoff dispatcher.
+            executor.submit(new Runnable() {
+                @Override
+                public void run()
+                {
+                    log.info("start");
+                }
+            }).get();
+
+            // Hierarchy.getLogger() synchronizes on the logger table.
+            final Field loggerTable = Hierarchy.class.getDeclaredField("ht");
+            loggerTable.setAccessible(true);
+            final Object hierarchyLock = loggerTable.get(LogManager.getLoggerRepository());
+
+            synchronized (hierarchyLock) {
+                synchronized (appender) {
+                    // Every category resolves its log4j logger again.
+                    LogConfigurator.levelsChanged();
+
+                    for (int i = 0; i < 100; i++) {
+                        final int id = i;
+                        executor.execute(new Runnable() {
+                            @Override
+                            public void run()
+                            {
+                                log.info("message %d", id);
+                                try (LogBatch batch = log.batch()) {
+                                    batch.info("first %d", id).info("second %d", id);
+                                }
+                            }
+                        });
+                    }
+                    executor.shutdown();
+                    Assert.assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+                }
+            }
+
+            LogConfigurator.stopAsync();
+            Assert.assertThat(appender.appended.get(), is(301));
+            Assert.assertThat(appender.appendedOnHandoffThread.get(), is(0));
+        }
+        finally {
+            executor.shutdownNow();
+            AsyncDispatcher.setHandoffThreads(null);
+            logger.removeAppender(appender);
+        }
+    }
+
+    private static final class CountingAppender extends AppenderSkeleton
+    {
+        private final AtomicInteger appended = new AtomicInteger();
+        private final AtomicInteger appendedOnHandoffThread = new AtomicInteger();
+        private final Predicate<Thread> handoffThreads;
+
+        private CountingAppender(final Predicate<Thread> handoffThreads)
+        {
+            this.handoffThreads = handoffThreads;
+        }
+
+        @Override
+        protected void append(final LoggingEvent event)
+        {
+            appended.incrementAndGet();
+            if (handoffThreads.apply(Thread.currentThread())) {
+                appendedOnHandoffThread.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public boolean requiresLayout()
+        {
+            return false;
+        }
+    }
+}
@@ -20,6 +20,8 @@ import java.net.URL;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.apache.log4j.xml.DOMConfigurator;
+import org.kitei.logging.Log;
+import org.kitei.system.SystemPropertyKeys;
 
 public final class LoggingTestUtils
 {
@@ -49,4 +51,25 @@ public final class LoggingTestUtils
 
         return recordingAppender;
     }
+
+    /**
+     * Returns a Log that trims exceptions at INFO, WARN and ERROR, see {@link SystemPropertyKeys#LOGGING_TRIM_EXCEPTIONS}.
+     * Use a category that no other test uses, as Logs are cached.
+     */
+    public static final Log trimmingLog(final String category)
+    {
+        final String previous = System.getProperty(SystemPropertyKeys.LOGGING_TRIM_EXCEPTIONS);
+        System.setProperty(SystemPropertyKeys.LOGGING_TRIM_EXCEPTIONS, "true");
+        try {
+            return Log.forCategory(category);
+        }
+        finally {
+            if (previous == null) {
+                System.clearProperty(SystemPropertyKeys.LOGGING_TRIM_EXCEPTIONS);
+            }
+            else {
+                System.setProperty(SystemPropertyKeys.LOGGING_TRIM_EXCEPTIONS, previous);
+            }
+        }
+    }
 }